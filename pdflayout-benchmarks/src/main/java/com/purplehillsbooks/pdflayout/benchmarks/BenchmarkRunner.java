@@ -0,0 +1,37 @@
+package com.purplehillsbooks.pdflayout.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Runs the benchmarks, taking the usual JMH command line options, e.g.
+ * </p>
+ * <pre>
+ * java -jar target/benchmarks.jar TextBenchmarks -p words=2000
+ * </pre>
+ * <p>
+ * The GC profiler is always added, so every result comes with the
+ * allocation rate and bytes allocated per operation next to the time.
+ * </p>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
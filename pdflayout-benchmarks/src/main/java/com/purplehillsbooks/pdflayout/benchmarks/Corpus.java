@@ -0,0 +1,144 @@
+package com.purplehillsbooks.pdflayout.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>
+ * Generates the text the benchmarks work on.  The words are taken from the
+ * same sample text that LibraryTest uses, and the paragraphs are put
+ * together the same way, but always from a random generator with a fixed
+ * seed.  So every run of a benchmark works on exactly the same text, and
+ * results of different versions of the library can be compared.
+ * </p>
+ */
+public class Corpus {
+
+    public static final long SEED = 20240128L;
+
+    private static final String SAMPLE_TEXT = " Kant(a) (22 April 1724 – 12 February 1804) was a German philosopher and one of the central Enlightenment thinkers. Born in Königsberg , Kant's comprehensive and systematic works in epistemology , metaphysics , ethics , and aesthetics have made him one of the most influential and controversial figures in modern Western philosophy , being called the \"father of modern ethics\", \"father of modern aesthetics\" and, by bringing together rationalism and empiricism, the \"father of modern philosophy\".(7) (8) (9) (10)\n" +
+            "\n" +
+            "In his doctrine of transcendental idealism , Kant argued space and time are mere \"forms of intuition\" that structure all experience and that the objects of experience are mere \"appearances\". The nature of things as they are in themselves is unknowable to us. In an attempt to counter the philosophical doctrine of skepticism , he wrote the Critique of Pure Reason (1781/1787), his best-known work. Kant drew a parallel to the Copernican revolution in his proposal to think of the objects of experience as conforming to our spatial and temporal forms of intuition and the categories of our understanding, so that we have a priori cognition of those objects. These claims have proved especially influential in the social sciences, particularly sociology and anthropology, which regard human activities as pre-oriented by cultural norms.(11)\n" +
+            "\n" +
+            "Kant believed that reason is the source of morality , and that aesthetics arises from a faculty of disinterested judgment. Kant's religious views were deeply connected to his moral theory. Their exact nature, however, remains in dispute. He hoped that perpetual peace could be secured through an international federation of republican states and international cooperation . His cosmopolitan reputation, however, is called into question by his promulgation of scientific racism for much of his career, although he altered his views on the subject in the last decade of his life.\n" +
+            "\n" +
+            "Immanuel Kant was born on 22 April 1724 into a Prussian German family of Lutheran faith in Königsberg , East Prussia (since 1946 the Russian city of Kaliningrad ). His mother, Anna Regina Reuter, was born in Königsberg to a father from Nuremberg.(12) Her surname is sometimes erroneously given as Porter. Kant's father, Johann Georg Kant, was a German harness-maker from Memel , at the time Prussia's most northeastern city (now Klaipėda , Lithuania ). It is possible that the Kants got their name from the village of Kantvainiai (German: Kantwaggen – today part of Priekulė ) and were of Kursenieki origin.(13) (14)\n" +
+            "\n" +
+            "Emanuel was baptized and later changed the spelling of his name to Immanuel after learning Hebrew.(15) He was the fourth of nine children (six of whom reached adulthood).(16)\n";
+
+    private static final List<String> WORDS = parseWords(SAMPLE_TEXT);
+
+    private final Random r;
+
+    /**
+     * @param seed
+     *            the seed of the random generator; the same seed always
+     *            yields the same text.
+     */
+    public Corpus(long seed) {
+        r = new Random(seed);
+    }
+
+    public Corpus() {
+        this(SEED);
+    }
+
+    private static List<String> parseWords(String sampleWords) {
+        List<String> allWords = new ArrayList<String>();
+        int start = 0;
+        for (int i=0; i<sampleWords.length(); i++) {
+            char ch = sampleWords.charAt(i);
+            if (  (ch>='a' && ch <='z') || (ch>='A' && ch <='Z') || (ch>='0' && ch <='9') || ch=='\'' || ch=='-') {
+                // nothing to do
+            }
+            else {
+                if (start < i-1) {
+                    allWords.add(sampleWords.substring(start, i));
+                }
+                start = i+1;   //skip the current letter
+            }
+        }
+        return allWords;
+    }
+
+    /**
+     * @return a random word of the sample text.
+     */
+    public String word() {
+        return WORDS.get(r.nextInt(WORDS.size()));
+    }
+
+    /**
+     * Generates a paragraph like LibraryTest does: words of the sample
+     * text, now and then followed by a period or a comma.
+     *
+     * @param words
+     *            the number of words.
+     * @return the paragraph.
+     */
+    public String paragraph(int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<words-1; i++) {
+            sb.append(word());
+            int pType = r.nextInt(20);
+            if (pType==0) {
+                //1:20 chance of adding a period
+                sb.append(". ");
+            }
+            else if (pType==1) {
+                //1:20 chance of adding a comma
+                sb.append(", ");
+            }
+            else {
+                sb.append(" ");
+            }
+        }
+        sb.append(word());
+        sb.append(".");
+        return sb.toString();
+    }
+
+    /**
+     * Generates a paragraph in markup, using bold, italic, color, links
+     * and underlines among plain words.
+     *
+     * @param words
+     *            the (approximate) number of words.
+     * @return the markup.
+     */
+    public String markup(int words) {
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        while (count < words) {
+            int run = 3 + r.nextInt(6);
+            switch (r.nextInt(8)) {
+            case 0:
+                sb.append('*').append(paragraph(run)).append("* ");
+                break;
+            case 1:
+                sb.append('_').append(paragraph(run)).append("_ ");
+                break;
+            case 2:
+                sb.append("{color:#ff0000}").append(paragraph(run)).append("{color:#000000} ");
+                break;
+            case 3:
+                sb.append("{link[http://example.com/").append(word()).append("]}")
+                        .append(paragraph(run)).append("{link} ");
+                break;
+            case 4:
+                sb.append("__").append(paragraph(run)).append("__ ");
+                break;
+            case 5:
+                sb.append(paragraph(run)).append('\n');
+                break;
+            default:
+                sb.append(paragraph(run)).append(' ');
+                break;
+            }
+            count += run;
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.purplehillsbooks.pdflayout.benchmarks;
+
+import java.awt.Color;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.elements.Table;
+import com.purplehillsbooks.pdflayout.elements.TableRow;
+import com.purplehillsbooks.pdflayout.text.Alignment;
+import com.purplehillsbooks.pdflayout.text.BaseFont;
+import com.purplehillsbooks.pdflayout.text.TextFlowUtil;
+
+/**
+ * Benchmark of a complete document: laying out, drawing and saving a report
+ * of about 40 pages with frames, justified text, markup and tables.  A
+ * document can only be rendered once, so it is built anew for every
+ * invocation, outside of the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentBenchmarks {
+
+    private PDFDoc doc;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        Corpus corpus = new Corpus();
+        doc = new PDFDoc(50, 50, 50, 50);
+        Frame mainFrame = doc.newInteriorFrame();
+        mainFrame.headerCenter = "Page {#}";
+        for (int i=0; i<60; i++) {
+            Frame frame = mainFrame.newInteriorFrame();
+            frame.setBorderColor(i % 2 == 0 ? Color.blue : Color.green);
+            frame.setMargin(5, 5, 5, 5);
+            frame.setPadding(5, 5, 5, 5);
+            Paragraph para = frame.getNewParagraph();
+            para.setAlignment(Alignment.values()[i % Alignment.values().length]);
+            para.addTextCarefully(corpus.paragraph(50 + i % 5 * 60), 10, PDType1Font.HELVETICA);
+            frame.add(new Paragraph(TextFlowUtil.createTextFlowFromMarkup(corpus.markup(60), 10, BaseFont.Times)));
+            if (i % 5 == 0) {
+                Table table = frame.getNewTable(3);
+                for (int c=0; c<3; c++) {
+                    table.setColumnWidth(c, 150);
+                }
+                for (int r=0; r<5; r++) {
+                    TableRow row = table.createNewRow();
+                    for (int c=0; c<3; c++) {
+                        row.getCell(c).getNewParagraph().addTextCarefully(corpus.paragraph(3 + r * 4), 9, PDType1Font.TIMES_ROMAN);
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public long saveToStream() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        doc.saveToStream(out);
+        return out.count;
+    }
+
+    /**
+     * Only lays out and draws the pages, without writing the file, which is
+     * where positions are created for every line and word.
+     */
+    @Benchmark
+    public int render() throws Exception {
+        PDDocument pdDocument = doc.renderDocument();
+        try {
+            return pdDocument.getNumberOfPages();
+        }
+        finally {
+            pdDocument.close();
+        }
+    }
+
+    /**
+     * Throws the bytes away, so that only the library is measured.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+}
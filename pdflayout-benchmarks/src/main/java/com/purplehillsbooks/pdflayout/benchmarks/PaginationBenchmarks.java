@@ -0,0 +1,116 @@
+package com.purplehillsbooks.pdflayout.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.purplehillsbooks.pdflayout.elements.Dividable;
+import com.purplehillsbooks.pdflayout.elements.Dividable.Divided;
+import com.purplehillsbooks.pdflayout.elements.Drawable;
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Table;
+import com.purplehillsbooks.pdflayout.elements.TableRow;
+import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
+
+/**
+ * <p>
+ * Benchmarks of the pagination: a frame of many nested frames and
+ * paragraphs, and a long table, are divided into page sized parts until the
+ * rest fits on one page, the same way the VerticalLayout does it.
+ * </p>
+ * <p>
+ * Drawables remember their word wrapping and measurements, so the trees are
+ * built anew for every invocation, outside of the measured time.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaginationBenchmarks {
+
+    private PDDocument pdDocument;
+    private RenderContext renderContext;
+    private Frame frame;
+    private Table table;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        Corpus corpus = new Corpus();
+        PDFDoc doc = new PDFDoc(50, 50, 50, 50);
+        pdDocument = new PDDocument();
+        renderContext = new RenderContext(doc, pdDocument);
+
+        frame = doc.newInteriorFrame();
+        for (int i=0; i<100; i++) {
+            Frame inner = frame.newInteriorFrame();
+            inner.setMargin(5, 5, 5, 5);
+            inner.setPadding(5, 5, 5, 5);
+            inner.getNewParagraph().addTextCarefully(corpus.paragraph(50 + i % 7 * 40), 10, PDType1Font.HELVETICA);
+        }
+        frame.propagateMaxWidthToChildren();
+
+        Frame tableFrame = doc.newInteriorFrame();
+        table = tableFrame.getNewTable(3);
+        table.setColumnWidth(0, 80);
+        table.setColumnWidth(1, 320);
+        table.setColumnWidth(2, 80);
+        for (int i=0; i<1000; i++) {
+            TableRow row = table.createNewRow();
+            row.getCell(0).getNewParagraph().addTextCarefully(corpus.word(), 9, PDType1Font.HELVETICA);
+            row.getCell(1).getNewParagraph().addTextCarefully(corpus.paragraph(5 + i % 30), 9, PDType1Font.HELVETICA);
+            row.getCell(2).getNewParagraph().addTextCarefully(Integer.toString(i), 9, PDType1Font.HELVETICA);
+        }
+        table.propagateMaxWidthToChildren();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws Exception {
+        pdDocument.close();
+    }
+
+    @Benchmark
+    public int frameDivide() throws Exception {
+        return paginate(frame);
+    }
+
+    @Benchmark
+    public int tableDivide() throws Exception {
+        return paginate(table);
+    }
+
+    /**
+     * @return the number of pages.
+     */
+    private int paginate(Drawable drawable) throws Exception {
+        float pageHeight = renderContext.getHeight();
+        int pages = 1;
+        Drawable rest = drawable;
+        while (rest.getHeight() > pageHeight) {
+            Divided divided = ((Dividable) rest).divide(pageHeight, renderContext, true);
+            rest = divided.getTail();
+            rest.removeLeadingEmptyVerticalSpace();
+            if (++pages > 10000) {
+                throw new IllegalStateException("pagination does not make progress");
+            }
+        }
+        return pages;
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.purplehillsbooks.pdflayout.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.purplehillsbooks.pdflayout.text.BaseFont;
+import com.purplehillsbooks.pdflayout.text.FontDescriptor;
+import com.purplehillsbooks.pdflayout.text.TextFlow;
+import com.purplehillsbooks.pdflayout.text.TextFlowUtil;
+import com.purplehillsbooks.pdflayout.text.TextSequenceUtil;
+import com.purplehillsbooks.pdflayout.util.WordBreakers.DefaultWordBreaker;
+
+/**
+ * Benchmarks of the text handling: word wrapping, parsing markup and
+ * breaking single words that are too long for a line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextBenchmarks {
+
+    @Param({"100", "2000"})
+    public int words;
+
+    private TextFlow text;
+    private String markup;
+    private List<String> longWords;
+    private FontDescriptor fontDescriptor;
+    private DefaultWordBreaker wordBreaker;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus corpus = new Corpus();
+        text = new TextFlow();
+        text.addText(corpus.paragraph(words), 11, PDType1Font.HELVETICA);
+        markup = corpus.markup(words);
+
+        //compound words that only fit a narrow column when broken
+        longWords = new ArrayList<String>();
+        for (int i=0; i<100; i++) {
+            longWords.add(corpus.word()+"-"+corpus.word()+"/"+corpus.word()+"."+corpus.word()+","+corpus.word());
+        }
+        fontDescriptor = new FontDescriptor(PDType1Font.HELVETICA, 11);
+        wordBreaker = new DefaultWordBreaker();
+    }
+
+    /**
+     * Wraps the text into a column of about 60 characters.
+     */
+    @Benchmark
+    public TextFlow wordWrap() throws Exception {
+        return TextSequenceUtil.wordWrap(text, 300);
+    }
+
+    @Benchmark
+    public TextFlow createTextFlowFromMarkup() throws Exception {
+        return TextFlowUtil.createTextFlowFromMarkup(markup, 11, BaseFont.Helvetica);
+    }
+
+    /**
+     * Splits the markup into text and control characters in one pass, which
+     * is what {@link TextFlowUtil#fromMarkup(CharSequence)} does for markup
+     * without backslashes.
+     */
+    @Benchmark
+    public void markupTokenizer(Blackhole blackhole) throws Exception {
+        for (CharSequence sequence : TextFlowUtil.fromMarkup(markup)) {
+            blackhole.consume(sequence);
+        }
+    }
+
+    /**
+     * The same as {@link #markupTokenizer(Blackhole)}, with one regular
+     * expression per control character.
+     */
+    @Benchmark
+    public void markupPipeline(Blackhole blackhole) throws Exception {
+        for (CharSequence sequence : TextFlowUtil.fromMarkup(Collections.<CharSequence>singleton(markup))) {
+            blackhole.consume(sequence);
+        }
+    }
+
+    /**
+     * Breaks 100 compound words into a column of 60 points.
+     */
+    @Benchmark
+    public void defaultWordBreaker(Blackhole blackhole) throws Exception {
+        for (String word : longWords) {
+            blackhole.consume(wordBreaker.breakWord(word, fontDescriptor, 60, true));
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * The children of a {@link Frame} while the document is being built.  Adding
+ * a child takes amortized constant time, and {@link #addAll(Collection)}
+ * grows the array only once, so a frame can be filled with a very large
+ * number of paragraphs.  The list is not synchronized: fill a frame from one
+ * thread at a time, and not while it is rendered.
+ * </p>
+ * <p>
+ * Rendering reads the children through {@link #freeze()}, an unmodifiable
+ * snapshot that shares the array of this list.  Adding more children after
+ * that only writes behind the part of the array the snapshot covers, and any
+ * other change first copies the array, so a snapshot never changes.  As long
+ * as the list is not changed, the same snapshot is returned again.
+ * </p>
+ */
+final class ChildList extends AbstractList<Drawable> implements RandomAccess {
+
+    private static final Drawable[] EMPTY = new Drawable[0];
+    private static final int FIRST_CAPACITY = 8;
+
+    private Drawable[] elements = EMPTY;
+    private int size;
+    //the last snapshot, as long as nothing changed since
+    private ChildrenView snapshot;
+    //if a snapshot refers to the elements array
+    private boolean shared;
+
+    /**
+     * @return an unmodifiable view of the children as they are now.
+     */
+    ChildrenView freeze() {
+        if (snapshot == null) {
+            snapshot = new ChildrenView(null, elements, 0, size, null);
+            shared = true;
+        }
+        return snapshot;
+    }
+
+    @Override
+    public Drawable get(int index) {
+        checkIndex(index, size);
+        return elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(Drawable drawable) {
+        ensureCapacity(size + 1);
+        elements[size++] = drawable;
+        changed();
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Drawable> drawables) {
+        Object[] added = drawables.toArray();
+        if (added.length == 0) {
+            return false;
+        }
+        ensureCapacity(size + added.length);
+        System.arraycopy(added, 0, elements, size, added.length);
+        size += added.length;
+        changed();
+        return true;
+    }
+
+    @Override
+    public void add(int index, Drawable drawable) {
+        checkIndex(index, size + 1);
+        unshare();
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = drawable;
+        size++;
+        changed();
+    }
+
+    @Override
+    public Drawable set(int index, Drawable drawable) {
+        checkIndex(index, size);
+        unshare();
+        Drawable old = elements[index];
+        elements[index] = drawable;
+        changed();
+        return old;
+    }
+
+    @Override
+    public Drawable remove(int index) {
+        checkIndex(index, size);
+        unshare();
+        Drawable old = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+        changed();
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        if (shared) {
+            elements = EMPTY;
+            shared = false;
+        }
+        else {
+            Arrays.fill(elements, 0, size, null);
+        }
+        size = 0;
+        changed();
+    }
+
+    private void changed() {
+        modCount++;
+        snapshot = null;
+    }
+
+    /**
+     * Makes sure the array can hold the given number of children.  The array
+     * may stay shared, because the snapshots do not look past their size.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            int grown = Math.max(elements.length + (elements.length >> 1), FIRST_CAPACITY);
+            elements = Arrays.copyOf(elements, Math.max(grown, capacity));
+            shared = false;
+        }
+    }
+
+    /**
+     * Copies the array before children already in it are replaced or moved,
+     * if a snapshot refers to it.
+     */
+    private void unshare() {
+        if (shared) {
+            elements = Arrays.copyOf(elements, Math.max(elements.length, FIRST_CAPACITY));
+            shared = false;
+        }
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+    }
+
+}
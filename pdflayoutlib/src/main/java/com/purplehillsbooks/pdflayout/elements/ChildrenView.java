@@ -0,0 +1,140 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * The children of a part of a divided frame: a range of the children of
+ * the frame that was divided first, with at most one more drawable before
+ * them (the rest of a child that was cut on the page before) and one
+ * after them (the first part of a child that is cut, or a spacer).  The
+ * array is the one of the {@link ChildList} of the frame (or a copy, if the
+ * children are kept in another list), and all parts on the following pages
+ * share it, so a frame with many children spanning many pages does not copy
+ * the children still to come on every page.  The same class is used for the
+ * snapshot of a {@link ChildList} that is read while rendering.
+ * </p>
+ * <p>
+ * The list can not be changed.
+ * </p>
+ */
+final class ChildrenView extends AbstractList<Drawable> implements RandomAccess {
+    private final Drawable before;
+    private final Drawable[] children;
+    private final int from;
+    private final int to;
+    private final Drawable after;
+
+    ChildrenView(Drawable before, Drawable[] children, int from, int to, Drawable after) {
+        this.before = before;
+        this.children = children;
+        this.from = from;
+        this.to = to;
+        this.after = after;
+    }
+
+    /**
+     * @return the given list if it is a view, the snapshot of a
+     *         {@link ChildList}, else a view of a copy of the list.
+     */
+    static ChildrenView of(List<Drawable> items) {
+        if (items instanceof ChildrenView) {
+            return (ChildrenView) items;
+        }
+        if (items instanceof ChildList) {
+            return ((ChildList) items).freeze();
+        }
+        Drawable[] children = items.toArray(new Drawable[items.size()]);
+        return new ChildrenView(null, children, 0, children.length, null);
+    }
+
+    /**
+     * @return a view of the drawables of this view from the first index
+     *         (inclusive) to the second (exclusive).
+     */
+    ChildrenView slice(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("slice " + fromIndex + " to " + toIndex + " of " + size());
+        }
+        int offset = before == null ? 0 : 1;
+        Drawable newBefore = fromIndex == 0 && toIndex > 0 ? before : null;
+        Drawable newAfter = after != null && toIndex == size() && fromIndex < toIndex ? after : null;
+        int newFrom = from + Math.max(0, fromIndex - offset);
+        int newTo = Math.max(newFrom, Math.min(to, from + toIndex - offset));
+        return new ChildrenView(newBefore, children, newFrom, newTo, newAfter);
+    }
+
+    /**
+     * @return this view with the given drawable in front.
+     */
+    ChildrenView withBefore(Drawable drawable) {
+        if (before == null) {
+            return new ChildrenView(drawable, children, from, to, after);
+        }
+        Drawable[] copy = new Drawable[size() + 1];
+        copy[0] = drawable;
+        for (int i = 1; i < copy.length; i++) {
+            copy[i] = get(i - 1);
+        }
+        return new ChildrenView(null, copy, 0, copy.length, null);
+    }
+
+    /**
+     * @return this view with the given drawable at the end.
+     */
+    ChildrenView withAfter(Drawable drawable) {
+        if (after == null) {
+            return new ChildrenView(before, children, from, to, drawable);
+        }
+        Drawable[] copy = toArray(new Drawable[size() + 1]);
+        copy[copy.length - 1] = drawable;
+        return new ChildrenView(null, copy, 0, copy.length, null);
+    }
+
+    @Override
+    public Drawable get(int index) {
+        if (before != null) {
+            if (index == 0) {
+                return before;
+            }
+            index--;
+        }
+        if (index >= 0 && index < to - from) {
+            return children[from + index];
+        }
+        if (index == to - from && after != null) {
+            return after;
+        }
+        throw new IndexOutOfBoundsException("index: " + index);
+    }
+
+    @Override
+    public int size() {
+        return (before == null ? 0 : 1) + to - from + (after == null ? 0 : 1);
+    }
+
+    @Override
+    public Iterator<Drawable> iterator() {
+        return new Iterator<Drawable>() {
+            private final int size = size();
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Drawable next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+}
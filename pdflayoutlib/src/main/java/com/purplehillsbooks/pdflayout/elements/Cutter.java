@@ -7,6 +7,7 @@ import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
 import com.purplehillsbooks.pdflayout.text.DrawListener;
 import com.purplehillsbooks.pdflayout.text.Position;
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
 
 /**
  * A cutter transforms any Drawable element into a {@link Dividable}. It simply
@@ -26,6 +27,7 @@ public class Cutter extends Dividable {
         this.undividable = undividable;
         this.viewPortY = viewPortY;
         this.viewPortHeight = viewPortHeight;
+        adopt(undividable);
     }
 
     @Override
@@ -54,7 +56,20 @@ public class Cutter extends Dividable {
     public void draw(RenderContext renderContext,
             Position upperLeft, DrawListener drawListener) throws Exception {
         Position viewPortOrigin = upperLeft.add(0, -viewPortY);
+        GraphicsState graphicsState = renderContext.getGraphicsState();
+        if (viewPortY == 0) {
+            graphicsState.drawingBy(undividable);
+            undividable.draw(renderContext, viewPortOrigin, drawListener);
+            graphicsState.drawnBy(undividable);
+            return;
+        }
+        //the part above the view port must not show on the page
+        graphicsState.saveGraphicsState();
+        renderContext.clipToClipArea();
+        graphicsState.drawingBy(undividable);
         undividable.draw(renderContext, viewPortOrigin, drawListener);
+        graphicsState.drawnBy(undividable);
+        graphicsState.restoreGraphicsState();
     }
 
     @Override
@@ -1,6 +1,8 @@
 package com.purplehillsbooks.pdflayout.elements;
 
 
+import java.util.List;
+
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 
@@ -10,10 +12,50 @@ import com.purplehillsbooks.pdflayout.text.DrawListener;
 import com.purplehillsbooks.pdflayout.text.Position;
 
 /**
+ * <p>
  * Common interface for drawable objects.
+ * </p>
+ * <p>
+ * Drawables can remember their measured width and height, so that laying out
+ * a deeply nested tree does not measure the same subtree over and over again.
+ * A remembered measurement is valid until any measured drawable changes in a
+ * way that affects its size, which must be announced by calling
+ * {@link #invalidateMeasurements()}.  The drawables in this package do this
+ * for all their setters.  A drawable can be part of more than one container
+ * (dividing reuses the children of the original frame), so a change does not
+ * only clear the measurements of the changed drawable, but of all drawables
+ * that have been measured so far and that depend on each other: the drawables
+ * that share a container, and the drawables of a document.  Changes to
+ * drawables that have never been measured, like the parts created while
+ * dividing, do not clear anything.  A change in one document does not clear
+ * the measurements of another, and all of this is safe to use from several
+ * threads.
+ * </p>
+ * <p>
+ * The same rule applies to the max width that containers push down to their
+ * children.  A container remembers the width it has passed on, and skips the
+ * walk over its subtree as long as that width is the same and nothing has
+ * changed since.
+ * </p>
  */
 public abstract class Drawable extends Element {
 
+    private static final long NOT_CACHED = -1;
+
+    /**
+     * The drawables a change to this one makes stale, created when first
+     * needed.
+     */
+    private MeasurementScope scope;
+    private float cachedWidth;
+    private float cachedHeight;
+    private long widthModification = NOT_CACHED;
+    private long heightModification = NOT_CACHED;
+    private boolean measured;
+    private float constraintWidth;
+    private long constraintModification = NOT_CACHED;
+    private boolean constrained;
+
     public boolean isDrawable() {
         return true;
     }
@@ -78,5 +120,165 @@ public abstract class Drawable extends Element {
         //by default do nothing
     }
 
-    
+    /**
+     * Adds the drawables inside this one that can be measured on their own,
+     * independent of each other, once the max widths have been set.  By
+     * default this is the drawable itself.  Containers, whose size only
+     * depends on their contents, add those contents instead.
+     *
+     * @param leaves
+     *            the list to add to.
+     */
+    public void collectLeafDrawables(List<Drawable> leaves) {
+        leaves.add(this);
+    }
+
+    /**
+     * Announces that the size of this drawable may have changed.  Call this
+     * from any setter of a subclass that changes the width or height, and
+     * whenever the content of a drawable is changed behind its back.
+     */
+    public void invalidateMeasurements() {
+        widthModification = NOT_CACHED;
+        heightModification = NOT_CACHED;
+        constraintModification = NOT_CACHED;
+        if (measured || constrained) {
+            measured = false;
+            constrained = false;
+            getMeasurementScope().changed();
+        }
+    }
+
+    /**
+     * Makes the measurements of this drawable depend on the given one, and
+     * the other way round.  Containers call this for their children before
+     * measuring them.
+     *
+     * @param other
+     *            the drawable, usually a child of this one.
+     */
+    protected final void adopt(Drawable other) {
+        if (other == this) {
+            return;
+        }
+        if (scope == null) {
+            scope = other.getMeasurementScope();
+        }
+        else if (other.scope == null) {
+            other.scope = getMeasurementScope();
+        }
+        else {
+            getMeasurementScope().join(other.getMeasurementScope());
+        }
+    }
+
+    /**
+     * @return the scope this drawable currently belongs to.
+     */
+    final MeasurementScope getMeasurementScope() {
+        if (scope == null) {
+            scope = new MeasurementScope();
+        }
+        else {
+            scope = scope.root();
+        }
+        return scope;
+    }
+
+    /**
+     * @param width
+     *            the max width that would be passed on to the children.
+     * @return <code>true</code> if exactly this width has already been passed
+     *         on by {@link #rememberConstraint(float)}, and nothing changed
+     *         since, so the children need not be visited again.
+     */
+    protected boolean isConstraintCurrent(float width) {
+        return constraintModification != NOT_CACHED && constraintWidth == width
+                && getMeasurementScope().isCurrent(constraintModification);
+    }
+
+    /**
+     * Remembers the max width that has been applied to this drawable or
+     * passed on to its children.  Once remembered, replacing the width counts
+     * as a change that the containers of this drawable have to notice.
+     *
+     * @param width
+     *            the max width.
+     */
+    protected void rememberConstraint(float width) {
+        constrained = true;
+        constraintWidth = width;
+        constraintModification = MeasurementScope.now();
+    }
+
+    /**
+     * @return <code>true</code> if {@link #getCachedWidth()} may be used
+     *         instead of measuring the width again.
+     */
+    protected boolean isWidthCached() {
+        MeasurementScope current = getMeasurementScope();
+        if (widthModification != NOT_CACHED && current.isCurrent(widthModification)) {
+            current.countAvoided();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the width remembered by {@link #cacheWidth(float)}.
+     */
+    protected float getCachedWidth() {
+        return cachedWidth;
+    }
+
+    /**
+     * Remembers the measured width until the next change.
+     *
+     * @param width
+     *            the measured width.
+     * @return the given width.
+     */
+    protected float cacheWidth(float width) {
+        getMeasurementScope().countComputed();
+        measured = true;
+        cachedWidth = width;
+        widthModification = MeasurementScope.now();
+        return width;
+    }
+
+    /**
+     * @return <code>true</code> if {@link #getCachedHeight()} may be used
+     *         instead of measuring the height again.
+     */
+    protected boolean isHeightCached() {
+        MeasurementScope current = getMeasurementScope();
+        if (heightModification != NOT_CACHED && current.isCurrent(heightModification)) {
+            current.countAvoided();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the height remembered by {@link #cacheHeight(float)}.
+     */
+    protected float getCachedHeight() {
+        return cachedHeight;
+    }
+
+    /**
+     * Remembers the measured height until the next change.
+     *
+     * @param height
+     *            the measured height.
+     * @return the given height.
+     */
+    protected float cacheHeight(float height) {
+        getMeasurementScope().countComputed();
+        measured = true;
+        cachedHeight = height;
+        heightModification = MeasurementScope.now();
+        return height;
+    }
+
 }
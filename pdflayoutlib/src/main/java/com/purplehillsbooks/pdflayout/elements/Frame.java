@@ -1,10 +1,8 @@
 package com.purplehillsbooks.pdflayout.elements;
 
 import java.awt.Color;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -16,6 +14,8 @@ import com.purplehillsbooks.pdflayout.shape.Stroke;
 import com.purplehillsbooks.pdflayout.text.DrawListener;
 import com.purplehillsbooks.pdflayout.text.Position;
 import com.purplehillsbooks.pdflayout.text.WidthRespecting;
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
 
 /**
  * <p>The frame is a container for {@link Drawable} objects.  
@@ -82,7 +82,14 @@ import com.purplehillsbooks.pdflayout.text.WidthRespecting;
  */
 public class Frame extends Dividable implements WidthRespecting {
 
-    public List<Drawable> innerList = new CopyOnWriteArrayList<Drawable>();
+    /**
+     * The contained drawables.  Use {@link #add(Drawable)} to add to it, or
+     * call {@link #invalidateMeasurements()} after changing it directly.
+     * Appending is cheap, but the list is not synchronized, so do not change
+     * it while the frame is rendered.  The parts of a divided frame have a
+     * list that can not be changed.
+     */
+    public List<Drawable> innerList = new ChildList();
 
     private float paddingLeft;
     private float paddingRight;
@@ -199,10 +206,32 @@ public class Frame extends Dividable implements WidthRespecting {
      */
     public void add(final Drawable drawable) {
         innerList.add(drawable);
+        invalidateMeasurements();
+    }
+
+    /**
+     * Adds all the drawables to the frame, growing the list of children only
+     * once.
+     * @param drawables Drawable objects to add
+     */
+    public void addChildren(final Collection<? extends Drawable> drawables) {
+        innerList.addAll(drawables);
+        invalidateMeasurements();
     }
 
     protected void addAll(final Collection<Drawable> drawable) {
-        innerList.addAll(drawable);
+        addChildren(drawable);
+    }
+
+    /**
+     * @return the children as they are now, in a list that does not change
+     *         while it is read during rendering.
+     */
+    private List<Drawable> children() {
+        if (innerList instanceof ChildList) {
+            return ((ChildList) innerList).freeze();
+        }
+        return innerList;
     }
 
     /**
@@ -334,7 +363,10 @@ public class Frame extends Dividable implements WidthRespecting {
      *            left padding.
      */
     public void setPaddingLeft(float paddingLeft) {
-        this.paddingLeft = paddingLeft;
+        if (this.paddingLeft != paddingLeft) {
+            this.paddingLeft = paddingLeft;
+            invalidateMeasurements();
+        }
     }
 
     /**
@@ -351,7 +383,10 @@ public class Frame extends Dividable implements WidthRespecting {
      *            right padding.
      */
     public void setPaddingRight(float paddingRight) {
-        this.paddingRight = paddingRight;
+        if (this.paddingRight != paddingRight) {
+            this.paddingRight = paddingRight;
+            invalidateMeasurements();
+        }
     }
 
     /**
@@ -368,7 +403,10 @@ public class Frame extends Dividable implements WidthRespecting {
      *            top padding.
      */
     public void setPaddingTop(float paddingTop) {
-        this.paddingTop = paddingTop;
+        if (this.paddingTop != paddingTop) {
+            this.paddingTop = paddingTop;
+            invalidateMeasurements();
+        }
     }
 
     /**
@@ -385,7 +423,10 @@ public class Frame extends Dividable implements WidthRespecting {
      *            bottom padding.
      */
     public void setPaddingBottom(float paddingBottom) {
-        this.paddingBottom = paddingBottom;
+        if (this.paddingBottom != paddingBottom) {
+            this.paddingBottom = paddingBottom;
+            invalidateMeasurements();
+        }
     }
 
     /**
@@ -421,7 +462,10 @@ public class Frame extends Dividable implements WidthRespecting {
      *            left margin.
      */
     public void setMarginLeft(float marginLeft) {
-        this.marginLeft = marginLeft;
+        if (this.marginLeft != marginLeft) {
+            this.marginLeft = marginLeft;
+            invalidateMeasurements();
+        }
     }
 
     /**
@@ -438,7 +482,10 @@ public class Frame extends Dividable implements WidthRespecting {
      *            right margin.
      */
     public void setMarginRight(float marginRight) {
-        this.marginRight = marginRight;
+        if (this.marginRight != marginRight) {
+            this.marginRight = marginRight;
+            invalidateMeasurements();
+        }
     }
 
     /**
@@ -455,7 +502,10 @@ public class Frame extends Dividable implements WidthRespecting {
      *            top margin.
      */
     public void setMarginTop(float marginTop) {
-        this.marginTop = marginTop;
+        if (this.marginTop != marginTop) {
+            this.marginTop = marginTop;
+            invalidateMeasurements();
+        }
     }
 
     /**
@@ -472,7 +522,10 @@ public class Frame extends Dividable implements WidthRespecting {
      *            bottom margin.
      */
     public void setMarginBottom(float marginBottom) {
-        this.marginBottom = marginBottom;
+        if (this.marginBottom != marginBottom) {
+            this.marginBottom = marginBottom;
+            invalidateMeasurements();
+        }
     }
 
     /**
@@ -545,7 +598,10 @@ public class Frame extends Dividable implements WidthRespecting {
      * the margin and the padding.
      */
     public void setGivenHeight(float val) {
-        givenHeight = val;
+        if (givenHeight != val) {
+            givenHeight = val;
+            invalidateMeasurements();
+        }
     }
     /**
      * @param val Set the fixed total EXTERIOR width of the frame.  Remember, the border will be 
@@ -553,21 +609,28 @@ public class Frame extends Dividable implements WidthRespecting {
      * the margin and the padding.
      */
     public void setGivenWidth(float val) {
-        givenWidth = val;
+        if (givenWidth != val) {
+            givenWidth = val;
+            invalidateMeasurements();
+        }
     }
 
     @Override
     public float getWidth() throws Exception {
+        if (isWidthCached()) {
+            return getCachedWidth();
+        }
         if (givenWidth>0) {
-            return givenWidth;
+            return cacheWidth(givenWidth);
         }
-        return getMaxWidth(innerList) + getHorizontalSpacing();
+        return cacheWidth(getMaxWidth(children()) + getHorizontalSpacing());
     }
 
     protected float getMaxWidth(List<Drawable> drawableList) throws Exception {
         float max = 0;
         if (drawableList != null) {
             for (Drawable inner : drawableList) {
+                adopt(inner);
                 max = Math.max(max, inner.getWidth());
             }
         }
@@ -576,18 +639,22 @@ public class Frame extends Dividable implements WidthRespecting {
 
     @Override
     public float getHeight() throws Exception {
+        if (isHeightCached()) {
+            return getCachedHeight();
+        }
         if (givenHeight>0) {
-            return givenHeight;
+            return cacheHeight(givenHeight);
         }
-        return getHeight(innerList) + getVerticalExtraSpace();
+        return cacheHeight(getHeight(children()) + getVerticalExtraSpace());
     }
 
-    private static float getHeight(List<Drawable> drawableList) throws Exception {
+    private float getHeight(List<Drawable> drawableList) throws Exception {
         float height = 0;
         if (drawableList == null) {
             throw new RuntimeException("getHeight of list was called with a null list");
         }
         for (Drawable inner : drawableList) {
+            adopt(inner);
             height += inner.getHeight();
         }
         return height;
@@ -623,8 +690,14 @@ public class Frame extends Dividable implements WidthRespecting {
             //for now we just assume given width is sacrosanct
             interiorMaxWidth = givenWidth - this.getHorizontalSpacing();
         }
+        if (isConstraintCurrent(interiorMaxWidth)) {
+            //the children already have this width, and nothing
+            //below this frame changed since they got it
+            return;
+        }
 
-        for (Drawable inner : innerList) {
+        for (Drawable inner : children()) {
+            adopt(inner);
             if (inner instanceof WidthRespecting) {
                 ((WidthRespecting) inner).setMaxWidth(interiorMaxWidth);
             }
@@ -632,6 +705,7 @@ public class Frame extends Dividable implements WidthRespecting {
                 ((Table)inner).propagateMaxWidthToChildren();
             }
         }
+        rememberConstraint(interiorMaxWidth);
     }
     
     /**
@@ -692,6 +766,8 @@ public class Frame extends Dividable implements WidthRespecting {
      * Propagates the max width to the inner items if there is a given size, but
      * no absolute position.  Given width will override any maxwidth specified
      * for any other reason.
+     * This is called before every draw and divide, but only walks down the
+     * tree the first time, or after something in it has changed.
      */
     public void propagateMaxWidthToChildren() {
         if (getAbsolutePosition() == null && givenWidth>0) {
@@ -699,6 +775,14 @@ public class Frame extends Dividable implements WidthRespecting {
         }
     }
 
+    @Override
+    public void collectLeafDrawables(List<Drawable> leaves) {
+        for (Drawable inner : children()) {
+            adopt(inner);
+            inner.collectLeafDrawables(leaves);
+        }
+    }
+
     @Override
     public void draw(RenderContext renderContext,
             Position upperLeft, DrawListener drawListener) throws Exception {
@@ -749,8 +833,11 @@ public class Frame extends Dividable implements WidthRespecting {
 
         Position innerUpperLeft = upperLeft.add(getPaddingLeft(), -getPaddingTop());
 
-        for (Drawable inner : innerList) {
+        GraphicsState graphicsState = renderContext.getGraphicsState();
+        for (Drawable inner : children()) {
+            graphicsState.drawingBy(inner);
             inner.draw(renderContext, innerUpperLeft, drawListener);
+            graphicsState.drawnBy(inner);
             innerUpperLeft = innerUpperLeft.add(0, -inner.getHeight());
         }
     }
@@ -795,7 +882,7 @@ public class Frame extends Dividable implements WidthRespecting {
         // we have to account for the extra white space at the top of the frame
         float spaceLeft = remainingHeight - getMarginTop() - getPaddingTop();
 
-        DividedList dividedList = divideList(innerList, spaceLeft, renderContext, topOfPage);
+        DividedList dividedList = divideList(children(), spaceLeft, renderContext, topOfPage);
         
         List<Drawable> headList = dividedList.getHead();
         if (headList.size()>0) {
@@ -813,6 +900,7 @@ public class Frame extends Dividable implements WidthRespecting {
             if (elementToDivide.canBeDivided()) {
                 Dividable innerDividable = (Dividable) elementToDivide;
                 divided = innerDividable.divide(spaceLeftForDivided, renderContext, topOfPage);
+                RenderMetrics.count(RenderMetrics.Counter.DIVIDES, 1);
             } else {
                 divided = new Divided(new VerticalSpacer(spaceLeftForDivided), elementToDivide);
             }
@@ -826,11 +914,11 @@ public class Frame extends Dividable implements WidthRespecting {
         copyAllButInnerAndSizeTo(first);
         first.setPaddingBottom(0);   //bottom padding eliminated because this is split
         first.setMarginBottom(0);    //bottom margin eliminated because this is split
-        if (dividedList.getHead() != null) {
-            first.addAll(dividedList.getHead());
-        }
         if (divided != null) {
-            first.add(divided.getFirst());
+            first.innerList = ((ChildrenView) headList).withAfter(divided.getFirst());
+        }
+        else {
+            first.innerList = headList;
         }
 
         // create tail sub frame
@@ -840,25 +928,32 @@ public class Frame extends Dividable implements WidthRespecting {
         tail.setMarginTop(0);    //top margin eliminated because this is split
 
         if (divided != null) {
-            tail.add(divided.getTail());
+            tail.innerList = ((ChildrenView) dividedList.getTail()).withBefore(divided.getTail());
         }
-        if (dividedList.getTail() != null) {
-            tail.addAll(dividedList.getTail());
+        else {
+            tail.innerList = dividedList.getTail();
         }
 
+        adopt(first);
+        adopt(tail);
         return new Divided(first, tail);
     }
 
+    /**
+     * Finds the children that fit into the space left.  Head and tail are
+     * views of the given children, which are only copied if they are not a
+     * view already.
+     */
     private DividedList divideList(List<Drawable> items, float spaceLeft, RenderContext renderContext, boolean topOfPage)
             throws Exception {
-        List<Drawable> head = new ArrayList<Drawable>();
-        List<Drawable> tail = null;
+        ChildrenView children = ChildrenView.of(items);
         Drawable toDivide = null;
+        Drawable spacer = null;
 
         float tmpHeight = 0;
         int index = 0;
-        while (tmpHeight < spaceLeft && index<items.size()) {
-            Drawable drawMe = items.get(index);
+        while (tmpHeight < spaceLeft && index<children.size()) {
+            Drawable drawMe = children.get(index);
             float    fullHeight = drawMe.getHeight();
             
             if (!topOfPage && drawMe instanceof Frame) {
@@ -866,7 +961,7 @@ public class Frame extends Dividable implements WidthRespecting {
                 if (drawMeFrame.getStartNewPage() || spaceLeft-tmpHeight<drawMeFrame.getNeedSpace()) {
                     //force it to take up more than the rest of the page so it 
                     //gets moved or split.  Don't move if topOfPage already
-                    head.add(new VerticalSpacer(fullHeight-tmpHeight));
+                    spacer = new VerticalSpacer(fullHeight-tmpHeight);
                     tmpHeight = spaceLeft;
                     break;  //avoid including this in the set
                 }
@@ -876,34 +971,26 @@ public class Frame extends Dividable implements WidthRespecting {
                 break;
             }
             
-            head.add(drawMe);
             ++index;
             tmpHeight += fullHeight;
             topOfPage = false;
         }
-        
-        if (tmpHeight == spaceLeft) {
-            // page is filled perfectly, so we can split between two drawables
-            // and leave the toDivide null
 
-            if (index < items.size()) {
-                tail = items.subList(index, items.size());
-            }
-            else {
-                tail = new ArrayList<Drawable>();
-            }
+        ChildrenView head = children.slice(0, index);
+        if (spacer != null) {
+            head = head.withAfter(spacer);
         }
-        else {
-            if (index < items.size()) {
-                toDivide = items.get(index);
-            }
-            if (index + 1 < items.size()) {
-                tail = items.subList(index + 1, items.size());
-            }
-            else {
-                tail = new ArrayList<Drawable>();
+        
+        int tailStart = index;
+        if (tmpHeight != spaceLeft) {
+            if (index < children.size()) {
+                toDivide = children.get(index);
+                tailStart = index + 1;
             }
         }
+        // if the page is filled perfectly, we can split between two drawables
+        // and leave the toDivide null
+        ChildrenView tail = children.slice(Math.min(tailStart, children.size()), children.size());
 
         return new DividedList(head, toDivide, tail);
     }
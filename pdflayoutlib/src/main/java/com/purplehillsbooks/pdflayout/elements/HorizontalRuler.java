@@ -48,30 +48,40 @@ public class HorizontalRuler extends Drawable implements WidthRespecting {
 
     @Override
     public void setMaxWidth(float maxWidth) {
-        this.maxWidth = maxWidth;
+        if (this.maxWidth != maxWidth) {
+            this.maxWidth = maxWidth;
+            invalidateMeasurements();
+            rememberConstraint(maxWidth);
+        }
     }
 
     @Override
     public float getWidth() throws Exception {
-        return getMaxWidth();
+        if (isWidthCached()) {
+            return getCachedWidth();
+        }
+        return cacheWidth(getMaxWidth());
     }
 
     @Override
     public float getHeight() throws Exception {
+        if (isHeightCached()) {
+            return getCachedHeight();
+        }
         if (getStroke() == null) {
-            return 0f;
+            return cacheHeight(0f);
         }
-        return getStroke().getLineWidth();
+        return cacheHeight(getStroke().getLineWidth());
     }
 
     @Override
     public void draw(RenderContext renderContext,
             Position upperLeft, DrawListener drawListener) throws Exception {
         if (getColor() != null) {
-            renderContext.contentStream.setStrokingColor(getColor());
+            renderContext.getGraphicsState().setStrokingColor(getColor());
         }
         if (getStroke() != null) {
-            getStroke().applyTo(renderContext.contentStream);
+            getStroke().applyTo(renderContext.getGraphicsState());
             float x = upperLeft.getX();
             float y = upperLeft.getY() - getStroke().getLineWidth() / 2;
             renderContext.contentStream.moveTo(x, y);
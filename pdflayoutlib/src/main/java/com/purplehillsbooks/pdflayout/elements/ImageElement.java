@@ -4,10 +4,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.InputStream;
 
-import javax.imageio.ImageIO;
-
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
 import com.purplehillsbooks.pdflayout.text.DrawListener;
@@ -23,35 +20,74 @@ public class ImageElement extends Dividable implements WidthRespecting {
      */
     public final static float SCALE_TO_RESPECT_WIDTH = -1f;
 
-    private BufferedImage image;
+    private final ImageSource image;
     private float width;
     private float height;
     private float maxWidth = -1;
+    private float maxDpi = -1;
     private Position absolutePosition;
 
     public ImageElement(final BufferedImage image) {
+        this(ImageSource.of(image));
+    }
+
+    /**
+     * Creates an image element for the given source, see {@link ImageSource}.
+     *
+     * @param image
+     *            the image to show.
+     */
+    public ImageElement(final ImageSource image) {
         this.image = image;
         this.width = image.getWidth();
         this.height = image.getHeight();
     }
 
+    /**
+     * Creates an image element for the content of an image file.  Only the
+     * header is read here, a JPEG is embedded without being decoded at all.
+     *
+     * @param inputStream
+     *            the content of the image file, read to the end.
+     * @throws Exception
+     *             if the stream can not be read or the format is not known.
+     */
     public ImageElement(final InputStream inputStream) throws Exception {
-        this(ImageIO.read(inputStream));
+        this(ImageSource.fromStream(inputStream));
     }
 
+    /**
+     * Creates an image element for an image file, see
+     * {@link #ImageElement(InputStream)}.
+     *
+     * @param filePath
+     *            the path of the file.
+     * @throws Exception
+     *             if the file can not be read or the format is not known.
+     */
     public ImageElement(final String filePath) throws Exception {
-        this(ImageIO.read(new File(filePath)));
+        this(ImageSource.fromFile(new File(filePath)));
+    }
+
+    /**
+     * @return the image shown.
+     */
+    public ImageSource getImageSource() {
+        return image;
     }
 
     @Override
     public float getWidth() throws Exception {
+        if (isWidthCached()) {
+            return getCachedWidth();
+        }
         if (width == SCALE_TO_RESPECT_WIDTH) {
             if (getMaxWidth() > 0 && image.getWidth() > getMaxWidth()) {
-                return getMaxWidth();
+                return cacheWidth(getMaxWidth());
             }
-            return image.getWidth();
+            return cacheWidth(image.getWidth());
         }
-        return width;
+        return cacheWidth(width);
     }
 
     /**
@@ -64,18 +100,22 @@ public class ImageElement extends Dividable implements WidthRespecting {
      */
     public void setWidth(float width) {
         this.width = width;
+        invalidateMeasurements();
     }
 
     @Override
     public float getHeight() throws Exception {
+        if (isHeightCached()) {
+            return getCachedHeight();
+        }
         if (height == SCALE_TO_RESPECT_WIDTH) {
             if (getMaxWidth() > 0 && image.getWidth() > getMaxWidth()) {
-                return getMaxWidth() / (float) image.getWidth()
-                        * (float) image.getHeight();
+                return cacheHeight(getMaxWidth() / (float) image.getWidth()
+                        * (float) image.getHeight());
             }
-            return image.getHeight();
+            return cacheHeight(image.getHeight());
         }
-        return height;
+        return cacheHeight(height);
     }
 
     /**
@@ -89,6 +129,29 @@ public class ImageElement extends Dividable implements WidthRespecting {
      */
     public void setHeight(float height) {
         this.height = height;
+        invalidateMeasurements();
+    }
+
+    /**
+     * @return the most pixels per inch to embed the image with, or
+     *         <code>-1</code> to use the limit of the document.
+     */
+    public float getMaxDpi() {
+        return maxDpi;
+    }
+
+    /**
+     * Limits the resolution of this image, instead of
+     * {@link PDFDoc#setMaxImageDpi(float) the limit of the document}.  If the
+     * image has more pixels than needed to show it at this resolution, it is
+     * scaled down before it is embedded.
+     *
+     * @param maxDpi
+     *            the most pixels per inch, or <code>-1</code> to use the limit
+     *            of the document.
+     */
+    public void setMaxDpi(float maxDpi) {
+        this.maxDpi = maxDpi;
     }
 
     @Override
@@ -107,7 +170,11 @@ public class ImageElement extends Dividable implements WidthRespecting {
 
     @Override
     public void setMaxWidth(float maxWidth) {
-        this.maxWidth = maxWidth;
+        if (this.maxWidth != maxWidth) {
+            this.maxWidth = maxWidth;
+            invalidateMeasurements();
+            rememberConstraint(maxWidth);
+        }
     }
 
     @Override
@@ -128,7 +195,18 @@ public class ImageElement extends Dividable implements WidthRespecting {
     @Override
     public void draw(RenderContext renderContext,
             Position upperLeft, DrawListener drawListener) throws Exception {
-        CompatibilityHelper.drawImage(image, renderContext.pdDocument, renderContext.contentStream,
+        float dpi = maxDpi > 0 ? maxDpi : renderContext.getDocument().getMaxImageDpi();
+        PDImageXObject xObject;
+        if (dpi > 0) {
+            //a point is 1/72 inch
+            int pixelsAcross = Math.max(1, (int) Math.ceil(getWidth() * dpi / 72f));
+            int pixelsDown = Math.max(1, (int) Math.ceil(getHeight() * dpi / 72f));
+            xObject = renderContext.getImageXObject(image, pixelsAcross, pixelsDown);
+        }
+        else {
+            xObject = renderContext.getImageXObject(image);
+        }
+        CompatibilityHelper.drawImage(xObject, renderContext.contentStream,
                 upperLeft, getWidth(), getHeight());
         if (drawListener != null) {
             drawListener.drawn(this, upperLeft, getWidth(), getHeight());
@@ -0,0 +1,371 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import com.purplehillsbooks.pdflayout.util.ImageScaler;
+
+/**
+ * <p>
+ * The pixels shown by an {@link ImageElement}.  Either an image already in
+ * memory, or the bytes of an image file, which are only decoded when the
+ * pixels are actually needed.
+ * </p>
+ * <p>
+ * The size of an image file is read from its header.  A JPEG file is
+ * embedded into the PDF as it is (a DCT stream), so it is never decoded, and
+ * a photo keeps the size it has on disk.  Other formats (e.g. PNG) are
+ * decoded when they are embedded, and compressed without loss like an image
+ * in memory.
+ * </p>
+ * <p>
+ * An image can also be embedded with fewer pixels than it has, see
+ * {@link #createXObject(PDDocument, int, int)}.  It is then decoded and
+ * scaled down, a JPEG file is compressed as a JPEG again.
+ * </p>
+ */
+public abstract class ImageSource {
+
+    /**
+     * The quality a JPEG file is compressed with again after it has been
+     * scaled down.
+     */
+    public static final float SCALED_JPEG_QUALITY = 0.85f;
+
+    /**
+     * @param image
+     *            the image.
+     * @return a source for the image in memory.
+     */
+    public static ImageSource of(final BufferedImage image) {
+        if (image == null) {
+            throw new IllegalArgumentException("the image is null");
+        }
+        return new DecodedImage(image);
+    }
+
+    /**
+     * @param bytes
+     *            the content of an image file, which is not copied and must
+     *            not be changed afterwards.
+     * @return a source for the image file.
+     * @throws IOException
+     *             if the format is not known, or the header can not be read.
+     */
+    public static ImageSource fromBytes(final byte[] bytes) throws IOException {
+        return new EncodedImage(bytes);
+    }
+
+    /**
+     * @param inputStream
+     *            the content of an image file, read to the end but not
+     *            closed.
+     * @return a source for the image file.
+     * @throws IOException
+     *             if the stream can not be read, the format is not known, or
+     *             the header can not be read.
+     */
+    public static ImageSource fromStream(final InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return fromBytes(bytes.toByteArray());
+    }
+
+    /**
+     * @param file
+     *            an image file.
+     * @return a source for the image file.
+     * @throws IOException
+     *             if the file can not be read, the format is not known, or
+     *             the header can not be read.
+     */
+    public static ImageSource fromFile(final File file) throws IOException {
+        return fromBytes(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * @return the width in pixels.
+     */
+    public abstract int getWidth();
+
+    /**
+     * @return the height in pixels.
+     */
+    public abstract int getHeight();
+
+    /**
+     * @return <code>true</code> if the pixels are in memory, so that
+     *         {@link #getImage()} is free.
+     */
+    public abstract boolean isDecoded();
+
+    /**
+     * Returns the pixels.  An image file is decoded on every call, the
+     * result is not kept.
+     *
+     * @return the decoded image.
+     * @throws IOException
+     *             if the image can not be decoded.
+     */
+    public abstract BufferedImage getImage() throws IOException;
+
+    /**
+     * Returns a key for the content of the image: sources with the same key
+     * are embedded the same way, so their XObject can be shared, see
+     * {@link com.purplehillsbooks.pdflayout.util.ImageCache}.  It is a hash
+     * of the bytes of an image file, resp. of the pixels and the type of an
+     * image in memory.
+     *
+     * @return the content key.
+     * @throws IOException
+     *             never for the sources of this class.
+     */
+    public abstract String getContentKey() throws IOException;
+
+    /**
+     * Embeds the image into the document.  This is called by the render
+     * context once per document and source, see
+     * {@link com.purplehillsbooks.pdflayout.elements.render.RenderContext#getImageXObject(ImageSource)}.
+     *
+     * @param document
+     *            the document to embed into.
+     * @return the image XObject.
+     * @throws IOException
+     *             by pdfbox, or if the image can not be decoded.
+     */
+    public abstract PDImageXObject createXObject(PDDocument document) throws IOException;
+
+    /**
+     * Embeds the image into the document with the given number of pixels, at
+     * most as many as the image has.  The pixels are averaged by
+     * {@link ImageScaler#areaAverage(BufferedImage, int, int)}, the image is
+     * only decoded if it is actually scaled down.  An image file that can not
+     * be decoded (e.g. a CMYK JPEG on older java runtimes) is embedded with
+     * all its pixels, see {@link #createXObject(PDDocument)}.
+     *
+     * @param document
+     *            the document to embed into.
+     * @param width
+     *            the width in pixels.
+     * @param height
+     *            the height in pixels.
+     * @return the image XObject.
+     * @throws IOException
+     *             by pdfbox, or if the image can not be decoded.
+     */
+    public PDImageXObject createXObject(PDDocument document, int width, int height) throws IOException {
+        if (width >= getWidth() && height >= getHeight()) {
+            return createXObject(document);
+        }
+        BufferedImage image;
+        try {
+            image = getImage();
+        }
+        catch (IOException e) {
+            //a JPEG file can still be embedded without decoding it
+            return createXObject(document);
+        }
+        BufferedImage scaled = ImageScaler.areaAverage(image, Math.min(width, getWidth()),
+                Math.min(height, getHeight()));
+        return encodeScaled(document, scaled);
+    }
+
+    /**
+     * Encodes a scaled down copy of the image, without loss unless
+     * overwritten.
+     */
+    PDImageXObject encodeScaled(PDDocument document, BufferedImage scaled) throws IOException {
+        return LosslessFactory.createFromImage(document, scaled);
+    }
+
+    /**
+     * An image in memory.
+     */
+    private static class DecodedImage extends ImageSource {
+        private final BufferedImage image;
+
+        DecodedImage(final BufferedImage image) {
+            this.image = image;
+        }
+
+        @Override
+        public int getWidth() {
+            return image.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return image.getHeight();
+        }
+
+        @Override
+        public boolean isDecoded() {
+            return true;
+        }
+
+        @Override
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        /**
+         * Hashes the pixels every time, the image might have been drawn on
+         * since.
+         */
+        @Override
+        public String getContentKey() {
+            MessageDigest digest = newDigest();
+            int width = image.getWidth();
+            int[] row = new int[width];
+            byte[] rowBytes = new byte[width * 4];
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int pixel = row[x];
+                    rowBytes[4 * x] = (byte) (pixel >>> 24);
+                    rowBytes[4 * x + 1] = (byte) (pixel >>> 16);
+                    rowBytes[4 * x + 2] = (byte) (pixel >>> 8);
+                    rowBytes[4 * x + 3] = (byte) pixel;
+                }
+                digest.update(rowBytes);
+            }
+            //the same colors are still encoded differently for other types
+            return "pixels:" + image.getType() + ":" + image.getColorModel().getColorSpace().getType()
+                    + ":" + image.getColorModel().getPixelSize() + ":" + image.getColorModel().hasAlpha()
+                    + ":" + width + "x" + image.getHeight() + ":" + toHex(digest.digest());
+        }
+
+        @Override
+        public PDImageXObject createXObject(PDDocument document) throws IOException {
+            return LosslessFactory.createFromImage(document, image);
+        }
+    }
+
+    /**
+     * The bytes of an image file, with the size read from the header.
+     */
+    private static class EncodedImage extends ImageSource {
+        private final byte[] bytes;
+        private final boolean jpeg;
+        private final int width;
+        private final int height;
+        private String contentKey;
+
+        EncodedImage(final byte[] bytes) throws IOException {
+            this.bytes = bytes;
+            this.jpeg = bytes.length > 3 && (bytes[0] & 0xff) == 0xff
+                    && (bytes[1] & 0xff) == 0xd8 && (bytes[2] & 0xff) == 0xff;
+            ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes));
+            try {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                if (!readers.hasNext()) {
+                    throw new IOException("Unable to read the image, the format is not known.");
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in, true, true);
+                    this.width = reader.getWidth(0);
+                    this.height = reader.getHeight(0);
+                }
+                finally {
+                    reader.dispose();
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public boolean isDecoded() {
+            return false;
+        }
+
+        @Override
+        public BufferedImage getImage() throws IOException {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null) {
+                throw new IOException("Unable to decode the image.");
+            }
+            return image;
+        }
+
+        @Override
+        public synchronized String getContentKey() {
+            if (contentKey == null) {
+                contentKey = "file:" + toHex(newDigest().digest(bytes));
+            }
+            return contentKey;
+        }
+
+        @Override
+        public PDImageXObject createXObject(PDDocument document) throws IOException {
+            if (jpeg) {
+                return JPEGFactory.createFromByteArray(document, bytes);
+            }
+            return LosslessFactory.createFromImage(document, getImage());
+        }
+
+        /**
+         * A photo would be many times larger without loss.
+         */
+        @Override
+        PDImageXObject encodeScaled(PDDocument document, BufferedImage scaled) throws IOException {
+            if (jpeg) {
+                return JPEGFactory.createFromImage(document, scaled, SCALED_JPEG_QUALITY);
+            }
+            return super.encodeScaled(document, scaled);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            //every java runtime has to have it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+}
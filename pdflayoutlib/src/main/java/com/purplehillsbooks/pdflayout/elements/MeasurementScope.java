@@ -0,0 +1,122 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * The drawables whose measurements depend on each other: a container shares
+ * its scope with everything it contains, and the drawables of a document
+ * share the scope of the document.  A change to a measured drawable makes all
+ * measurements of its scope stale, but none of other documents.
+ * </p>
+ * <p>
+ * Measurements and changes are stamped with the ticks of one clock, which
+ * only ever counts up, so that a measurement is current as long as it is not
+ * older than the last change of its scope.  Scopes are joined when a
+ * container takes on a drawable that has a scope of its own: one of them then
+ * forwards to the other, which keeps the later of the two last changes, and
+ * the counts of both.
+ * </p>
+ */
+final class MeasurementScope {
+
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    //the scope this one has been joined into
+    private volatile MeasurementScope joinedInto;
+    private final AtomicLong lastChange = new AtomicLong(-1);
+    private final LongAdder computed = new LongAdder();
+    private final LongAdder avoided = new LongAdder();
+
+    /**
+     * @return the current tick, to stamp a measurement with.
+     */
+    static long now() {
+        return CLOCK.get();
+    }
+
+    /**
+     * @return the scope all scopes joined with this one forward to.
+     */
+    MeasurementScope root() {
+        MeasurementScope root = this;
+        while (root.joinedInto != null) {
+            root = root.joinedInto;
+        }
+        //shorten the way for the next time
+        MeasurementScope scope = this;
+        while (scope != root) {
+            MeasurementScope next = scope.joinedInto;
+            scope.joinedInto = root;
+            scope = next;
+        }
+        return root;
+    }
+
+    /**
+     * Records a change to a measured drawable of this scope.
+     */
+    void changed() {
+        root().raiseLastChange(CLOCK.incrementAndGet());
+    }
+
+    /**
+     * @param measuredAt
+     *            the tick the measurement was taken at.
+     * @return <code>true</code> if nothing in this scope changed since.
+     */
+    boolean isCurrent(long measuredAt) {
+        return measuredAt >= root().lastChange.get();
+    }
+
+    /**
+     * Joins the other scope into this one.
+     *
+     * @param other
+     *            the scope to join.
+     */
+    void join(MeasurementScope other) {
+        MeasurementScope root = root();
+        MeasurementScope otherRoot = other.root();
+        if (root == otherRoot) {
+            return;
+        }
+        //the last change first, so no measurement of the other scope is
+        //current for a moment after it forwards here
+        root.raiseLastChange(otherRoot.lastChange.get());
+        otherRoot.joinedInto = root;
+        root.computed.add(otherRoot.computed.sumThenReset());
+        root.avoided.add(otherRoot.avoided.sumThenReset());
+    }
+
+    void countComputed() {
+        root().computed.increment();
+    }
+
+    void countAvoided() {
+        root().avoided.increment();
+    }
+
+    long getComputed() {
+        return root().computed.sum();
+    }
+
+    long getAvoided() {
+        return root().avoided.sum();
+    }
+
+    void resetCounters() {
+        MeasurementScope root = root();
+        root.computed.reset();
+        root.avoided.reset();
+    }
+
+    private void raiseLastChange(long tick) {
+        long last = lastChange.get();
+        while (tick > last && !lastChange.compareAndSet(last, tick)) {
+            last = lastChange.get();
+        }
+    }
+
+}
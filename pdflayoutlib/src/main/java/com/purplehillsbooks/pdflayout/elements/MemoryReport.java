@@ -0,0 +1,97 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * <p>
+ * Tells how much memory rendering and saving a {@link PDFDoc} took, so that
+ * you can find out how much heap and temporary disk space a kind of document
+ * needs.  Get it from {@link PDFDoc#getMemoryReport()} after the document
+ * has been saved.
+ * </p>
+ * <p>
+ * The heap is sampled whenever a page is finished and after the document
+ * has been written, so the peak is the highest of those samples.  It is the
+ * heap used by the whole JVM, not only by this document.  The scratch usage
+ * is the size of the temporary file PDFBox writes to once the memory budget
+ * is used up, see {@link PDFDoc#setMemoryBudget(long)}.
+ * </p>
+ */
+public class MemoryReport {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final long memoryBudget;
+    private long peakHeapBytes;
+    private long peakScratchBytes;
+    private int pageCount;
+
+    MemoryReport(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Takes a sample of the heap and the scratch directory.
+     *
+     * @param scratchDirectory
+     *            the directory holding the scratch file of the document, or
+     *            <code>null</code> if there is none.
+     */
+    void sample(File scratchDirectory) {
+        peakHeapBytes = Math.max(peakHeapBytes, MEMORY.getHeapMemoryUsage().getUsed());
+        if (scratchDirectory != null) {
+            long scratchBytes = 0;
+            File[] files = scratchDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    scratchBytes += file.length();
+                }
+            }
+            peakScratchBytes = Math.max(peakScratchBytes, scratchBytes);
+        }
+    }
+
+    void pageFinished(File scratchDirectory) {
+        pageCount++;
+        sample(scratchDirectory);
+    }
+
+    /**
+     * @return the number of bytes the document could keep in memory before
+     *         it started to use a scratch file, or -1 if it was not limited.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return the highest heap usage of the JVM seen while rendering and
+     *         saving, in bytes.
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * @return the largest size the scratch file reached, in bytes.  This is 0
+     *         if the document stayed within its memory budget.
+     */
+    public long getPeakScratchBytes() {
+        return peakScratchBytes;
+    }
+
+    /**
+     * @return the number of pages rendered.
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public String toString() {
+        return "MemoryReport [pages=" + pageCount + ", memoryBudget=" + memoryBudget
+                + ", peakHeapBytes=" + peakHeapBytes + ", peakScratchBytes=" + peakScratchBytes + "]";
+    }
+
+}
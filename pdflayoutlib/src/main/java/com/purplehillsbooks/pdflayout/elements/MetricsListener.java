@@ -0,0 +1,20 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
+
+/**
+ * A metrics listener is called each time a document has been rendered with
+ * {@link PDFDoc#setMetricsEnabled(boolean) metrics enabled}.  It may be used
+ * to pass the numbers on to a metrics or monitoring system.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called after the document has been rendered, or saved if it is saved
+     * with {@link PDFDoc#saveToStream(java.io.OutputStream)}.
+     *
+     * @param document the document that has been rendered.
+     * @param metrics the metrics of this rendering.
+     */
+    void metricsRecorded(final PDFDoc document, final RenderMetrics metrics);
+}
@@ -2,20 +2,32 @@ package com.purplehillsbooks.pdflayout.elements;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
 import com.purplehillsbooks.pdflayout.elements.render.Layout;
 import com.purplehillsbooks.pdflayout.elements.render.LayoutHint;
 import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
 import com.purplehillsbooks.pdflayout.elements.render.RenderListener;
 import com.purplehillsbooks.pdflayout.elements.render.VerticalLayout;
 import com.purplehillsbooks.pdflayout.elements.render.VerticalLayoutHint;
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
+import com.purplehillsbooks.pdflayout.util.ImageCache;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Counter;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Phase;
 
 /**
  * <p>The central class for creating a document.  Construct the PDFDoc first,
@@ -54,6 +66,25 @@ import com.purplehillsbooks.pdflayout.elements.render.VerticalLayoutHint;
  * form for storing a document.
  * 
  * </p>
+ * <p>
+ * Very long documents can be rendered in streaming mode, see
+ * {@link #startStreaming()}.  Instead of keeping all elements until the
+ * document is saved, each element is laid out and drawn as soon as the next
+ * one is added, and is then released.
+ * </p>
+ * <p>
+ * By default, the PDF being built is kept completely in memory.  If you set a
+ * {@link #setMemoryBudget(long) memory budget}, PDFBox moves the data of the
+ * document to a temporary scratch file once the budget is used up.  After
+ * saving, {@link #getMemoryReport()} tells how much heap and scratch space it
+ * took.
+ * </p>
+ * <p>
+ * To find out where the time goes, turn on
+ * {@link #setMetricsEnabled(boolean) metrics}.  Each rendering then records
+ * how long it spent in wrapping, dividing, drawing, saving etc., see
+ * {@link #getRenderMetrics()} and {@link #addMetricsListener(MetricsListener)}.
+ * </p>
  *
  */
 public class PDFDoc implements RenderListener {
@@ -70,6 +101,40 @@ public class PDFDoc implements RenderListener {
     private PDDocument pdDocument;
     private PageFormat pageFormat;
 
+    //only set in streaming mode: the context pages are drawn to, and the
+    //element that was added last and may still be filled by the caller
+    private RenderContext streamingContext;
+    private Entry<Element, LayoutHint> pendingEntry;
+
+    private long memoryBudget = -1;
+    private File scratchParent;
+    //the directory holding the scratch file of the current PDDocument
+    private File scratchDirectory;
+    private MemoryReport currentReport;
+    private MemoryReport memoryReport;
+
+
+    private boolean metricsEnabled;
+    private final List<MetricsListener> metricsListener = new CopyOnWriteArrayList<MetricsListener>();
+    //the metrics of the rendering in progress, and of the last one finished
+    private RenderMetrics currentMetrics;
+    private RenderMetrics renderMetrics;
+
+    private ForkJoinPool measurementPool;
+    //the measurements of the drawables added to this document depend on
+    //each other, but not on those of other documents
+    private final MeasurementScope measurements = new MeasurementScope();
+    private ImageCache imageCache = ImageCache.getShared();
+    //until a cache is set, a memory budget turns the shared one off
+    private boolean imageCacheSet;
+    private float maxImageDpi = -1;
+
+    //taken from the deprecated static settings, which are the defaults
+    //unless a caller still changes them
+    @SuppressWarnings("deprecation")
+    private PDFont headerFont = RenderContext.HEADER_FONT;
+    @SuppressWarnings("deprecation")
+    private float headerSize = RenderContext.HEADER_SIZE;
 
     //public setting on whether to produce debug out put of margins
     public boolean showMargins = false;
@@ -132,9 +197,89 @@ public class PDFDoc implements RenderListener {
      *            the hint for the {@link Layout}.
      */
     public void add(final Element element, final LayoutHint layoutHint) {
+        if (element instanceof Drawable) {
+            measurements.join(((Drawable) element).getMeasurementScope());
+        }
+        if (streamingContext != null) {
+            try {
+                RenderMetrics.Recording recording = recordCurrentMetrics();
+                try {
+                    renderPendingEntry();
+                }
+                finally {
+                    stopRecording(recording);
+                }
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Unable to render the previous element while streaming", e);
+            }
+            pendingEntry = createEntry(element, layoutHint);
+            return;
+        }
         elements.add(createEntry(element, layoutHint));
     }
 
+    /**
+     * <p>
+     * Switches the document into streaming mode.  From now on, each call to
+     * {@link #add(Element)} (or {@link #newInteriorFrame()}) first lays out
+     * and draws the element that was added before, and then forgets it.  The
+     * element added last is kept until the next one is added, or until the
+     * document is saved, so you can still fill the frame that you just got.
+     * Once you have added the next element, you must not change the earlier
+     * ones any more.
+     * </p>
+     * <p>
+     * This way only the element currently being filled is held in memory,
+     * no matter how long the document is, as long as the content is split
+     * into many top level frames (for example one per chunk of rows instead
+     * of one large table).  The finished pages are still part of the
+     * {@link PDDocument} until it is saved.  Set a
+     * {@link #setMemoryBudget(long) memory budget} to keep them off the heap.
+     * </p>
+     * <p>
+     * Elements that have been added before this call are rendered right away,
+     * except for the last one.
+     * </p>
+     *
+     * @throws Exception
+     *             by pdfbox
+     */
+    public void startStreaming() throws Exception {
+        if (streamingContext != null) {
+            return;
+        }
+        startMetrics();
+        RenderMetrics.Recording recording = recordCurrentMetrics();
+        try {
+            streamingContext = new RenderContext(this, getPDDocument());
+            for (Entry<Element, LayoutHint> entry : elements) {
+                renderPendingEntry();
+                pendingEntry = entry;
+            }
+        }
+        finally {
+            stopRecording(recording);
+        }
+        elements.clear();
+    }
+
+    /**
+     * @return <code>true</code> if {@link #startStreaming()} has been called,
+     *         and the document has not been rendered yet.
+     */
+    public boolean isStreaming() {
+        return streamingContext != null;
+    }
+
+    private void renderPendingEntry() throws Exception {
+        if (pendingEntry != null) {
+            Entry<Element, LayoutHint> entry = pendingEntry;
+            pendingEntry = null;
+            render(streamingContext, entry);
+        }
+    }
+
     private Entry<Element, LayoutHint> createEntry(final Element element,
             final LayoutHint layoutHint) {
         return new SimpleEntry<Element, LayoutHint>(element, layoutHint);
@@ -156,11 +301,217 @@ public class PDFDoc implements RenderListener {
      */
     public PDDocument getPDDocument() {
         if (pdDocument == null) {
-            pdDocument = new PDDocument();
+            currentReport = new MemoryReport(memoryBudget);
+            if (memoryBudget < 0) {
+                pdDocument = new PDDocument();
+            }
+            else {
+                try {
+                    //a directory of its own, so the size of the scratch file can be found
+                    scratchDirectory = scratchParent == null
+                            ? Files.createTempDirectory("pdflayout").toFile()
+                            : Files.createTempDirectory(scratchParent.toPath(), "pdflayout").toFile();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException("Unable to create a directory for the scratch file", e);
+                }
+                final File directory = scratchDirectory;
+                pdDocument = new PDDocument(MemoryUsageSetting.setupMixed(memoryBudget)
+                        .setTempDir(directory)) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        }
+                        finally {
+                            //the scratch file itself is deleted by pdfbox
+                            directory.delete();
+                        }
+                    }
+                };
+            }
         }
         return pdDocument;
     }
+
+    /**
+     * Limits the memory the PDF being built may use.  Once the document
+     * holds more than this many bytes (content streams, images, fonts), PDFBox
+     * moves the data to a temporary scratch file, which is deleted when the
+     * document is closed: after saving, or when the caller closes the
+     * {@link PDDocument} returned by {@link #renderDocument()}.  This does
+     * not limit the memory needed for the layout itself, see
+     * {@link #startStreaming()} for that.  Must be set before the document is
+     * rendered.  With a budget, the images are not put into the shared
+     * {@link #setImageCache(ImageCache) image cache}.
+     *
+     * @param maxMainMemoryBytes
+     *            the number of bytes to keep in memory, or -1 to keep
+     *            everything in memory (which is the default).
+     */
+    public void setMemoryBudget(long maxMainMemoryBytes) {
+        memoryBudget = maxMainMemoryBytes;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the directory to put scratch files in.  By default the system
+     * temporary directory is used.
+     *
+     * @param directory
+     *            the parent directory for scratch files.
+     */
+    public void setScratchDirectory(File directory) {
+        scratchParent = directory;
+    }
+
+    /**
+     * @return how much memory the last rendering of this document used, or
+     *         <code>null</code> if it has not been rendered yet.  When saved
+     *         with {@link #saveToStream(OutputStream)}, this includes the
+     *         saving.
+     */
+    public MemoryReport getMemoryReport() {
+        return memoryReport;
+    }
     
+    /**
+     * <p>
+     * Lets the paragraphs of each top level element be word wrapped and
+     * measured in parallel on the given pool, before the element is broken
+     * into pages.  Pagination and drawing then only use the remembered
+     * results.  This pays off for documents with many or long paragraphs,
+     * e.g. reports with large tables.
+     * </p>
+     * <p>
+     * The drawables themselves are not thread safe, so the document must not
+     * be changed while it is rendered.  By default, everything is measured
+     * on the rendering thread.
+     * </p>
+     *
+     * @param pool
+     *            the pool to measure on, e.g. {@link ForkJoinPool#commonPool()},
+     *            or <code>null</code> to measure on the rendering thread.
+     */
+    public void setMeasurementPool(ForkJoinPool pool) {
+        measurementPool = pool;
+    }
+
+    public ForkJoinPool getMeasurementPool() {
+        return measurementPool;
+    }
+
+    /**
+     * @return the number of widths and heights of the drawables of this
+     *         document that had to be measured.
+     */
+    public long getMeasurementsComputed() {
+        return measurements.getComputed();
+    }
+
+    /**
+     * @return the number of widths and heights of the drawables of this
+     *         document that were answered from a remembered measurement
+     *         instead of measuring again.
+     */
+    public long getMeasurementsAvoided() {
+        return measurements.getAvoided();
+    }
+
+    /**
+     * Resets the counters of {@link #getMeasurementsComputed()} and
+     * {@link #getMeasurementsAvoided()}.
+     */
+    public void resetMeasurementCounters() {
+        measurements.resetCounters();
+    }
+
+    /**
+     * <p>
+     * Sets the cache the images of this document are encoded into, so that
+     * an image shown by other documents as well is only encoded once.  Each
+     * document still embeds its own copy of the encoded image.  By default,
+     * all documents share {@link ImageCache#getShared()}, except for
+     * documents with a {@link #setMemoryBudget(long) memory budget}: the
+     * shared cache keeps its copies on the heap for the life of the JVM,
+     * which would defeat the budget, so they use no cache unless one is set
+     * here.
+     * </p>
+     * <p>
+     * Within a document, images with the same content are always embedded
+     * only once.
+     * </p>
+     *
+     * @param cache
+     *            the cache to use, or <code>null</code> to encode the images
+     *            of every document anew.
+     */
+    public void setImageCache(ImageCache cache) {
+        imageCache = cache;
+        imageCacheSet = true;
+    }
+
+    public ImageCache getImageCache() {
+        if (!imageCacheSet && memoryBudget >= 0) {
+            return null;
+        }
+        return imageCache;
+    }
+
+    /**
+     * <p>
+     * Limits the resolution of the images of this document.  An image with
+     * more pixels than needed to show it at this resolution, in the size it
+     * is drawn, is scaled down before it is embedded.  A scan of 4000 pixels
+     * shown 2 inches wide would need only 600 pixels at 300 dpi.
+     * </p>
+     * <p>
+     * Scaling down decodes the image, and a JPEG file is then compressed
+     * again.  Images which are not larger than needed are embedded as they
+     * are.  By default, all images are embedded with all their pixels.  An
+     * image element can set its own limit, see
+     * {@link ImageElement#setMaxDpi(float)}.
+     * </p>
+     *
+     * @param dpi
+     *            the most pixels per inch, or <code>-1</code> to embed all
+     *            pixels.
+     */
+    public void setMaxImageDpi(float dpi) {
+        maxImageDpi = dpi;
+    }
+
+    public float getMaxImageDpi() {
+        return maxImageDpi;
+    }
+
+    /**
+     * Sets the font used for the headers and footers of this document.  By
+     * default, a document uses Helvetica at 8 points, or whatever the
+     * deprecated {@link RenderContext#HEADER_FONT} and
+     * {@link RenderContext#HEADER_SIZE} were set to when it was created.
+     *
+     * @param font
+     *            the font.
+     * @param size
+     *            the font size.
+     */
+    public void setHeaderFont(PDFont font, float size) {
+        headerFont = font;
+        headerSize = size;
+    }
+
+    public PDFont getHeaderFont() {
+        return headerFont;
+    }
+
+    public float getHeaderSize() {
+        return headerSize;
+    }
+
     public Dimension getInteriorDimension() {
         return pageFormat.getInteriorDimension();
     }
@@ -181,40 +532,70 @@ public class PDFDoc implements RenderListener {
 
 
     /**
-     * Renders all elements and returns the resulting {@link PDDocument}.
+     * Renders all elements and returns the resulting {@link PDDocument}, which
+     * the caller has to close.
      *
      * @return the resulting {@link PDDocument}
      * @throws Exception
      *             by pdfbox
      */
     public PDDocument renderDocument() throws Exception {
-        PDDocument document = getPDDocument();
-        RenderContext renderContext = new RenderContext(this, document);
-        for (Entry<Element, LayoutHint> entry : elements) {
-            Element element = entry.getKey();
-            LayoutHint layoutHint = entry.getValue();
-            boolean success = false;
-
+        PDDocument document = render();
+        finishMetrics();
+        return document;
+    }
 
-            // if none of them felt responsible, let the default renderer do the job.
-            if (!success) {
-                success = renderContext.startRendering(element, layoutHint);
+    private PDDocument render() throws Exception {
+        PDDocument document = getPDDocument();
+        RenderContext renderContext = streamingContext;
+        if (renderContext == null) {
+            startMetrics();
+        }
+        RenderMetrics.Recording recording = recordCurrentMetrics();
+        try {
+            if (renderContext != null) {
+                renderPendingEntry();
+                streamingContext = null;
             }
-
-            if (!success) {
-                throw new IllegalArgumentException(
-                        String.format(
-                                "neither layout %s nor the render context knows what to do with %s",
-                                renderContext.getLayout(), element));
-
+            else {
+                renderContext = new RenderContext(this, document);
+                for (Entry<Element, LayoutHint> entry : elements) {
+                    render(renderContext, entry);
+                }
             }
+            renderContext.close();
+        }
+        finally {
+            stopRecording(recording);
         }
-        renderContext.close();
+        currentReport.sample(scratchDirectory);
+        memoryReport = currentReport;
 
         resetPDDocument();
         return document;
     }
 
+    private void render(RenderContext renderContext,
+            Entry<Element, LayoutHint> entry) throws Exception {
+        Element element = entry.getKey();
+        LayoutHint layoutHint = entry.getValue();
+        boolean success = false;
+
+
+        // if none of them felt responsible, let the default renderer do the job.
+        if (!success) {
+            success = renderContext.startRendering(element, layoutHint);
+        }
+
+        if (!success) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "neither layout %s nor the render context knows what to do with %s",
+                            renderContext.getLayout(), element));
+
+        }
+    }
+
     /**
      * {@link #renderDocument() Renders} the document and saves it to the given file.
      *
@@ -239,17 +620,149 @@ public class PDFDoc implements RenderListener {
      *             by pdfbox
      */
     public void saveToStream(final OutputStream output) throws Exception {
-        try (PDDocument document = renderDocument()) {
-            try {
-                document.save(output);
-                output.flush();
+        try (PDDocument document = render()) {
+            try (RenderMetrics.Recording recording = recordCurrentMetrics()) {
+                Phase previous = RenderMetrics.enter(Phase.SAVE);
+                try {
+                    if (recording == null) {
+                        document.save(output);
+                    }
+                    else {
+                        CountingOutputStream counting = new CountingOutputStream(output);
+                        document.save(counting);
+                        currentMetrics.add(Counter.BYTES_WRITTEN, counting.count);
+                    }
+                    output.flush();
+                }
+                finally {
+                    RenderMetrics.exit(previous);
+                }
+                memoryReport.sample(scratchDirectory);
             } 
             catch (Exception e) {
                 throw new Exception("Unable to save to output stream", e);
             }
+            finishMetrics();
+        }
+        finally {
+            //the directory went away with the document
+            scratchDirectory = null;
+        }
+    }
+
+    /**
+     * Turns recording of {@link RenderMetrics} on or off, which is off by
+     * default.  Must be set before the document is rendered.
+     *
+     * @param enabled
+     *            <code>true</code> to record metrics.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        metricsEnabled = enabled;
+    }
+
+    /**
+     * @return <code>true</code> if metrics are recorded, either because they
+     *         have been enabled or because there is a metrics listener.
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled || !metricsListener.isEmpty();
+    }
+
+    /**
+     * @return the metrics of the last rendering of this document, or
+     *         <code>null</code> if it has not been rendered yet with metrics
+     *         enabled.  When saved with {@link #saveToStream(OutputStream)},
+     *         this includes the saving.
+     */
+    public RenderMetrics getRenderMetrics() {
+        return renderMetrics;
+    }
+
+    /**
+     * <p>
+     * Records metrics on the current thread for the next rendering of this
+     * document, until the returned recording is closed.  The document records
+     * while it is rendered anyway, so this is only needed to include the work
+     * done while building the document, mostly parsing markup:
+     * </p>
+     * <pre>
+     * try (RenderMetrics.Recording recording = doc.recordMetrics()) {
+     *     ... fill the document ...
+     * }
+     * </pre>
+     * <p>
+     * Turns metrics on if they are not enabled yet.
+     * </p>
+     *
+     * @return the recording to close.
+     */
+    public RenderMetrics.Recording recordMetrics() {
+        metricsEnabled = true;
+        if (currentMetrics == null) {
+            currentMetrics = new RenderMetrics();
+        }
+        return currentMetrics.record();
+    }
+
+    private void startMetrics() {
+        if (isMetricsEnabled()) {
+            if (currentMetrics == null) {
+                currentMetrics = new RenderMetrics();
+            }
+            currentMetrics.renderStarted();
+        }
+    }
+
+    /**
+     * @return a recording of the current metrics, or <code>null</code> if
+     *         metrics are not enabled, which is fine for a try with resources.
+     */
+    private RenderMetrics.Recording recordCurrentMetrics() {
+        return currentMetrics == null ? null : currentMetrics.record();
+    }
+
+    private static void stopRecording(RenderMetrics.Recording recording) {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    private void finishMetrics() {
+        RenderMetrics metrics = currentMetrics;
+        if (metrics != null) {
+            currentMetrics = null;
+            metrics.renderFinished();
+            renderMetrics = metrics;
+            for (MetricsListener listener : metricsListener) {
+                listener.metricsRecorded(this, metrics);
+            }
+        }
+    }
+
+    /**
+     * Adds a {@link MetricsListener} that will be notified each time the
+     * document has been rendered.  This turns on metrics.
+     *
+     * @param listener
+     *            the listener to add.
+     */
+    public void addMetricsListener(final MetricsListener listener) {
+        if (listener != null) {
+            metricsListener.add(listener);
         }
     }
 
+    /**
+     * Removes a {@link MetricsListener}.
+     *
+     * @param listener
+     *            the listener to remove.
+     */
+    public void removeMetricsListener(final MetricsListener listener) {
+        metricsListener.remove(listener);
+    }
+
     /**
      * Adds a {@link RenderListener} that will be notified during
      * {@link #renderDocument() rendering}.
@@ -275,15 +788,48 @@ public class PDFDoc implements RenderListener {
 
     @Override
     public void beforePage(final RenderContext renderContext) throws Exception {
+        GraphicsState graphicsState = renderContext.getGraphicsState();
         for (RenderListener listener : renderListener) {
+            //the listener may draw to the page
+            graphicsState.drawingBy(listener);
             listener.beforePage(renderContext);
+            graphicsState.drawnBy(listener);
         }
     }
 
     @Override
     public void afterPage(final RenderContext renderContext) throws Exception {
+        GraphicsState graphicsState = renderContext.getGraphicsState();
         for (RenderListener listener : renderListener) {
+            graphicsState.drawingBy(listener);
             listener.afterPage(renderContext);
+            graphicsState.drawnBy(listener);
+        }
+        if (currentReport != null) {
+            currentReport.pageFinished(scratchDirectory);
+        }
+    }
+
+    /**
+     * Counts the bytes written, for {@link Counter#BYTES_WRITTEN}.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
         }
     }
     
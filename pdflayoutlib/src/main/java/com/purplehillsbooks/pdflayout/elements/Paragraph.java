@@ -15,7 +15,6 @@ import com.purplehillsbooks.pdflayout.text.TextFlow;
 import com.purplehillsbooks.pdflayout.text.TextFragment;
 import com.purplehillsbooks.pdflayout.text.TextLine;
 import com.purplehillsbooks.pdflayout.text.TextSequence;
-import com.purplehillsbooks.pdflayout.text.TextSequenceUtil;
 import com.purplehillsbooks.pdflayout.text.WidthRespecting;
 
 /**
@@ -51,7 +50,8 @@ public class Paragraph extends Dividable implements WidthRespecting  {
     
     /**
      * construct a paragraph when you already have the text for it.
-     * Adopts the TextFlow object directly, so be careful.
+     * Adopts the TextFlow object directly, so be careful: if the flow is
+     * changed afterwards, call {@link #invalidateMeasurements()}.
      * Otherwise, you can construct an empty paragraph, and then
      * insert the text.
      * 
@@ -76,12 +76,15 @@ public class Paragraph extends Dividable implements WidthRespecting  {
 
     @Override
     public float getHeight() throws Exception {
+        if (isHeightCached()) {
+            return getCachedHeight();
+        }
         if (paragraphText.isEmpty()) {
             //if empty, completely ignore this paragraph
-            return 0;
+            return cacheHeight(0);
         }
         float textHeight = paragraphText.getHeight();
-        return textHeight + spaceBefore + spaceAfter;
+        return cacheHeight(textHeight + spaceBefore + spaceAfter);
     }
     
     
@@ -89,13 +92,19 @@ public class Paragraph extends Dividable implements WidthRespecting  {
         return spaceBefore;
     }
     public void setSpaceBefore(float val) {
-        spaceBefore = val;
+        if (spaceBefore != val) {
+            spaceBefore = val;
+            invalidateMeasurements();
+        }
     }
     public float getSpaceAfter() {
         return spaceAfter;
     }
     public void setSpaceAfter(float val) {
-        spaceAfter = val;
+        if (spaceAfter != val) {
+            spaceAfter = val;
+            invalidateMeasurements();
+        }
     }
     
     /**
@@ -128,15 +137,19 @@ public class Paragraph extends Dividable implements WidthRespecting  {
 
     public void setLineSpacing(float lineSpacing) {
         paragraphText.setLineSpacing(lineSpacing);
+        invalidateMeasurements();
     }
     public void setApplyLineSpacingToFirstLine(boolean applyLineSpacingToFirstLine) {
         paragraphText.setApplyLineSpacingToFirstLine(applyLineSpacingToFirstLine);
+        invalidateMeasurements();
     }
     public void add(final TextSequence sequence) {
         paragraphText.add(sequence);
+        invalidateMeasurements();
     }
     public void add(final TextFragment fragment) {
         paragraphText.add(fragment);
+        invalidateMeasurements();
     }
 
     @Override
@@ -149,7 +162,7 @@ public class Paragraph extends Dividable implements WidthRespecting  {
         }
         //we need to move the paragraph down by the amount of spaceBefore
         Position spacedPosition = upperLeft.add(0, -spaceBefore);
-        paragraphText.drawText(renderContext.contentStream, spacedPosition, getAlignment(), drawListener );
+        paragraphText.drawText(renderContext.getGraphicsState(), spacedPosition, getAlignment(), drawListener );
         
         //for debug make a rectangle
         /*
@@ -164,55 +177,81 @@ public class Paragraph extends Dividable implements WidthRespecting  {
     }
 
     /**
-     * Word-wraps and divides the given text sequence.
+     * Word-wraps and divides the given text sequence.  Both parts keep the
+     * lines as they have been wrapped here, so a long paragraph that flows
+     * over many pages is only wrapped and measured once.
      *
      * @return the Divided element containing the parts.
      */
     @Override
     public Divided divide(float remainingHeight, RenderContext renderContext, boolean topOfPage) throws Exception {
-        final float maxWidth = getMaxWidth();
-        final float maxHeight = remainingHeight;
-        TextFlow wrapped = TextSequenceUtil.wordWrap(paragraphText, maxWidth);
-        List<TextLine> lines = wrapped.getLines();
+        List<TextLine> lines = paragraphText.getWrappedLines();
+        int index = countFittingLines(lines, remainingHeight);
+
+        Paragraph first = new Paragraph(paragraphText.subFlow(0, index));
+        Paragraph tail = new Paragraph(paragraphText.subFlow(index, lines.size()));
 
-        Paragraph first = new Paragraph();
-        Paragraph tail = new Paragraph();
-        
-        first.setMaxWidth(this.getMaxWidth());
-        first.setLineSpacing(paragraphText.getLineSpacing());
         first.setAlignment(this.getAlignment());
-        first.setApplyLineSpacingToFirstLine(paragraphText.isApplyLineSpacingToFirstLine());
         first.setSpaceBefore(this.getSpaceBefore());
         first.setSpaceAfter(0);
-        
-        tail.setMaxWidth(this.getMaxWidth());
-        tail.setLineSpacing(paragraphText.getLineSpacing());
+
         tail.setAlignment(this.getAlignment());
-        tail.setApplyLineSpacingToFirstLine(paragraphText.isApplyLineSpacingToFirstLine());
         tail.setSpaceBefore(0);
         tail.setSpaceAfter(this.getSpaceAfter());
 
-        int index = 0;
-        while (index < lines.size() && first.getHeight() < maxHeight) {
-            TextLine line = lines.get(index);
-            float newHeight = line.getHeight();
-            if (first.getHeight()+newHeight > maxHeight) {
-                break;
+        adopt(first);
+        adopt(tail);
+        return new Divided(first, tail);
+    }
+
+    /**
+     * Counts how many lines go into the first part. A line is taken as long
+     * as the lines before it (including the space before) stay below the
+     * max height, and the line itself still fits below it. When the line
+     * spacing is at least 1, this holds for all lines up to some count, so
+     * the count is found by a binary search over the heights.
+     */
+    private int countFittingLines(List<TextLine> lines, float maxHeight) throws Exception {
+        if (paragraphText.getLineSpacing() < 1 || spaceBefore < 0) {
+            int count = 0;
+            while (count < lines.size() && fits(lines, count, maxHeight)) {
+                ++count;
+            }
+            return count;
+        }
+        int low = 0;
+        int high = lines.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (fits(lines, middle, maxHeight)) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
-            first.add(line);
-            ++index;
         }
+        return low;
+    }
 
-        while (index < lines.size()) {
-            tail.add(lines.get(index));
-            ++index;
+    /**
+     * @return <code>true</code> if the line at the given index still fits
+     * after all lines before it.
+     */
+    private boolean fits(List<TextLine> lines, int index, float maxHeight) throws Exception {
+        float height = 0;
+        if (index > 0) {
+            height = spaceBefore + paragraphText.getHeight(index);
         }
-        return new Divided(first, tail);
+        return height < maxHeight
+                && height + lines.get(index).getHeight() <= maxHeight;
     }
 
     @Override
     public void removeLeadingEmptyVerticalSpace() throws Exception {
-        paragraphText = paragraphText.removeLeadingEmptyLines();
+        TextFlow trimmed = paragraphText.removeLeadingEmptyLines();
+        if (trimmed != paragraphText) {
+            paragraphText = trimmed;
+            invalidateMeasurements();
+        }
     }
 
 
@@ -234,6 +273,7 @@ public class Paragraph extends Dividable implements WidthRespecting  {
             String unprocessed = text.substring(start);
             paragraphText.addText(unprocessed, size, font);
         }
+        invalidateMeasurements();
         return this;
     }
     @Override
@@ -242,12 +282,18 @@ public class Paragraph extends Dividable implements WidthRespecting  {
     }
     @Override
     public void setMaxWidth(float maxWidth) {
-        paragraphText.setMaxWidth(maxWidth);
-        
+        if (paragraphText.getMaxWidth() != maxWidth) {
+            paragraphText.setMaxWidth(maxWidth);
+            invalidateMeasurements();
+            rememberConstraint(maxWidth);
+        }
     }
     @Override
     public float getWidth() throws Exception {
-        return paragraphText.getWidth();
+        if (isWidthCached()) {
+            return getCachedWidth();
+        }
+        return cacheWidth(paragraphText.getWidth());
     }
     public String toString() {
         return "Paragraph [text=" + paragraphText + "]";
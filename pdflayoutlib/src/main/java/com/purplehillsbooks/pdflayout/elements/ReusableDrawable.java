@@ -0,0 +1,94 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+
+import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
+import com.purplehillsbooks.pdflayout.text.DrawListener;
+import com.purplehillsbooks.pdflayout.text.Position;
+import com.purplehillsbooks.pdflayout.text.WidthRespecting;
+
+/**
+ * <p>
+ * Marks a drawable that shows the same on every page it is drawn on, like a
+ * letterhead or a logo.  It is drawn once per document into a form XObject,
+ * and every page only refers to that form, so the content is neither drawn
+ * again nor stored again in the file.
+ * </p>
+ * <p>
+ * The content of a form can not have annotations, so links in the wrapped
+ * drawable show as text that can not be clicked.  Underlines are part of the
+ * content, and are drawn into the form.  Use the same instance on every
+ * page: the form is remembered for the instance, and drawn again only if its
+ * size changes.
+ * </p>
+ */
+public class ReusableDrawable extends Drawable implements WidthRespecting {
+
+    private final Drawable drawable;
+
+    /**
+     * Creates a reusable drawable.
+     *
+     * @param drawable
+     *            the drawable to show.
+     */
+    public ReusableDrawable(final Drawable drawable) {
+        this.drawable = drawable;
+        adopt(drawable);
+    }
+
+    /**
+     * @return the drawable shown.
+     */
+    public Drawable getDrawable() {
+        return drawable;
+    }
+
+    @Override
+    public float getWidth() throws Exception {
+        return drawable.getWidth();
+    }
+
+    @Override
+    public float getHeight() throws Exception {
+        return drawable.getHeight();
+    }
+
+    @Override
+    public float getMaxWidth() {
+        if (drawable instanceof WidthRespecting) {
+            return ((WidthRespecting) drawable).getMaxWidth();
+        }
+        return -1;
+    }
+
+    @Override
+    public void setMaxWidth(float maxWidth) {
+        if (drawable instanceof WidthRespecting) {
+            ((WidthRespecting) drawable).setMaxWidth(maxWidth);
+        }
+    }
+
+    @Override
+    public Position getAbsolutePosition() {
+        return drawable.getAbsolutePosition();
+    }
+
+    @Override
+    public void collectLeafDrawables(List<Drawable> leaves) {
+        drawable.collectLeafDrawables(leaves);
+    }
+
+    @Override
+    public void draw(RenderContext renderContext,
+            Position upperLeft, DrawListener drawListener) throws Exception {
+        PDFormXObject form = renderContext.getFormXObject(drawable);
+        renderContext.drawForm(form, upperLeft.getX(), upperLeft.getY() - getHeight());
+        if (drawListener != null) {
+            drawListener.drawn(this, upperLeft, getWidth(), getHeight());
+        }
+    }
+
+}
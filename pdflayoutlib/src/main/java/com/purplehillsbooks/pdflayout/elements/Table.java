@@ -58,7 +58,10 @@ public class Table extends Dividable {
     public void setColumnWidth(int columnNum, float width) {
         
         ColumnDefinition cd = columns.get(columnNum);
-        cd.width = width;
+        if (cd.width != width) {
+            cd.width = width;
+            invalidateMeasurements();
+        }
     }
     
     public float getColumnWidth(int columnNum) {
@@ -82,6 +85,7 @@ public class Table extends Dividable {
     }
     public void addRow(TableRow newRow) {
         rows.add(newRow);
+        invalidateMeasurements();
     }
     
     /**
@@ -89,25 +93,40 @@ public class Table extends Dividable {
      */
     public TableRow createNewRow() {
         TableRow newRow = new TableRow(this);
-        rows.add(newRow);
+        addRow(newRow);
         return newRow;
     }
     
     public float getWidth() {
+        if (isWidthCached()) {
+            return getCachedWidth();
+        }
         float totalWidth = 0;
         for (ColumnDefinition cd : columns) {
             totalWidth += cd.width;
         }
-        return totalWidth;
+        return cacheWidth(totalWidth);
+    }
+
+    @Override
+    public void collectLeafDrawables(List<Drawable> leaves) {
+        for (TableRow tr : rows) {
+            adopt(tr);
+            tr.collectLeafDrawables(leaves);
+        }
     }
 
     @Override
     public float getHeight() throws Exception {
+        if (isHeightCached()) {
+            return getCachedHeight();
+        }
         float total = 0;
         for (TableRow tr : rows) {
+            adopt(tr);
             total = total + tr.getHeight();
         }
-        return total;
+        return cacheHeight(total);
     }
 
     @Override
@@ -137,24 +156,35 @@ public class Table extends Dividable {
         
         for (int i = 0; i<rows.size(); i++) {
             TableRow tr = rows.get(i);
-            if (remainingHeight>tr.getHeight()) {
+            float rowHeight = tr.getHeight();
+            if (remainingHeight>rowHeight) {
                 headTable.addRow(tr);
             }
             else {
                 tailTable.addRow(tr);
             }
-            remainingHeight -= tr.getHeight();
+            remainingHeight -= rowHeight;
         }
+        adopt(headTable);
+        adopt(tailTable);
         return new Divided(headTable, tailTable);
     }
     
     public void propagateMaxWidthToChildren() {
+        float width = getWidth();
+        if (isConstraintCurrent(width)) {
+            return;
+        }
         for (TableRow row : rows) {
+            adopt(row);
             for (int i=0; i<columns.size(); i++) {
                 Frame cell = row.getCell(i);
+                //a cell changed after this pass has to be noticed by the next one
+                adopt(cell);
                 cell.setMaxWidth(getColumnWidth(i));
             }
         }
+        rememberConstraint(width);
     }
 
 }
@@ -26,6 +26,8 @@ public class TableRow extends Drawable {
     
     public TableRow(Table tableDef) {
         table = tableDef;
+        //the width of the row is the width of the table
+        adopt(tableDef);
         cells = new ArrayList<Frame>();
         for (int i=0; i<tableDef.getRowSize(); i++) {
             Frame cell = new Frame();
@@ -44,6 +46,14 @@ public class TableRow extends Drawable {
         return cd;
     }
 
+    @Override
+    public void collectLeafDrawables(List<Drawable> leaves) {
+        for (Frame cell : cells) {
+            adopt(cell);
+            cell.collectLeafDrawables(leaves);
+        }
+    }
+
     @Override
     public float getWidth() throws Exception {
         return table.getWidth();
@@ -51,13 +61,15 @@ public class TableRow extends Drawable {
 
     @Override
     public float getHeight() throws Exception {
+        if (isHeightCached()) {
+            return getCachedHeight();
+        }
         float biggest = 0;
         for (Frame cell : cells) {
-            if (cell.getHeight()>biggest) {
-                biggest = cell.getHeight();
-            }
+            adopt(cell);
+            biggest = Math.max(biggest, cell.getHeight());
         }
-        return biggest;
+        return cacheHeight(biggest);
     }
 
     @Override
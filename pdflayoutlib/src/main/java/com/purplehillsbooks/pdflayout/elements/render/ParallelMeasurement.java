@@ -0,0 +1,123 @@
+package com.purplehillsbooks.pdflayout.elements.render;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.purplehillsbooks.pdflayout.elements.Drawable;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
+
+/**
+ * <p>
+ * Measures the leaves of a drawable tree in parallel before it is paginated,
+ * see {@link PDFDoc#setMeasurementPool(ForkJoinPool)}.
+ * </p>
+ * <p>
+ * Once the max widths have been propagated, word wrapping a paragraph only
+ * depends on the paragraph itself, so all paragraphs (including the ones in
+ * table cells) can be wrapped and measured at the same time.  The results
+ * are remembered by the drawables, so the pagination that follows only reads
+ * them.  The containers themselves are left to the pagination, adding up
+ * remembered heights is cheap.
+ * </p>
+ */
+class ParallelMeasurement extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Drawable> leaves;
+    private final int begin;
+    private final int end;
+    //the metrics of the rendering thread, recorded on the pool threads as well
+    private final RenderMetrics metrics;
+
+    private ParallelMeasurement(List<Drawable> leaves, int begin, int end, RenderMetrics metrics) {
+        this.leaves = leaves;
+        this.begin = begin;
+        this.end = end;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Measures all leaves of the drawable on the given pool, and waits until
+     * they are done.
+     *
+     * @param drawable
+     *            the drawable to measure, with its max width already set.
+     * @param pool
+     *            the pool to run on.
+     * @throws Exception
+     *             the first exception thrown while measuring.
+     */
+    static void measure(Drawable drawable, ForkJoinPool pool) throws Exception {
+        List<Drawable> collected = new ArrayList<Drawable>();
+        drawable.collectLeafDrawables(collected);
+        //a drawable added in several places must not be measured on two
+        //threads at once, its cached measurements are not thread-safe
+        Set<Drawable> distinct = Collections.newSetFromMap(new IdentityHashMap<Drawable, Boolean>());
+        List<Drawable> leaves = new ArrayList<Drawable>();
+        for (Drawable leaf : collected) {
+            if (distinct.add(leaf)) {
+                leaves.add(leaf);
+            }
+        }
+        if (leaves.size() < 2) {
+            return;
+        }
+        try {
+            pool.invoke(new ParallelMeasurement(leaves, 0, leaves.size(), RenderMetrics.current()));
+        }
+        catch (RuntimeException e) {
+            //the pool might wrap the exception again when passing it on
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof MeasurementException) {
+                    throw (Exception) cause.getCause();
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (end - begin == 1) {
+            Drawable leaf = leaves.get(begin);
+            RenderMetrics.Recording recording = metrics == null ? null : metrics.record();
+            RenderMetrics.Phase previous = RenderMetrics.enter(RenderMetrics.Phase.MEASURE);
+            try {
+                leaf.getWidth();
+                leaf.getHeight();
+            }
+            catch (Exception e) {
+                throw new MeasurementException(e);
+            }
+            finally {
+                RenderMetrics.exit(previous);
+                if (recording != null) {
+                    recording.close();
+                }
+            }
+            return;
+        }
+        int middle = (begin + end) >>> 1;
+        invokeAll(new ParallelMeasurement(leaves, begin, middle, metrics),
+                new ParallelMeasurement(leaves, middle, end, metrics));
+    }
+
+    /**
+     * Carries a checked exception out of the pool.
+     */
+    private static class MeasurementException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MeasurementException(Exception cause) {
+            super(cause);
+        }
+    }
+
+}
@@ -1,45 +1,140 @@
 package com.purplehillsbooks.pdflayout.elements.render;
 
 import java.awt.Color;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import com.purplehillsbooks.pdflayout.elements.ControlElement;
+import com.purplehillsbooks.pdflayout.elements.Cutter;
 import com.purplehillsbooks.pdflayout.elements.Dimension;
+import com.purplehillsbooks.pdflayout.elements.Drawable;
 import com.purplehillsbooks.pdflayout.elements.PDFDoc;
 import com.purplehillsbooks.pdflayout.elements.Element;
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.HorizontalRuler;
+import com.purplehillsbooks.pdflayout.elements.ImageElement;
+import com.purplehillsbooks.pdflayout.elements.ImageSource;
 import com.purplehillsbooks.pdflayout.elements.Orientation;
 import com.purplehillsbooks.pdflayout.elements.PageFormat;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.elements.ReusableDrawable;
+import com.purplehillsbooks.pdflayout.elements.Table;
+import com.purplehillsbooks.pdflayout.elements.TableRow;
+import com.purplehillsbooks.pdflayout.elements.VerticalSpacer;
+import com.purplehillsbooks.pdflayout.text.CoordinateDrawListener;
 import com.purplehillsbooks.pdflayout.text.DrawContext;
 import com.purplehillsbooks.pdflayout.text.DrawListener;
 import com.purplehillsbooks.pdflayout.text.Position;
 import com.purplehillsbooks.pdflayout.text.StyledText;
+import com.purplehillsbooks.pdflayout.text.annotations.Annotated;
 import com.purplehillsbooks.pdflayout.text.annotations.AnnotationDrawListener;
+import com.purplehillsbooks.pdflayout.text.annotations.UnderlineAnnotationProcessor;
 import com.purplehillsbooks.pdflayout.util.CompatibilityHelper;
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
+import com.purplehillsbooks.pdflayout.util.ImageCache;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Counter;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Phase;
 
 /**
  * The render context is a container providing all state of the current
  * rendering process.
  */
-public class RenderContext implements DrawContext, DrawListener {
+public class RenderContext implements DrawContext, CoordinateDrawListener {
     
-    static public float HEADER_SIZE = 8;
-    //static public PDType1Font HEADER_FONT = PDType1Font.TIMES_ROMAN;
+    /**
+     * The size of headers and footers, unless the document sets another one
+     * with {@link PDFDoc#setHeaderFont(PDFont, float)}.
+     */
+    public final static float DEFAULT_HEADER_SIZE = 8;
+    /**
+     * The font of headers and footers, unless the document sets another one
+     * with {@link PDFDoc#setHeaderFont(PDFont, float)}.
+     */
+    public final static PDFont DEFAULT_HEADER_FONT = PDType1Font.HELVETICA;
+    /**
+     * The header size new documents start with.  Changing it affects every
+     * document created afterwards, on all threads.
+     *
+     * @deprecated use {@link PDFDoc#setHeaderFont(PDFont, float)} instead.
+     */
+    @Deprecated
+    static public float HEADER_SIZE = DEFAULT_HEADER_SIZE;
+    /**
+     * The header font new documents start with.  Changing it affects every
+     * document created afterwards, on all threads.
+     *
+     * @deprecated use {@link PDFDoc#setHeaderFont(PDFont, float)} instead.
+     */
+    @Deprecated
     static public PDType1Font HEADER_FONT = PDType1Font.HELVETICA;
-    //static public PDType1Font HEADER_FONT = PDType1Font.COURIER;
+    /**
+     * How close a drawable may come to the edges of the clip area before it
+     * is clipped, which covers borders up to twice as wide.
+     */
+    public final static float CLIP_ALLOWANCE = 5;
+    /**
+     * Replaced by the number of the page in headers and footers.
+     */
+    public final static String PAGE_NUMBER_TOKEN = "{#}";
+    /**
+     * Replaced by the number of pages of the document in headers and footers,
+     * e.g. "Page {#} of {##}".  The number is only known once the document is
+     * complete, so these headers are drawn into a form that is filled in when
+     * the render context is {@link #close() closed}.
+     */
+    public final static String PAGE_COUNT_TOKEN = "{##}";
+
+    /**
+     * The drawables of this library, which set the graphics state they need
+     * through the {@link GraphicsState}, so they are drawn without saving and
+     * resetting it.
+     */
+    private static final Set<Class<?>> LIBRARY_DRAWABLES = Collections.unmodifiableSet(
+            new HashSet<Class<?>>(Arrays.<Class<?>>asList(Cutter.class, Frame.class,
+                    HorizontalRuler.class, ImageElement.class, Paragraph.class,
+                    ReusableDrawable.class, Table.class, TableRow.class,
+                    VerticalSpacer.class)));
 
     private final PDFDoc document;
     public final PDDocument pdDocument;
     private PDPage currentPage;
     private int pageIndex = 0;
     public PDPageContentStream contentStream;
+    private GraphicsState graphicsState;
+    //the positions are kept as coordinates, because they change with every
+    //drawable resp. every word drawn, and are only asked for now and then
+    private float currentX;
+    private float currentY;
+    //the current position as handed out, null if it moved since
     private Position currentPosition;
     private Position markedPosition;
+    private float maxXOnPage;
+    private float maxYOnPage;
+    //the maximum position as handed out, null if it changed since
     private Position maxPositionOnPage;
     private Layout layout = new VerticalLayout();
 
@@ -47,6 +142,27 @@ public class RenderContext implements DrawContext, DrawListener {
     private PageFormat pageFormat;
 
     private AnnotationDrawListener annotationDrawListener;
+    //of the line of text being drawn
+    private float extraWordSpacing;
+
+    //every image is embedded once per document, no matter how often it is drawn.
+    //The keys are weak, so that the images of elements released while
+    //streaming can be collected; neither class overrides equals, so they are
+    //still found by identity
+    private final Map<BufferedImage, PDImageXObject> imageCache = new WeakHashMap<BufferedImage, PDImageXObject>();
+    private final Map<ImageSource, PDImageXObject> imageSourceCache = new WeakHashMap<ImageSource, PDImageXObject>();
+    //scaled down images, by the size in pixels
+    private final Map<ImageSource, Map<String, PDImageXObject>> scaledImageCache = new WeakHashMap<ImageSource, Map<String, PDImageXObject>>();
+    //and once per content, behind the caches by identity that spare the hashing
+    private final Map<String, PDImageXObject> imageContentCache = new HashMap<String, PDImageXObject>();
+    //the same goes for reusable drawables, and the headers without page number
+    private final Map<Drawable, DrawnForm> formCache = new IdentityHashMap<Drawable, DrawnForm>();
+    private final Map<String, PDFormXObject> headerFormCache = new HashMap<String, PDFormXObject>();
+    //the headers with the page count, filled in when closing
+    private final Map<String, PageCountForm> pageCountForms = new LinkedHashMap<String, PageCountForm>();
+    //the streams drawing is redirected from while drawing into a form
+    private final List<PDPageContentStream> outerContentStreams = new ArrayList<PDPageContentStream>();
+    private final List<GraphicsState> outerGraphicsStates = new ArrayList<GraphicsState>();
     
     public String headerLeft;
     public String headerCenter;
@@ -110,8 +226,15 @@ public class RenderContext implements DrawContext, DrawListener {
      *         {@link PDFDoc document} margins.
      */
     public Position getUpperLeft() {
-        return new Position(getPageFormat().getMarginLeft(), getPageHeight()
-                - getPageFormat().getMarginTop());
+        return new Position(getUpperLeftX(), getUpperLeftY());
+    }
+
+    private float getUpperLeftX() {
+        return getPageFormat().getMarginLeft();
+    }
+
+    private float getUpperLeftY() {
+        return getPageHeight() - getPageFormat().getMarginTop();
     }
     
     /**
@@ -125,7 +248,7 @@ public class RenderContext implements DrawContext, DrawListener {
      * @return true if nothing written to the current page yet
      */
     public boolean isTopOfPage() {
-        return currentPosition.equals(getUpperLeft());
+        return currentX == getUpperLeftX() && currentY == getUpperLeftY();
     }
 
     /**
@@ -142,6 +265,9 @@ public class RenderContext implements DrawContext, DrawListener {
      *         lower left corner).
      */
     public Position getCurrentPosition() {
+        if (currentPosition == null) {
+            currentPosition = new Position(currentX, currentY);
+        }
         return currentPosition;
     }
 
@@ -166,14 +292,20 @@ public class RenderContext implements DrawContext, DrawListener {
      *            to move vertically.
      */
     public void movePositionBy(final float x, final float y) {
-        currentPosition = currentPosition.add(x, y);
+        setCurrentPosition(currentX + x, currentY + y);
+    }
+
+    private void setCurrentPosition(final float x, final float y) {
+        currentX = x;
+        currentY = y;
+        currentPosition = null;
     }
 
     /**
      * Resets the position to {@link #getUpperLeft()}.
      */
     public void resetPositionToUpperLeft() {
-        currentPosition = getUpperLeft();
+        setCurrentPosition(getUpperLeftX(), getUpperLeftY());
     }
 
     /**
@@ -181,8 +313,7 @@ public class RenderContext implements DrawContext, DrawListener {
      * current y.
      */
     public void resetPositionToLeft() {
-        currentPosition = new Position(getUpperLeft().getX(),
-                currentPosition.getY());
+        setCurrentPosition(getUpperLeftX(), currentY);
     }
 
     /**
@@ -190,8 +321,7 @@ public class RenderContext implements DrawContext, DrawListener {
      * y of {@link #getMaxPositionOnPage()}.
      */
     protected void resetPositionToLeftEndOfPage() {
-        currentPosition = new Position(getUpperLeft().getX(),
-                getMaxPositionOnPage().getY());
+        setCurrentPosition(getUpperLeftX(), maxYOnPage);
     }
 
     /**
@@ -256,7 +386,7 @@ public class RenderContext implements DrawContext, DrawListener {
      * @return the remaining height on the page.
      */
     public float getRemainingHeight() {
-        return getCurrentPosition().getY() - getPageFormat().getMarginBottom();
+        return currentY - getPageFormat().getMarginBottom();
     }
 
     /**
@@ -286,6 +416,265 @@ public class RenderContext implements DrawContext, DrawListener {
         return contentStream;
     }
 
+    /**
+     * @return the tracker of the graphics state of the current page.  Use it
+     *         to set colors, line styles and fonts, so that they are only
+     *         written when they change.
+     */
+    public GraphicsState getGraphicsState() {
+        return graphicsState;
+    }
+
+    /**
+     * @return <code>true</code> if the given box lies within the area of the
+     *         page between the top and bottom margin, which is the area
+     *         drawables are clipped to.  Strokes reach out of the box by half
+     *         their width, so the box must keep a distance of
+     *         {@link #CLIP_ALLOWANCE} to the edges of the area.
+     */
+    public boolean isInsideClipArea(float x, float upperY, float width, float height) {
+        PageFormat pageFormat = getPageFormat();
+        float bottom = pageFormat.getMarginBottom() + CLIP_ALLOWANCE;
+        float top = pageFormat.getMarginBottom() + getHeight() - CLIP_ALLOWANCE;
+        return x >= CLIP_ALLOWANCE && x + width <= getPageWidth() - CLIP_ALLOWANCE
+                && upperY <= top && upperY - height >= bottom;
+    }
+
+    /**
+     * Clips to the area of the page between the top and bottom margin.
+     * Save the graphics state before, and restore it afterwards.
+     *
+     * @throws Exception
+     *             by pdfbox
+     */
+    public void clipToClipArea() throws Exception {
+        contentStream.addRect(0, getPageFormat().getMarginBottom(), getPageWidth(),
+                getHeight());
+        CompatibilityHelper.clip(contentStream);
+    }
+
+    /**
+     * Returns the image XObject for the given image, embedding the image into
+     * the document the first time it is drawn.  The cache belongs to this
+     * render context, so documents rendered on different threads do not
+     * share (or wait for) each other's images.  Equal images share the
+     * XObject, and the encoding is taken from the image cache of the
+     * document if it is there, see {@link #getImageXObject(ImageSource)}.
+     *
+     * @param image
+     *            the image to draw.
+     * @return the XObject to draw.
+     * @throws Exception
+     *             by pdfbox
+     */
+    public PDImageXObject getImageXObject(final BufferedImage image) throws Exception {
+        PDImageXObject xObject = imageCache.get(image);
+        if (xObject == null) {
+            ImageSource source = ImageSource.of(image);
+            xObject = getImageXObjectByContent(source, source.getWidth(), source.getHeight());
+            imageCache.put(image, xObject);
+        }
+        return xObject;
+    }
+
+    /**
+     * Returns the image XObject for the given source, embedding it into the
+     * document the first time it is drawn, see
+     * {@link ImageSource#createXObject(PDDocument)}.  A source of an image in
+     * memory shares the XObject of {@link #getImageXObject(BufferedImage)}.
+     * Sources with the same {@link ImageSource#getContentKey() content} are
+     * embedded only once, and an image already encoded for another document
+     * is copied from the {@link PDFDoc#getImageCache() image cache} instead
+     * of being encoded again.
+     *
+     * @param source
+     *            the image to draw.
+     * @return the XObject to draw.
+     * @throws Exception
+     *             by pdfbox, or if the image can not be read.
+     */
+    public PDImageXObject getImageXObject(final ImageSource source) throws Exception {
+        if (source.isDecoded()) {
+            return getImageXObject(source.getImage());
+        }
+        PDImageXObject xObject = imageSourceCache.get(source);
+        if (xObject == null) {
+            xObject = getImageXObjectByContent(source, source.getWidth(), source.getHeight());
+            imageSourceCache.put(source, xObject);
+        }
+        return xObject;
+    }
+
+    /**
+     * Returns the image XObject for the given source scaled down to the given
+     * number of pixels, see
+     * {@link ImageSource#createXObject(PDDocument, int, int)}.  The scaled
+     * images are shared the same way as in
+     * {@link #getImageXObject(ImageSource)}, by content and size.
+     *
+     * @param source
+     *            the image to draw.
+     * @param width
+     *            the most pixels across.
+     * @param height
+     *            the most pixels down.
+     * @return the XObject to draw.
+     * @throws Exception
+     *             by pdfbox, or if the image can not be read.
+     */
+    public PDImageXObject getImageXObject(final ImageSource source, final int width, final int height)
+            throws Exception {
+        if (width >= source.getWidth() && height >= source.getHeight()) {
+            return getImageXObject(source);
+        }
+        int scaledWidth = Math.min(width, source.getWidth());
+        int scaledHeight = Math.min(height, source.getHeight());
+        Map<String, PDImageXObject> bySize = scaledImageCache.get(source);
+        if (bySize == null) {
+            bySize = new HashMap<String, PDImageXObject>();
+            scaledImageCache.put(source, bySize);
+        }
+        String size = scaledWidth + "x" + scaledHeight;
+        PDImageXObject xObject = bySize.get(size);
+        if (xObject == null) {
+            xObject = getImageXObjectByContent(source, scaledWidth, scaledHeight);
+            bySize.put(size, xObject);
+        }
+        return xObject;
+    }
+
+    private PDImageXObject getImageXObjectByContent(final ImageSource source, final int width,
+            final int height) throws Exception {
+        String key = source.getContentKey();
+        if (width != source.getWidth() || height != source.getHeight()) {
+            key += "@" + width + "x" + height;
+        }
+        PDImageXObject xObject = imageContentCache.get(key);
+        if (xObject != null) {
+            return xObject;
+        }
+        ImageCache sharedCache = document.getImageCache();
+        if (sharedCache != null) {
+            xObject = sharedCache.get(pdDocument, key);
+        }
+        if (xObject == null) {
+            xObject = source.createXObject(pdDocument, width, height);
+            if (sharedCache != null) {
+                sharedCache.put(key, xObject);
+            }
+        }
+        imageContentCache.put(key, xObject);
+        RenderMetrics.count(Counter.IMAGES, 1);
+        return xObject;
+    }
+
+    /**
+     * Returns a form XObject showing the given drawable, drawing it into the
+     * form the first time.  The form is drawn again if the size of the
+     * drawable has changed since.  Underlines are drawn into the form as
+     * well, but links need an annotation on the page, so the text of links
+     * shows without being clickable.
+     *
+     * @param drawable
+     *            the drawable to show.
+     * @return the form, with the lower left corner of the drawable at the
+     *         origin.
+     * @throws Exception
+     *             by pdfbox
+     */
+    public PDFormXObject getFormXObject(final Drawable drawable) throws Exception {
+        float width = drawable.getWidth();
+        float height = drawable.getHeight();
+        DrawnForm drawn = formCache.get(drawable);
+        if (drawn == null || drawn.width != width || drawn.height != height) {
+            //borders may reach out of the drawable by half their width
+            PDFormXObject form = beginForm(new PDRectangle(-CLIP_ALLOWANCE,
+                    -CLIP_ALLOWANCE, width + 2 * CLIP_ALLOWANCE,
+                    height + 2 * CLIP_ALLOWANCE));
+            try {
+                final UnderlineAnnotationProcessor underlines = new UnderlineAnnotationProcessor();
+                drawable.draw(this, new Position(0, height), new DrawListener() {
+                    @Override
+                    public void drawn(Object drawnObject, Position upperLeft,
+                            float drawnWidth, float drawnHeight) {
+                        if (!(drawnObject instanceof Annotated)) {
+                            return;
+                        }
+                        try {
+                            underlines.annotatedObjectDrawn((Annotated) drawnObject,
+                                    RenderContext.this, upperLeft, drawnWidth, drawnHeight);
+                        } catch (Exception e) {
+                            throw new RuntimeException(
+                                    "exception on annotation processing", e);
+                        }
+                    }
+                });
+                //still drawing into the form
+                underlines.afterPage(this);
+            }
+            finally {
+                endForm();
+            }
+            drawn = new DrawnForm(form, width, height);
+            formCache.put(drawable, drawn);
+        }
+        return drawn.form;
+    }
+
+    /**
+     * Draws the form with its origin at the given position.
+     *
+     * @param form
+     *            the form to draw.
+     * @param x
+     *            the x position of the origin of the form.
+     * @param y
+     *            the y position of the origin of the form.
+     * @throws Exception
+     *             by pdfbox
+     */
+    public void drawForm(final PDFormXObject form, final float x, final float y) throws Exception {
+        if (x == 0 && y == 0) {
+            contentStream.drawForm(form);
+            return;
+        }
+        graphicsState.saveGraphicsState();
+        CompatibilityHelper.transform(contentStream, 1, 0, 0, 1, x, y);
+        contentStream.drawForm(form);
+        graphicsState.restoreGraphicsState();
+    }
+
+    private PDFormXObject createForm(final PDRectangle bBox) {
+        PDFormXObject form = new PDFormXObject(pdDocument);
+        form.setResources(new PDResources());
+        form.setBBox(bBox);
+        return form;
+    }
+
+    private PDFormXObject beginForm(final PDRectangle bBox) throws Exception {
+        return beginForm(createForm(bBox));
+    }
+
+    /**
+     * Redirects all drawing into the form, until {@link #endForm()} is
+     * called.  Forms are drawn in the middle of a page, so the stream of the
+     * page is put back afterwards.
+     */
+    private PDFormXObject beginForm(final PDFormXObject form) throws Exception {
+        OutputStream out = form.getContentStream().createOutputStream(COSName.FLATE_DECODE);
+        outerContentStreams.add(contentStream);
+        outerGraphicsStates.add(graphicsState);
+        contentStream = new PDPageContentStream(pdDocument, form, out);
+        graphicsState = new GraphicsState(contentStream, LIBRARY_DRAWABLES);
+        return form;
+    }
+
+    private void endForm() throws Exception {
+        contentStream.close();
+        contentStream = outerContentStreams.remove(outerContentStreams.size() - 1);
+        graphicsState = outerGraphicsStates.remove(outerGraphicsStates.size() - 1);
+    }
+
     /**
      * @return the current page index (starting from 0).
      */
@@ -334,8 +723,10 @@ public class RenderContext implements DrawContext, DrawListener {
 
         this.currentPage = new PDPage(getPageFormat().getMediaBox());
         this.pdDocument.addPage(currentPage);
+        RenderMetrics.count(Counter.PAGES, 1);
         this.contentStream = CompatibilityHelper
                 .createAppendablePDPageContentStream(pdDocument, currentPage);
+        this.graphicsState = GraphicsState.forNewPage(contentStream, LIBRARY_DRAWABLES);
 
         // fix orientation
         if (getPageOrientation() != getPageFormat().getOrientation()) {
@@ -354,14 +745,20 @@ public class RenderContext implements DrawContext, DrawListener {
         resetPositionToUpperLeft();
         resetMaxPositionOnPage();
         document.beforePage(this);
-        annotationDrawListener.beforePage(this);
+        Phase previous = RenderMetrics.enter(Phase.ANNOTATIONS);
+        try {
+            annotationDrawListener.beforePage(this);
+        }
+        finally {
+            RenderMetrics.exit(previous);
+        }
         
         if (document.showMargins) {
             PageFormat pf = document.getPageFormat();
             Dimension dim = pf.getInteriorDimension();
-            contentStream.setStrokingColor(Color.red);
+            graphicsState.setStrokingColor(Color.red);
             //contentStream.setLineDashPattern(new float[]{9}, 0);
-            contentStream.setLineWidth(0.5f);
+            graphicsState.setLineWidth(0.5f);
             contentStream.addRect(pf.getMarginLeft(), pf.getMarginBottom(),
                     dim.getWidth(), dim.getHeight());
             contentStream.stroke();
@@ -377,74 +774,186 @@ public class RenderContext implements DrawContext, DrawListener {
     
     
     private String doPageNumbers(String source) {
-        int tokenPos = source.indexOf("{#}");
+        int tokenPos = source.indexOf(PAGE_NUMBER_TOKEN);
         if (tokenPos<0) {
             return source;
         }
         String before = source.substring(0,tokenPos);
-        String after = source.substring(tokenPos+3);
+        String after = source.substring(tokenPos+PAGE_NUMBER_TOKEN.length());
         return before + Integer.toString(pageIndex+1) + after;
     }
+
+    private static String doPageCount(String source, int pageCount) {
+        return source.replace(PAGE_COUNT_TOKEN, Integer.toString(pageCount));
+    }
+
+    /**
+     * What a header depends on, which decides when it can be written.
+     */
+    private enum HeaderKind {
+        CONSTANT, PAGE_NUMBER, PAGE_COUNT;
+
+        static HeaderKind of(String source) {
+            if (source.indexOf(PAGE_COUNT_TOKEN)>=0) {
+                return PAGE_COUNT;
+            }
+            if (source.indexOf(PAGE_NUMBER_TOKEN)>=0) {
+                return PAGE_NUMBER;
+            }
+            return CONSTANT;
+        }
+    }
+
+    /**
+     * @return the headers of the given kind, with the page number filled in,
+     *         and <code>null</code> for all others.  The slots are left,
+     *         center and right of the header, then of the footer.
+     */
+    private String[] getHeaders(HeaderKind kind) {
+        String[] slots = {headerLeft, headerCenter, headerRight,
+                footerLeft, footerCenter, footerRight};
+        String[] headers = new String[slots.length];
+        for (int i=0; i<slots.length; i++) {
+            if (slots[i]!=null && slots[i].length()>0 && HeaderKind.of(slots[i])==kind) {
+                headers[i] = doPageNumbers(slots[i]);
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * @return a key that is the same for equal headers, or <code>null</code>
+     *         if there are none.
+     */
+    private String getHeadersKey(String[] headers) {
+        StringBuilder key = new StringBuilder();
+        boolean any = false;
+        key.append(document.getHeaderFont().getName()).append(' ').append(document.getHeaderSize());
+        for (String header : headers) {
+            key.append('\n');
+            if (header!=null) {
+                key.append(header);
+                any = true;
+            }
+        }
+        return any ? key.toString() : null;
+    }
     
     private void drawHeaders() throws Exception {
         PageFormat pf = document.getPageFormat();
         PDRectangle mediaBox = pf.getMediaBox();
         
-
-        float headerLine = mediaBox.getUpperRightY()-(pf.getMarginTop()/2)-HEADER_SIZE;
-        float footerLine = mediaBox.getLowerLeftY()+(pf.getMarginBottom()/2);
-        
-        float leftSide = mediaBox.getLowerLeftX()+pf.getMarginLeft();
-        float rightSide = mediaBox.getUpperRightX()-pf.getMarginRight();
-        float center = (leftSide+rightSide)/2;
-        
         if (document.showMargins) {
-            contentStream.setStrokingColor(Color.red);
-            contentStream.setLineWidth(0.5f);
+            float headerSize = document.getHeaderSize();
+            float headerLine = mediaBox.getUpperRightY()-(pf.getMarginTop()/2)-headerSize;
+            float footerLine = mediaBox.getLowerLeftY()+(pf.getMarginBottom()/2);
+            float leftSide = mediaBox.getLowerLeftX()+pf.getMarginLeft();
+            float rightSide = mediaBox.getUpperRightX()-pf.getMarginRight();
+            graphicsState.setStrokingColor(Color.red);
+            graphicsState.setLineWidth(0.5f);
             contentStream.addRect(leftSide, headerLine,
-                    rightSide-leftSide, HEADER_SIZE);
+                    rightSide-leftSide, headerSize);
             contentStream.addRect(leftSide, footerLine,
-                    rightSide-leftSide, HEADER_SIZE);
+                    rightSide-leftSide, headerSize);
             contentStream.stroke();
         }
         
+        //the headers without a page number are the same on every page, so
+        //they are drawn once into a form that all these pages share
+        String[] constant = getHeaders(HeaderKind.CONSTANT);
+        String key = getHeadersKey(constant);
+        if (key != null) {
+            PDFormXObject form = headerFormCache.get(key);
+            if (form == null) {
+                form = beginForm(mediaBox);
+                try {
+                    writeHeaders(constant);
+                }
+                finally {
+                    endForm();
+                }
+                headerFormCache.put(key, form);
+            }
+            drawForm(form, 0, 0);
+        }
         
+        writeHeaders(getHeaders(HeaderKind.PAGE_NUMBER));
         
+        //the page count is not known yet, the form stays empty until closing
+        String[] counted = getHeaders(HeaderKind.PAGE_COUNT);
+        key = getHeadersKey(counted);
+        if (key != null) {
+            PageCountForm pageCountForm = pageCountForms.get(key);
+            if (pageCountForm == null) {
+                pageCountForm = new PageCountForm(createForm(mediaBox), counted);
+                pageCountForms.put(key, pageCountForm);
+            }
+            drawForm(pageCountForm.form, 0, 0);
+        }
+    }
 
+    /**
+     * Fills in the forms of the headers with the page count.
+     */
+    private void writePageCountHeaders() throws Exception {
+        int pageCount = pageIndex+1;
+        for (PageCountForm pageCountForm : pageCountForms.values()) {
+            String[] headers = new String[pageCountForm.headers.length];
+            for (int i=0; i<headers.length; i++) {
+                if (pageCountForm.headers[i]!=null) {
+                    headers[i] = doPageCount(pageCountForm.headers[i], pageCount);
+                }
+            }
+            beginForm(pageCountForm.form);
+            try {
+                writeHeaders(headers);
+            }
+            finally {
+                endForm();
+            }
+        }
+        pageCountForms.clear();
+    }
+
+    /**
+     * Writes the given headers, skipping the <code>null</code> ones.  The
+     * slots are left, center and right of the header, then of the footer.
+     */
+    private void writeHeaders(String[] headers) throws Exception {
+        PageFormat pf = document.getPageFormat();
+        PDRectangle mediaBox = pf.getMediaBox();
         
-        contentStream.setFont(HEADER_FONT, HEADER_SIZE);
+        PDFont headerFont = document.getHeaderFont();
+        float headerSize = document.getHeaderSize();
+
+        float headerLine = mediaBox.getUpperRightY()-(pf.getMarginTop()/2)-headerSize;
+        float footerLine = mediaBox.getLowerLeftY()+(pf.getMarginBottom()/2);
         
-        if (headerLeft!=null && headerLeft.length()>0) {
-            StyledText t = new StyledText(doPageNumbers(headerLeft), HEADER_SIZE, HEADER_FONT);
-            float width = t.getWidth();
-            writeStyledTextAtPosition(t, leftSide, headerLine, width);
-        }
-        if (headerCenter!=null && headerCenter.length()>0) {
-            StyledText t = new StyledText(doPageNumbers(headerCenter), HEADER_SIZE, HEADER_FONT);
-            float width = t.getWidth();
-            writeStyledTextAtPosition(t,center-(width/2), headerLine, width);
-        }
-        if (headerRight!=null && headerRight.length()>0) {
-            StyledText t = new StyledText(doPageNumbers(headerRight), HEADER_SIZE, HEADER_FONT);
-            float width = t.getWidth();
-            writeStyledTextAtPosition(t, rightSide-width, headerLine, width);
-        }
-        if (footerLeft!=null && footerLeft.length()>0) {
-            StyledText t = new StyledText(doPageNumbers(footerLeft), HEADER_SIZE, HEADER_FONT);
-            float width = t.getWidth();
-            writeStyledTextAtPosition(t, leftSide, footerLine, width);
-        }
-        if (footerCenter!=null && footerCenter.length()>0) {
-            StyledText t = new StyledText(doPageNumbers(footerCenter), HEADER_SIZE, HEADER_FONT);
-            float width = t.getWidth();
-            writeStyledTextAtPosition(t, center-(width/2), footerLine, width);
-        }
-        if (footerRight!=null && footerRight.length()>0) {
-            StyledText t = new StyledText(doPageNumbers(footerRight), HEADER_SIZE, HEADER_FONT);
+        float leftSide = mediaBox.getLowerLeftX()+pf.getMarginLeft();
+        float rightSide = mediaBox.getUpperRightX()-pf.getMarginRight();
+        float center = (leftSide+rightSide)/2;
+        
+        for (int i=0; i<headers.length; i++) {
+            if (headers[i]==null) {
+                continue;
+            }
+            graphicsState.setFont(headerFont, headerSize);
+            graphicsState.setNonStrokingColor(Color.black);
+            graphicsState.setWordSpacing(0);
+            
+            StyledText t = new StyledText(headers[i], headerSize, headerFont);
             float width = t.getWidth();
-            writeStyledTextAtPosition(t, rightSide-width, footerLine, width);
+            float line = i<3 ? headerLine : footerLine;
+            if (i%3==0) {
+                writeStyledTextAtPosition(t, leftSide, line, width);
+            }
+            else if (i%3==1) {
+                writeStyledTextAtPosition(t, center-(width/2), line, width);
+            }
+            else {
+                writeStyledTextAtPosition(t, rightSide-width, line, width);
+            }
         }
-        
     }
 
     /**
@@ -457,9 +966,15 @@ public class RenderContext implements DrawContext, DrawListener {
     private boolean closePage() throws Exception {
         if (contentStream != null) {
             
-            drawHeaders();
-            
-            annotationDrawListener.afterPage(this);
+            Phase previous = RenderMetrics.enter(Phase.DRAW);
+            try {
+                drawHeaders();
+                RenderMetrics.enter(Phase.ANNOTATIONS);
+                annotationDrawListener.afterPage(this);
+            }
+            finally {
+                RenderMetrics.exit(previous);
+            }
             document.afterPage(this);
 
             if (getPageFormat().getRotation() != 0) {
@@ -480,7 +995,15 @@ public class RenderContext implements DrawContext, DrawListener {
     public void close() throws IOException {
         try {
             closePage();
-            annotationDrawListener.afterRender();
+            Phase previous = RenderMetrics.enter(Phase.DRAW);
+            try {
+                writePageCountHeaders();
+                RenderMetrics.enter(Phase.ANNOTATIONS);
+                annotationDrawListener.afterRender();
+            }
+            finally {
+                RenderMetrics.exit(previous);
+            }
         }
         catch (Exception e) {
             throw new IOException("Unable to close the current page.", e);
@@ -491,7 +1014,45 @@ public class RenderContext implements DrawContext, DrawListener {
     public void drawn(Object drawnObject, Position upperLeft, float width,
             float height) {
         updateMaxPositionOnPage(upperLeft, width, height);
-        annotationDrawListener.drawn(drawnObject, upperLeft, width, height);
+        if (!(drawnObject instanceof Annotated)) {
+            //nothing to do for the annotations, and not worth timing
+            return;
+        }
+        annotatedDrawn(drawnObject, upperLeft, width, height);
+    }
+
+    @Override
+    public void drawn(Object drawnObject, float upperLeftX, float upperLeftY,
+            float width, float height) {
+        updateMaxPositionOnPage(upperLeftX, upperLeftY, width, height);
+        if (!(drawnObject instanceof Annotated)) {
+            return;
+        }
+        annotatedDrawn(drawnObject, new Position(upperLeftX, upperLeftY), width, height);
+    }
+
+    @Override
+    public void lineStarted(float extraWordSpacing) {
+        this.extraWordSpacing = extraWordSpacing;
+    }
+
+    /**
+     * @return the space added between the words of the line of text being
+     *         drawn to justify it, 0 if it is not justified.
+     */
+    public float getExtraWordSpacing() {
+        return extraWordSpacing;
+    }
+
+    private void annotatedDrawn(Object drawnObject, Position upperLeft, float width,
+            float height) {
+        Phase previous = RenderMetrics.enter(Phase.ANNOTATIONS);
+        try {
+            annotationDrawListener.drawn(drawnObject, upperLeft, width, height);
+        }
+        finally {
+            RenderMetrics.exit(previous);
+        }
     }
 
     /**
@@ -502,16 +1063,30 @@ public class RenderContext implements DrawContext, DrawListener {
      */
     protected void updateMaxPositionOnPage(Position upperLeft, float width,
             float height) {
-        maxPositionOnPage = new Position(Math.max(maxPositionOnPage.getX(),
-                upperLeft.getX() + width), Math.min(maxPositionOnPage.getY(),
-                upperLeft.getY() - height));
+        updateMaxPositionOnPage(upperLeft.getX(), upperLeft.getY(), width, height);
+    }
+
+    private void updateMaxPositionOnPage(float upperLeftX, float upperLeftY,
+            float width, float height) {
+        float right = upperLeftX + width;
+        float bottom = upperLeftY - height;
+        if (right > maxXOnPage) {
+            maxXOnPage = right;
+            maxPositionOnPage = null;
+        }
+        if (bottom < maxYOnPage) {
+            maxYOnPage = bottom;
+            maxPositionOnPage = null;
+        }
     }
 
     /**
      * Resets the maximumn position to upper left.
      */
     protected void resetMaxPositionOnPage() {
-        maxPositionOnPage = getUpperLeft();
+        maxXOnPage = getUpperLeftX();
+        maxYOnPage = getUpperLeftY();
+        maxPositionOnPage = null;
     }
 
     /**
@@ -519,7 +1094,38 @@ public class RenderContext implements DrawContext, DrawListener {
      * objects rendered on this page so far.
      */
     protected Position getMaxPositionOnPage() {
+        if (maxPositionOnPage == null) {
+            maxPositionOnPage = new Position(maxXOnPage, maxYOnPage);
+        }
         return maxPositionOnPage;
     }
 
+    /**
+     * A form together with the size of the drawable drawn into it.
+     */
+    private static class DrawnForm {
+        final PDFormXObject form;
+        final float width;
+        final float height;
+
+        DrawnForm(PDFormXObject form, float width, float height) {
+            this.form = form;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * A form of headers with the page count, and the headers to fill in.
+     */
+    private static class PageCountForm {
+        final PDFormXObject form;
+        final String[] headers;
+
+        PageCountForm(PDFormXObject form, String[] headers) {
+            this.form = form;
+            this.headers = headers;
+        }
+    }
+
 }
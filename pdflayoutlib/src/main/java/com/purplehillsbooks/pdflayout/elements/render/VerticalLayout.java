@@ -1,7 +1,8 @@
 package com.purplehillsbooks.pdflayout.elements.render;
 
 
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import java.util.concurrent.ForkJoinPool;
+
 
 import com.purplehillsbooks.pdflayout.elements.ControlElement;
 import com.purplehillsbooks.pdflayout.elements.Dividable;
@@ -9,11 +10,13 @@ import com.purplehillsbooks.pdflayout.elements.Dividable.Divided;
 import com.purplehillsbooks.pdflayout.elements.Drawable;
 import com.purplehillsbooks.pdflayout.elements.Element;
 import com.purplehillsbooks.pdflayout.elements.Frame;
-import com.purplehillsbooks.pdflayout.elements.PageFormat;
 import com.purplehillsbooks.pdflayout.text.Alignment;
 import com.purplehillsbooks.pdflayout.text.Position;
 import com.purplehillsbooks.pdflayout.text.WidthRespecting;
-import com.purplehillsbooks.pdflayout.util.CompatibilityHelper;
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Counter;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Phase;
 
 /**
  * Layout implementation that stacks drawables vertically onto the page. If the
@@ -98,7 +101,16 @@ public class VerticalLayout extends Layout {
     protected void renderAbsolute(final RenderContext renderContext,
             Drawable drawable,
             final Position position) throws Exception {
-        drawable.draw(renderContext, position, renderContext);
+        Phase previous = RenderMetrics.enter(Phase.DRAW);
+        try {
+            GraphicsState graphicsState = renderContext.getGraphicsState();
+            graphicsState.drawingBy(drawable);
+            drawable.draw(renderContext, position, renderContext);
+            graphicsState.drawnBy(drawable);
+        }
+        finally {
+            RenderMetrics.exit(previous);
+        }
     }
 
     /**
@@ -187,7 +199,19 @@ public class VerticalLayout extends Layout {
             }
         }
 
+        //trim first, trimming changes what has been measured
         removeEmptySpaceIfTopOfPage(drawable, renderContext);
+        ForkJoinPool measurementPool = renderContext.getDocument().getMeasurementPool();
+        if (measurementPool != null) {
+            Phase previous = RenderMetrics.enter(Phase.MEASURE);
+            try {
+                ParallelMeasurement.measure(drawable, measurementPool);
+            }
+            finally {
+                RenderMetrics.exit(previous);
+            }
+        }
+
         Drawable drawablePart = drawable;
         boolean topOfPage = renderContext.isTopOfPage();
         float remainingHeight = renderContext.getRemainingHeight();
@@ -205,13 +229,21 @@ public class VerticalLayout extends Layout {
             }
         }
         
-        float thisPartHeight = drawablePart.getHeight();
+        float thisPartHeight = measureHeight(drawablePart);
         while (remainingHeight < thisPartHeight) {
             if (drawablePart.canBeDivided()) {
                 Dividable dividable = (Dividable) drawablePart;
-                Divided divided = dividable.divide(
-                        renderContext.getRemainingHeight(), renderContext, topOfPage);
-                divided.getFirst().trimTrailingWhiteSpace();
+                Divided divided;
+                Phase previous = RenderMetrics.enter(Phase.DIVIDE);
+                try {
+                    divided = dividable.divide(
+                            renderContext.getRemainingHeight(), renderContext, topOfPage);
+                    divided.getFirst().trimTrailingWhiteSpace();
+                }
+                finally {
+                    RenderMetrics.exit(previous);
+                }
+                RenderMetrics.count(Counter.DIVIDES, 1);
                 drawReletivePartAndMovePosition(renderContext, divided.getFirst(),
                         layoutHint, true);
                 drawablePart = divided.getTail();
@@ -224,7 +256,7 @@ public class VerticalLayout extends Layout {
 
             
             removeEmptySpaceIfTopOfPage(drawablePart, renderContext);
-            thisPartHeight = drawablePart.getHeight();
+            thisPartHeight = measureHeight(drawablePart);
         }
 
         drawReletivePartAndMovePosition(renderContext, drawablePart,
@@ -260,9 +292,6 @@ public class VerticalLayout extends Layout {
             final RenderContext renderContext, Drawable drawable,
             final LayoutHint layoutHint, final boolean movePosition)
             throws Exception {
-        PDPageContentStream contentStream = renderContext.getContentStream();
-        PageFormat pageFormat = renderContext.getPageFormat();
-        
         //calculate how much indent is needed for left, center, and right alignment
         float offsetX = 0;
         if (layoutHint instanceof VerticalLayoutHint) {
@@ -283,21 +312,51 @@ public class VerticalLayout extends Layout {
             }
         }
 
-        contentStream.saveGraphicsState();
-        contentStream.addRect(0, pageFormat.getMarginBottom(), renderContext.getPageWidth(),
-                renderContext.getHeight());
-        CompatibilityHelper.clip(contentStream);
+        Phase previous = RenderMetrics.enter(Phase.DRAW);
+        try {
+            //only clip if the drawable reaches out of the clip area
+            GraphicsState graphicsState = renderContext.getGraphicsState();
+            Position upperLeft = renderContext.getCurrentPosition();
+            if (offsetX != 0) {
+                upperLeft = upperLeft.add(offsetX, 0);
+            }
+            boolean clip = !renderContext.isInsideClipArea(upperLeft.getX(), upperLeft.getY(),
+                    drawable.getWidth(), drawable.getHeight());
+            if (clip) {
+                graphicsState.saveGraphicsState();
+                renderContext.clipToClipArea();
+            }
 
-        drawable.draw(renderContext,
-                renderContext.getCurrentPosition().add(offsetX, 0),renderContext);
+            graphicsState.drawingBy(drawable);
+            drawable.draw(renderContext, upperLeft, renderContext);
+            graphicsState.drawnBy(drawable);
 
-        contentStream.restoreGraphicsState();
+            if (clip) {
+                graphicsState.restoreGraphicsState();
+            }
+        }
+        finally {
+            RenderMetrics.exit(previous);
+        }
 
         if (movePosition) {
             renderContext.movePositionBy(0, -drawable.getHeight());
         }
     }
 
+    /**
+     * @return the height of the drawable, recorded as {@link Phase#MEASURE}.
+     */
+    private static float measureHeight(final Drawable drawable) throws Exception {
+        Phase previous = RenderMetrics.enter(Phase.MEASURE);
+        try {
+            return drawable.getHeight();
+        }
+        finally {
+            RenderMetrics.exit(previous);
+        }
+    }
+
     @SuppressWarnings("javadoc")
     /**
      * Removes empty space (e.g. empty lines) at the begin of a page. See
@@ -50,10 +50,10 @@ public abstract class Shape {
         add(renderContext, upperLeft, width, height);
 
         if (stroke != null) {
-            stroke.applyTo(renderContext.contentStream);
+            stroke.applyTo(renderContext.getGraphicsState());
         }
         if (color != null) {
-            renderContext.contentStream.setStrokingColor(color);
+            renderContext.getGraphicsState().setStrokingColor(color);
         }
         renderContext.contentStream.stroke();
 
@@ -90,7 +90,7 @@ public abstract class Shape {
         add(renderContext, upperLeft, width, height);
 
         if (color != null) {
-            renderContext.contentStream.setNonStrokingColor(color);
+            renderContext.getGraphicsState().setNonStrokingColor(color);
         }
         CompatibilityHelper.fillNonZero(renderContext.contentStream);
 
@@ -3,6 +3,8 @@ package com.purplehillsbooks.pdflayout.shape;
 
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
+
 /**
  * This is a container for all information needed to perform a stroke.
  */
@@ -111,6 +113,8 @@ public class Stroke {
 
     }
 
+    private final static float[] SOLID = new float[0];
+
     private final CapStyle capStyle;
     private final JoinStyle joinStyle;
     private final DashPattern dashPattern;
@@ -187,6 +191,31 @@ public class Stroke {
         contentStream.setLineWidth(getLineWidth());
     }
 
+    /**
+     * Applies this stroke to the given graphics state, only writing what
+     * changes.  Unlike {@link #applyTo(PDPageContentStream)}, a stroke
+     * without a dash pattern sets a solid line.
+     * @param graphicsState the graphics state to apply this stroke to.
+     * @throws Exception by PDFBox.
+     */
+    public void applyTo(final GraphicsState graphicsState)
+            throws Exception {
+        if (getCapStyle() != null) {
+            graphicsState.setLineCapStyle(getCapStyle().value());
+        }
+        if (getJoinStyle() != null) {
+            graphicsState.setLineJoinStyle(getJoinStyle().value());
+        }
+        if (getDashPattern() != null) {
+            graphicsState.setLineDashPattern(getDashPattern().getPattern(),
+                    getDashPattern().getPhase());
+        }
+        else {
+            graphicsState.setLineDashPattern(SOLID, 0);
+        }
+        graphicsState.setLineWidth(getLineWidth());
+    }
+
     /**
      * Creates a stroke builder providing a fluent interface for creating a stroke.
      * @return a stroke builder.
@@ -55,10 +55,10 @@ public class ControlCharacter implements CharSequence {
      * @return the un-escaped text.
      */
     public String unescape(final String text) {
-        if (!mustEscape()) {
+        if (!mustEscape() || text.indexOf('\\') < 0) {
             return text;
         }
-        return text.replaceAll("\\\\" + Pattern.quote(getCharacterToEscape()),
+        return text.replace("\\" + getCharacterToEscape(),
                 getCharacterToEscape());
     }
 
@@ -18,7 +18,10 @@ public class ControlCharacters {
      * @return the unescaped text.
      */
     public static String unescapeBackslash(final String text) {
-        return text.replaceAll(Pattern.quote("\\\\"), "\\\\");
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        return text.replace("\\\\", "\\");
     }
 
     /**
@@ -208,8 +211,7 @@ public class ControlCharacters {
 
         @Override
         public String unescape(String text) {
-            return text
-                    .replaceAll("\\\\" + Pattern.quote(TO_ESCAPE), TO_ESCAPE);
+            return text.replace("\\" + TO_ESCAPE, TO_ESCAPE);
         }
 
         @Override
@@ -278,8 +280,7 @@ public class ControlCharacters {
 
         @Override
         public String unescape(String text) {
-            return text
-                    .replaceAll("\\\\" + Pattern.quote(TO_ESCAPE), TO_ESCAPE);
+            return text.replace("\\" + TO_ESCAPE, TO_ESCAPE);
         }
 
         @Override
@@ -0,0 +1,30 @@
+package com.purplehillsbooks.pdflayout.text;
+
+
+/**
+ * A {@link DrawListener} that can also be told the upper left corner as two
+ * coordinates.  Text is drawn word by word, and the words only need a
+ * {@link Position} if the listener actually keeps it, so the lines of text
+ * call {@link #drawn(Object, float, float, float, float)} on such a listener
+ * instead of creating a position for every word.
+ */
+public interface CoordinateDrawListener extends DrawListener {
+
+    /**
+     * Indicates that an object has been drawn, the same as
+     * {@link #drawn(Object, Position, float, float)}.
+     * @param drawnObject the drawn object.
+     * @param upperLeftX the x coordinate of the upper left corner.
+     * @param upperLeftY the y coordinate of the upper left corner.
+     * @param width  the width of the drawn object.
+     * @param height the height of the drawn object.
+     */
+    void drawn(Object drawnObject, float upperLeftX, float upperLeftY, float width, float height);
+
+    /**
+     * Indicates that a line of text is about to be drawn.
+     * @param extraWordSpacing the space added between the words of the line
+     *            to justify it, 0 if it is not justified.
+     */
+    void lineStarted(float extraWordSpacing);
+}
@@ -17,6 +17,11 @@ public class FontDescriptor {
      */
     private final float size;
 
+    /**
+     * the advance table of the font, looked up on first use.
+     */
+    private GlyphAdvances glyphAdvances;
+
     /**
      * Creates the descriptor the the given font and size.
      *
@@ -42,6 +47,16 @@ public class FontDescriptor {
         return size;
     }
 
+    /**
+     * @return the glyph advance table of the font, shared by all sizes.
+     */
+    public GlyphAdvances getGlyphAdvances() {
+        if (glyphAdvances == null) {
+            glyphAdvances = GlyphAdvances.forFont(font);
+        }
+        return glyphAdvances;
+    }
+
     @Override
     public String toString() {
         return "FontDescriptor [font=" + font + ", size=" + size + "]";
@@ -0,0 +1,288 @@
+package com.purplehillsbooks.pdflayout.text;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+import org.apache.pdfbox.pdmodel.font.encoding.Encoding;
+import org.apache.pdfbox.pdmodel.font.encoding.GlyphList;
+
+/**
+ * <p>
+ * A table of glyph advance widths for one {@link PDFont}, in the 1/1000 text
+ * space units that PDFBox uses.  Measuring a string through
+ * {@link PDFont#getStringWidth(String)} encodes the whole string and looks
+ * every glyph up again, on every call.  This table looks each code point up
+ * once, remembers the width in a primitive float array, and after that a
+ * measurement is just a sum over the array without any allocation.
+ * </p>
+ * <p>
+ * The table does not depend on the font size, so there is one table per font
+ * which is shared by every {@link FontDescriptor} of that font.  Code points
+ * up to 255 (Latin-1) live in one flat array, everything else is kept in
+ * pages of 256 code points that are created on demand.
+ * </p>
+ * <p>
+ * The table is safe to use from several threads.  Two threads may both look
+ * up the same glyph, but they will store the same value.  Finding the table
+ * of a font does not take a lock either.
+ * </p>
+ * <p>
+ * The standard 14 fonts (like <code>PDType1Font.HELVETICA</code>) are single
+ * instances shared by every document in the JVM, and PDFBox fills their
+ * encoding and width maps lazily without any synchronization.  So when the
+ * table of such a font is created, every character of its encoding is looked
+ * up once, which fills those maps before several documents use the font at
+ * the same time.
+ * </p>
+ */
+public class GlyphAdvances {
+
+    private static final int PAGE_SIZE = 256;
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_COUNT = (Character.MAX_CODE_POINT + 1) >> PAGE_SHIFT;
+
+    private static final ConcurrentMap<Object, GlyphAdvances> TABLES = new ConcurrentHashMap<Object, GlyphAdvances>();
+    private static final ReferenceQueue<PDFont> COLLECTED_FONTS = new ReferenceQueue<PDFont>();
+
+    // the map above references the font only weakly, so the table must not
+    // hold on to it.  The font is passed in to each lookup instead.
+    private final float[] latin1 = newPage();
+    private final AtomicReferenceArray<float[]> pages = new AtomicReferenceArray<float[]>(PAGE_COUNT);
+
+    /**
+     * Returns the (shared) advance table for the given font.
+     *
+     * @param font
+     *            the font.
+     * @return the advance table of that font.
+     */
+    public static GlyphAdvances forFont(final PDFont font) {
+        GlyphAdvances advances = TABLES.get(new FontKey(font));
+        if (advances != null) {
+            return advances;
+        }
+        Reference<? extends PDFont> collected;
+        while ((collected = COLLECTED_FONTS.poll()) != null) {
+            TABLES.remove(collected);
+        }
+        advances = new GlyphAdvances();
+        if (font.isStandard14()) {
+            advances.lookUpEncoding(font);
+        }
+        GlyphAdvances existing = TABLES.putIfAbsent(new WeakFontKey(font), advances);
+        return existing != null ? existing : advances;
+    }
+
+    /**
+     * Returns the width of the given text, the same value that
+     * {@link PDFont#getStringWidth(String)} would return.
+     *
+     * @param font
+     *            the font this table belongs to.
+     * @param text
+     *            the text to measure.
+     * @return the width in 1/1000 text space units.
+     * @throws Exception
+     *             by pdfbox, e.g. if the font has no glyph for a character.
+     */
+    public float getStringWidth(final PDFont font, final String text)
+            throws Exception {
+        return getStringWidth(font, text, 0, text.length());
+    }
+
+    /**
+     * Returns the width of the given range of the text, the same value that
+     * {@link PDFont#getStringWidth(String)} would return for
+     * <code>text.substring(begin, end)</code>.
+     *
+     * @param font
+     *            the font this table belongs to.
+     * @param text
+     *            the text to measure.
+     * @param begin
+     *            the index of the first character to measure.
+     * @param end
+     *            the index after the last character to measure.
+     * @return the width in 1/1000 text space units.
+     * @throws Exception
+     *             by pdfbox, e.g. if the font has no glyph for a character.
+     */
+    public float getStringWidth(final PDFont font, final String text,
+            final int begin, final int end) throws Exception {
+        float width = 0;
+        int index = begin;
+        while (index < end) {
+            char ch = text.charAt(index);
+            if (ch < PAGE_SIZE) {
+                float advance = latin1[ch];
+                if (advance != advance) {
+                    advance = lookUp(font, ch);
+                    latin1[ch] = advance;
+                }
+                width += advance;
+                index++;
+            } else {
+                int codePoint = text.codePointAt(index);
+                width += getAdvance(font, codePoint);
+                index += Character.charCount(codePoint);
+            }
+        }
+        return width;
+    }
+
+    private float getAdvance(final PDFont font, final int codePoint)
+            throws Exception {
+        int pageIndex = codePoint >> PAGE_SHIFT;
+        float[] page = pages.get(pageIndex);
+        if (page == null) {
+            pages.compareAndSet(pageIndex, null, newPage());
+            page = pages.get(pageIndex);
+        }
+        int slot = codePoint & (PAGE_SIZE - 1);
+        float advance = page[slot];
+        if (advance != advance) {
+            advance = lookUp(font, codePoint);
+            page[slot] = advance;
+        }
+        return advance;
+    }
+
+    /**
+     * @return the advance remembered for the code point, or NaN if it was
+     *         not looked up (yet).
+     */
+    float getRememberedAdvance(final int codePoint) {
+        if (codePoint < PAGE_SIZE) {
+            return latin1[codePoint];
+        }
+        float[] page = pages.get(codePoint >> PAGE_SHIFT);
+        return page == null ? Float.NaN : page[codePoint & (PAGE_SIZE - 1)];
+    }
+
+    /**
+     * Asks the font for the width of a single code point.  Fonts add up the
+     * glyph widths of a string one by one, so the width of a string is the
+     * sum of the widths of its code points.  If the font can not encode the
+     * code point, the exception is passed on and nothing is remembered.
+     * PDFBox fonts fill their own caches while doing this, which is not
+     * thread safe, so only one thread at a time may ask the font.  Since
+     * every glyph is only asked for once, this lock is hardly ever taken.
+     */
+    private static float lookUp(final PDFont font, final int codePoint)
+            throws Exception {
+        synchronized (font) {
+            return font.getStringWidth(new String(Character.toChars(codePoint)));
+        }
+    }
+
+    /**
+     * Looks up every character the (simple) font can encode.
+     */
+    private void lookUpEncoding(final PDFont font) {
+        if (!(font instanceof PDSimpleFont)) {
+            return;
+        }
+        Encoding encoding = ((PDSimpleFont) font).getEncoding();
+        if (encoding == null) {
+            return;
+        }
+        GlyphList glyphList = GlyphList.getAdobeGlyphList();
+        for (String name : encoding.getCodeToNameMap().values()) {
+            String unicode = glyphList.toUnicode(name);
+            if (unicode == null || unicode.codePointCount(0, unicode.length()) != 1) {
+                continue;
+            }
+            try {
+                getStringWidth(font, unicode);
+            } catch (Exception e) {
+                // the font can not show this character after all, which will
+                // be reported when someone tries to use it
+            }
+        }
+    }
+
+    /**
+     * @return a page where every entry is NaN, meaning "not looked up yet".
+     */
+    private static float[] newPage() {
+        float[] page = new float[PAGE_SIZE];
+        Arrays.fill(page, Float.NaN);
+        return page;
+    }
+
+    /**
+     * Identifies a font in the table map.  Fonts are equal if they are based
+     * on the same COS dictionary, as {@link PDFont#equals(Object)} says.
+     */
+    private interface FontReference {
+        PDFont getFont();
+    }
+
+    /**
+     * The key used to look a font up, which is thrown away right after.
+     */
+    private static class FontKey implements FontReference {
+        private final PDFont font;
+
+        FontKey(final PDFont font) {
+            this.font = font;
+        }
+
+        @Override
+        public PDFont getFont() {
+            return font;
+        }
+
+        @Override
+        public int hashCode() {
+            return font.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof FontReference
+                    && font.equals(((FontReference) other).getFont());
+        }
+    }
+
+    /**
+     * The key stored in the table map, which does not keep the font alive.
+     */
+    private static class WeakFontKey extends WeakReference<PDFont> implements
+            FontReference {
+        private final int hash;
+
+        WeakFontKey(final PDFont font) {
+            super(font, COLLECTED_FONTS);
+            hash = font.hashCode();
+        }
+
+        @Override
+        public PDFont getFont() {
+            return get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (other == this) {
+                return true;
+            }
+            PDFont font = get();
+            return font != null && other instanceof FontReference
+                    && font.equals(((FontReference) other).getFont());
+        }
+    }
+
+}
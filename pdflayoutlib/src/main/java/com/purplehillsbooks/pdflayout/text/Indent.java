@@ -144,8 +144,7 @@ public class Indent extends ControlFragment {
         float indent = calculateIndent(indentWidth, indentUnit, fontDescriptor);
         float textWidth = 0;
         if (label != null && !label.isEmpty()) {
-            textWidth = fontDescriptor.getSize()
-                    * fontDescriptor.getFont().getStringWidth(label) / 1000f;
+            textWidth = TextSequenceUtil.getStringWidth(label, fontDescriptor);
         }
         float marginLeft = 0;
         float marginRight = 0;
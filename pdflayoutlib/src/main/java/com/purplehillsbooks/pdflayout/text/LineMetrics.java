@@ -0,0 +1,80 @@
+package com.purplehillsbooks.pdflayout.text;
+
+import java.util.List;
+
+/**
+ * An index over the heights of word-wrapped lines.  It keeps the prefix sums
+ * of the spaced line heights, so the height of any run of consecutive lines
+ * is available in constant time.  A {@link TextFlow} and all the
+ * {@link TextFlow#subFlow(int, int) sub flows} divided from it share one
+ * index, so a long text that is split over many pages is measured only once.
+ */
+class LineMetrics {
+
+    private final List<TextLine> lines;
+    private final float lineSpacing;
+    private final float[] heights;
+    private final double[] spacedSums;
+
+    /**
+     * @param lines
+     *            the word-wrapped lines.
+     * @param lineSpacing
+     *            the line spacing factor applied to the lines.
+     * @throws Exception
+     *             by pdfbox
+     */
+    LineMetrics(final List<TextLine> lines, final float lineSpacing)
+            throws Exception {
+        this.lines = lines;
+        this.lineSpacing = lineSpacing;
+        heights = new float[lines.size()];
+        spacedSums = new double[lines.size() + 1];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = lines.get(i).getHeight();
+            spacedSums[i + 1] = spacedSums[i] + heights[i] * lineSpacing;
+        }
+    }
+
+    /**
+     * @return the lines this index was built for.
+     */
+    List<TextLine> getLines() {
+        return lines;
+    }
+
+    /**
+     * @return the line spacing factor the sums were built with.
+     */
+    float getLineSpacing() {
+        return lineSpacing;
+    }
+
+    /**
+     * Calculates the height of the lines <code>begin</code> (inclusive) to
+     * <code>end</code> (exclusive), the same as
+     * {@link TextSequenceUtil#getHeight(List, float, boolean)} does for these
+     * lines.
+     *
+     * @param begin
+     *            the index of the first line.
+     * @param end
+     *            the index after the last line.
+     * @param applyLineSpacingToFirstLine
+     *            indicates if the line spacing should be applied to the first
+     *            line also.
+     * @return the height of the lines.
+     */
+    float getHeight(final int begin, final int end,
+            final boolean applyLineSpacingToFirstLine) {
+        if (end <= begin) {
+            return 0;
+        }
+        float first = heights[begin];
+        if (applyLineSpacingToFirstLine) {
+            first *= lineSpacing;
+        }
+        return (float) (first + spacedSums[end] - spacedSums[begin + 1]);
+    }
+
+}
@@ -0,0 +1,250 @@
+package com.purplehillsbooks.pdflayout.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.purplehillsbooks.pdflayout.text.ControlCharacters.ControlCharacterFactory;
+import com.purplehillsbooks.pdflayout.text.annotations.AnnotationCharacters;
+import com.purplehillsbooks.pdflayout.text.annotations.AnnotationCharacters.AnnotationControlCharacterFactory;
+
+/**
+ * <p>
+ * Splits markup into text and {@link ControlCharacter}s in one pass over the
+ * string.  The general pipeline in {@link TextFlowUtil#fromMarkup(Iterable)}
+ * runs one regular expression per control character over every piece of
+ * text, building a new list each time.  This tokenizer walks the markup once
+ * and only asks a factory pattern to parse a control character where one can
+ * actually start, i.e. at a <code>{</code>, <code>*</code> or <code>_</code>.
+ * </p>
+ * <p>
+ * The result is exactly the one the general pipeline produces, including its
+ * precedence rules: newlines, metrics, bold and italic are split off before
+ * color, annotations and indentation, so e.g. a single underscore in an
+ * anchor name ends the anchor.  Escaping with backslashes interacts between
+ * the stages of the general pipeline in ways that are not worth copying
+ * here, so markup containing a backslash is left to the general pipeline, as
+ * is any markup when the control character factories have been replaced or
+ * additional annotation factories have been registered.
+ * </p>
+ */
+class MarkupTokenizer {
+
+    private final static ControlCharacterFactory NEWLINE_FACTORY = ControlCharacters.NEWLINE_FACTORY;
+    private final static ControlCharacterFactory METRICS_FACTORY = ControlCharacters.METRICS_FACTORY;
+    private final static ControlCharacterFactory BOLD_FACTORY = ControlCharacters.BOLD_FACTORY;
+    private final static ControlCharacterFactory ITALIC_FACTORY = ControlCharacters.ITALIC_FACTORY;
+    private final static ControlCharacterFactory COLOR_FACTORY = ControlCharacters.COLOR_FACTORY;
+    private final static ControlCharacterFactory INDENT_FACTORY = IndentCharacters.INDENT_FACTORY;
+    private final static ControlCharacterFactory HYPERLINK_FACTORY = AnnotationCharacters.HYPERLINK_FACTORY;
+    private final static ControlCharacterFactory ANCHOR_FACTORY = AnnotationCharacters.ANCHOR_FACTORY;
+    private final static ControlCharacterFactory UNDERLINE_FACTORY = AnnotationCharacters.UNDERLINE_FACTORY;
+
+    private final String markup;
+    private final List<CharSequence> result = new ArrayList<CharSequence>();
+    private boolean beginOfLine;
+
+    private MarkupTokenizer(final String markup) {
+        this.markup = markup;
+    }
+
+    /**
+     * @param markup
+     *            the markup to tokenize.
+     * @return <code>true</code> if {@link #tokenize(String)} yields the same
+     *         result as the general pipeline for this markup.
+     */
+    static boolean canTokenize(final CharSequence markup) {
+        if (!(markup instanceof String)
+                || ((String) markup).indexOf('\\') >= 0) {
+            return false;
+        }
+        if (ControlCharacters.NEWLINE_FACTORY != NEWLINE_FACTORY
+                || ControlCharacters.METRICS_FACTORY != METRICS_FACTORY
+                || ControlCharacters.BOLD_FACTORY != BOLD_FACTORY
+                || ControlCharacters.ITALIC_FACTORY != ITALIC_FACTORY
+                || ControlCharacters.COLOR_FACTORY != COLOR_FACTORY
+                || IndentCharacters.INDENT_FACTORY != INDENT_FACTORY) {
+            return false;
+        }
+        ControlCharacterFactory[] builtIn = { HYPERLINK_FACTORY,
+                ANCHOR_FACTORY, UNDERLINE_FACTORY };
+        int index = 0;
+        for (AnnotationControlCharacterFactory<?> factory : AnnotationCharacters
+                .getFactories()) {
+            if (index >= builtIn.length || factory != builtIn[index]) {
+                return false;
+            }
+            index++;
+        }
+        return index == builtIn.length;
+    }
+
+    /**
+     * Splits the markup, see {@link TextFlowUtil#fromMarkup(CharSequence)}.
+     * Must only be called if {@link #canTokenize(CharSequence)} returned
+     * <code>true</code>.
+     *
+     * @param markup
+     *            the markup to tokenize.
+     * @return the text and control characters.
+     */
+    static List<CharSequence> tokenize(final String markup) {
+        MarkupTokenizer tokenizer = new MarkupTokenizer(markup);
+        tokenizer.tokenize();
+        return tokenizer.result;
+    }
+
+    private void tokenize() {
+        int lineBegin = 0;
+        int length = markup.length();
+        while (true) {
+            int newLine = markup.indexOf('\n', lineBegin);
+            int lineEnd = newLine < 0 ? length : newLine;
+            if (newLine > lineBegin && markup.charAt(newLine - 1) == '\r') {
+                lineEnd = newLine - 1;
+            }
+            beginOfLine = true;
+            tokenizeLine(lineBegin, lineEnd);
+            if (newLine < 0) {
+                return;
+            }
+            result.add(NEWLINE_FACTORY.createControlCharacter(markup, null,
+                    result));
+            lineBegin = newLine + 1;
+        }
+    }
+
+    private void tokenizeLine(final int lineBegin, final int lineEnd) {
+        int textBegin = lineBegin;
+        int index = lineBegin;
+        while (index < lineEnd) {
+            char ch = markup.charAt(index);
+            ControlCharacter controlCharacter = null;
+            int end = index + 1;
+            if (ch == '*') {
+                controlCharacter = BOLD_FACTORY.createControlCharacter(markup,
+                        null, result);
+            } else if (ch == '_') {
+                if (isItalic(index, lineBegin, lineEnd)) {
+                    controlCharacter = ITALIC_FACTORY.createControlCharacter(
+                            markup, null, result);
+                } else if (index + 1 < lineEnd
+                        && markup.charAt(index + 1) == '_') {
+                    Matcher matcher = match(UNDERLINE_FACTORY, index, lineEnd);
+                    controlCharacter = UNDERLINE_FACTORY
+                            .createControlCharacter(markup, matcher, result);
+                    end = matcher.end();
+                }
+            } else if (ch == '{') {
+                Matcher matcher = match(METRICS_FACTORY, index, lineEnd);
+                ControlCharacterFactory factory = METRICS_FACTORY;
+                if (matcher == null) {
+                    matcher = match(COLOR_FACTORY, index, lineEnd);
+                    factory = COLOR_FACTORY;
+                }
+                if (matcher == null) {
+                    // bold and italic are split off first, so they break a
+                    // hyperlink or anchor they occur in
+                    matcher = match(HYPERLINK_FACTORY, index, lineEnd);
+                    factory = HYPERLINK_FACTORY;
+                    if (matcher != null
+                            && containsBoldOrItalic(index, matcher.end(),
+                                    lineBegin, lineEnd)) {
+                        matcher = null;
+                    }
+                }
+                if (matcher == null) {
+                    matcher = match(ANCHOR_FACTORY, index, lineEnd);
+                    factory = ANCHOR_FACTORY;
+                    if (matcher != null
+                            && containsBoldOrItalic(index, matcher.end(),
+                                    lineBegin, lineEnd)) {
+                        matcher = null;
+                    }
+                }
+                if (matcher != null) {
+                    controlCharacter = factory.createControlCharacter(markup,
+                            matcher, result);
+                    end = matcher.end();
+                }
+            }
+
+            if (controlCharacter == null) {
+                index++;
+            } else {
+                addText(textBegin, index);
+                result.add(controlCharacter);
+                index = end;
+                textBegin = end;
+            }
+        }
+        addText(textBegin, lineEnd);
+    }
+
+    /**
+     * Adds the text between two control characters. Indentation is only
+     * recognized at the start of the first text of a line, which is where the
+     * general pipeline looks for it.
+     */
+    private void addText(final int begin, final int end) {
+        if (begin >= end) {
+            return;
+        }
+        if (beginOfLine) {
+            beginOfLine = false;
+            Matcher matcher = INDENT_FACTORY.getPattern().matcher(markup);
+            matcher.region(begin, end);
+            if (matcher.find()) {
+                if (matcher.start() > begin) {
+                    result.add(markup.substring(begin, matcher.start()));
+                }
+                result.add(INDENT_FACTORY.createControlCharacter(markup,
+                        matcher, result));
+                if (matcher.end() < end) {
+                    result.add(markup.substring(matcher.end(), end));
+                }
+                return;
+            }
+        }
+        result.add(markup.substring(begin, end));
+    }
+
+    /**
+     * @return the matcher if the pattern of the factory matches at the given
+     *         index, <code>null</code> otherwise.
+     */
+    private Matcher match(final ControlCharacterFactory factory,
+            final int index, final int lineEnd) {
+        Pattern pattern = factory.getPattern();
+        Matcher matcher = pattern.matcher(markup);
+        matcher.region(index, lineEnd);
+        if (matcher.lookingAt()) {
+            return matcher;
+        }
+        return null;
+    }
+
+    /**
+     * @return <code>true</code> if the underscore at the given index is a
+     *         single one, which toggles italic.
+     */
+    private boolean isItalic(final int index, final int lineBegin,
+            final int lineEnd) {
+        return (index == lineBegin || markup.charAt(index - 1) != '_')
+                && (index + 1 == lineEnd || markup.charAt(index + 1) != '_');
+    }
+
+    private boolean containsBoldOrItalic(final int begin, final int end,
+            final int lineBegin, final int lineEnd) {
+        for (int index = begin; index < end; index++) {
+            char ch = markup.charAt(index);
+            if (ch == '*' || (ch == '_' && isItalic(index, lineBegin, lineEnd))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -152,9 +152,8 @@ public class StyledText implements TextFragment {
     @Override
     public float getWidth() throws Exception {
         if (width == null) {
-            width = getFontDescriptor().getSize()
-                    * getFontDescriptor().getFont().getStringWidth(getText())
-                    / 1000;
+            width = TextSequenceUtil.getStringWidth(getText(),
+                    getFontDescriptor());
             width += leftMargin;
             width += rightMargin;
         }
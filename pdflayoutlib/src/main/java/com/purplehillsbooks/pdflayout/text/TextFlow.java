@@ -1,11 +1,14 @@
 package com.purplehillsbooks.pdflayout.text;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
+
 /**
  * A text flow is a text sequence that {@link WidthRespecting respects a given
  * width} by word wrapping the text. The text may contain line breaks ('\n').<br>
@@ -38,6 +41,20 @@ public class TextFlow extends TextSequence implements WidthRespecting {
 
     public static final float DEFAULT_LINE_SPACING = 1.2f;
 
+    /**
+     * The word-wrapped lines of this flow, computed for the max width
+     * {@link #cachedLinesMaxWidth}.  Measuring, dividing and drawing all
+     * share this one result, so the text is only wrapped once.
+     */
+    private List<TextLine> cachedLines;
+    private float cachedLinesMaxWidth;
+    /**
+     * The height index of the cached lines, which starts at
+     * {@link #lineOffset}. A {@link #subFlow(int, int) sub flow} shares the
+     * index of the flow it was divided from.
+     */
+    private LineMetrics lineMetrics;
+    private int lineOffset;
     private Float cachedWidth;
     private Float cachedHeight;
 
@@ -47,6 +64,9 @@ public class TextFlow extends TextSequence implements WidthRespecting {
     private boolean applyLineSpacingToFirstLine = true;
 
     private void clearCache() {
+        cachedLines = null;
+        lineMetrics = null;
+        lineOffset = 0;
         cachedWidth = null;
         cachedHeight = null;
     }
@@ -150,7 +170,6 @@ public class TextFlow extends TextSequence implements WidthRespecting {
      */
     public TextFragment getLast() {
         if (textList.size() > 0) {
-            clearCache();
             return textList.get(textList.size() - 1);
         }
         return null;
@@ -175,8 +194,9 @@ public class TextFlow extends TextSequence implements WidthRespecting {
 
     @Override
     public void setMaxWidth(float maxWidth) {
+        //the wrapped lines remember the width they were made for, so
+        //there is no need to throw them away here
         this.maxWidth = maxWidth;
-        clearCache();
     }
 
     /**
@@ -194,8 +214,10 @@ public class TextFlow extends TextSequence implements WidthRespecting {
      *            the line spacing factor.
      */
     public void setLineSpacing(float lineSpacing) {
-        this.lineSpacing = lineSpacing;
-        clearCache();
+        if (this.lineSpacing != lineSpacing) {
+            this.lineSpacing = lineSpacing;
+            cachedHeight = null;
+        }
     }
 
     /**
@@ -221,22 +243,111 @@ public class TextFlow extends TextSequence implements WidthRespecting {
      */
     public void setApplyLineSpacingToFirstLine(
             boolean applyLineSpacingToFirstLine) {
-        this.applyLineSpacingToFirstLine = applyLineSpacingToFirstLine;
+        if (this.applyLineSpacingToFirstLine != applyLineSpacingToFirstLine) {
+            this.applyLineSpacingToFirstLine = applyLineSpacingToFirstLine;
+            cachedHeight = null;
+        }
+    }
+
+    /**
+     * Returns the lines of this flow word-wrapped to the current max width.
+     * The result is cached and reused until the fragments or the max width
+     * change, so callers must not modify the returned lines.
+     *
+     * @return the word-wrapped lines.
+     * @throws Exception by pdfbox
+     */
+    public List<TextLine> getWrappedLines() throws Exception {
+        if (cachedLines == null || cachedLinesMaxWidth != maxWidth) {
+            cachedLines = Collections.unmodifiableList(
+                    TextSequenceUtil.wordWrapToLines(this, maxWidth));
+            cachedLinesMaxWidth = maxWidth;
+            cachedWidth = null;
+            cachedHeight = null;
+            lineMetrics = null;
+            lineOffset = 0;
+        }
+        return cachedLines;
+    }
+
+    private LineMetrics getLineMetrics() throws Exception {
+        List<TextLine> lines = getWrappedLines();
+        if (lineMetrics == null || lineMetrics.getLineSpacing() != lineSpacing) {
+            lineMetrics = new LineMetrics(lines, lineSpacing);
+            lineOffset = 0;
+        }
+        return lineMetrics;
+    }
+
+    /**
+     * Returns the height of the first <code>lineCount</code> word-wrapped
+     * lines, as if the flow would only contain these lines.  After the first
+     * call this takes constant time, so it is cheap to search for the number
+     * of lines that fit into some space.
+     *
+     * @param lineCount
+     *            the number of lines to measure.
+     * @return the height of these lines.
+     * @throws Exception by pdfbox
+     */
+    public float getHeight(int lineCount) throws Exception {
+        return getLineMetrics().getHeight(lineOffset, lineOffset + lineCount,
+                isApplyLineSpacingToFirstLine());
+    }
+
+    /**
+     * Creates a flow that holds the word-wrapped lines <code>beginLine</code>
+     * (inclusive) to <code>endLine</code> (exclusive) of this flow. The new
+     * flow keeps these lines as they are, so it does not need to word-wrap
+     * again as long as the max width is not changed, and it shares the height
+     * index of this flow.
+     *
+     * @param beginLine
+     *            the index of the first line.
+     * @param endLine
+     *            the index after the last line.
+     * @return the new flow.
+     * @throws Exception by pdfbox
+     */
+    public TextFlow subFlow(int beginLine, int endLine) throws Exception {
+        LineMetrics metrics = getLineMetrics();
+        List<TextLine> lines = getWrappedLines().subList(beginLine, endLine);
+        TextFlow result = createInstance();
+        result.setLineSpacing(getLineSpacing());
+        result.setApplyLineSpacingToFirstLine(isApplyLineSpacingToFirstLine());
+        result.setMaxWidth(getMaxWidth());
+        for (TextLine line : lines) {
+            for (TextFragment fragment : line) {
+                result.textList.add(fragment);
+            }
+        }
+        result.cachedLines = lines;
+        result.cachedLinesMaxWidth = cachedLinesMaxWidth;
+        result.lineMetrics = metrics;
+        result.lineOffset = lineOffset + beginLine;
+        return result;
     }
 
     @Override
     public float getWidth() throws Exception {
+        List<TextLine> lines = getWrappedLines();
         if (cachedWidth == null) {
-            cachedWidth = TextSequenceUtil.getWidth(this, getMaxWidth());
+            cachedWidth = TextSequenceUtil.getMaxWidth(lines);
         }
         return cachedWidth;
     }
 
     @Override
     public float getHeight() throws Exception {
+        List<TextLine> lines = getWrappedLines();
         if (cachedHeight == null) {
-            cachedHeight = TextSequenceUtil.getHeight(this, getMaxWidth(),
-                    getLineSpacing(), isApplyLineSpacingToFirstLine());
+            if (lineMetrics != null && lineMetrics.getLineSpacing() == lineSpacing) {
+                cachedHeight = lineMetrics.getHeight(lineOffset,
+                        lineOffset + lines.size(), isApplyLineSpacingToFirstLine());
+            } else {
+                cachedHeight = TextSequenceUtil.getHeight(lines,
+                        getLineSpacing(), isApplyLineSpacingToFirstLine());
+            }
         }
         return cachedHeight;
     }
@@ -244,8 +355,32 @@ public class TextFlow extends TextSequence implements WidthRespecting {
     @Override
     public void drawText(PDPageContentStream contentStream, Position upperLeft,
             Alignment alignment, DrawListener drawListener) throws Exception {
-        drawTextSpecial(this, contentStream, upperLeft, drawListener, alignment,
-                getMaxWidth(), getLineSpacing(),
+        GraphicsState graphicsState = new GraphicsState(contentStream);
+        graphicsState.saveGraphicsState();
+        drawText(graphicsState, upperLeft, alignment, drawListener);
+        graphicsState.restoreGraphicsState();
+    }
+
+    /**
+     * Draws the text like {@link #drawText(PDPageContentStream, Position, Alignment, DrawListener)},
+     * but leaves font, color and word spacing set in the given graphics state,
+     * so that they are not written again for the next text using the same.
+     *
+     * @param graphicsState
+     *            the graphics state of the stream to draw to.
+     * @param upperLeft
+     *            the position of the start of the first line.
+     * @param alignment
+     *            how to align the text lines.
+     * @param drawListener
+     *            the listener to notify on drawn objects.
+     * @throws Exception
+     *             by pdfbox
+     */
+    public void drawText(GraphicsState graphicsState, Position upperLeft,
+            Alignment alignment, DrawListener drawListener) throws Exception {
+        drawLines(getWrappedLines(), graphicsState, upperLeft, drawListener,
+                alignment, getMaxWidth(), getLineSpacing(),
                 isApplyLineSpacingToFirstLine());
     }
     /**
@@ -280,9 +415,31 @@ public class TextFlow extends TextSequence implements WidthRespecting {
             final float lineSpacing, final boolean applyLineSpacingToFirstLine)
             throws Exception {
         List<TextLine> lines = TextSequenceUtil.wordWrapToLines(text, maxWidth);
+        GraphicsState graphicsState = new GraphicsState(contentStream);
+        graphicsState.saveGraphicsState();
+        drawLines(lines, graphicsState, upperLeft, drawListener, alignment,
+                maxWidth, lineSpacing, applyLineSpacingToFirstLine);
+        graphicsState.restoreGraphicsState();
+    }
+
+    /**
+     * Draws already word-wrapped lines, see
+     * {@link #drawTextSpecial(TextSequence, PDPageContentStream, Position, DrawListener, Alignment, float, float, boolean)}.
+     * All lines go into one text object, see {@link TextObjectWriter}.
+     */
+    private static void drawLines(List<TextLine> lines,
+            GraphicsState graphicsState, Position upperLeft,
+            DrawListener drawListener, Alignment alignment, float maxWidth,
+            final float lineSpacing, final boolean applyLineSpacingToFirstLine)
+            throws Exception {
+        if (lines.isEmpty()) {
+            return;
+        }
         float maxLineWidth = Math.max(maxWidth, TextSequenceUtil.getMaxWidth(lines));
-        Position position = upperLeft;
+        float y = upperLeft.getY();
         float lastLineHeight = 0;
+        TextObjectWriter writer = new TextObjectWriter(graphicsState);
+        writer.begin();
         for (int i = 0; i < lines.size(); i++) {
             boolean applyLineSpacing = i > 0 || applyLineSpacingToFirstLine;
             TextLine textLine = lines.get(i);
@@ -292,9 +449,10 @@ public class TextFlow extends TextSequence implements WidthRespecting {
                 lead += (currentLineHeight * (lineSpacing - 1));
             }
             lastLineHeight = currentLineHeight;
-            position = position.add(0, -lead);
-            textLine.drawAligned(contentStream, position, alignment, maxLineWidth, drawListener);
+            y -= lead;
+            textLine.drawAligned(writer, upperLeft.getX(), y, alignment, maxLineWidth, drawListener);
         }
+        writer.end();
 
     }
 
@@ -11,6 +11,7 @@ import java.util.regex.Matcher;
 
 import org.apache.pdfbox.pdmodel.font.PDFont;
 
+
 import com.purplehillsbooks.pdflayout.text.ControlCharacters.BoldControlCharacter;
 import com.purplehillsbooks.pdflayout.text.ControlCharacters.ColorControlCharacter;
 import com.purplehillsbooks.pdflayout.text.ControlCharacters.ControlCharacterFactory;
@@ -23,6 +24,8 @@ import com.purplehillsbooks.pdflayout.text.annotations.Annotation;
 import com.purplehillsbooks.pdflayout.text.annotations.AnnotationCharacters;
 import com.purplehillsbooks.pdflayout.text.annotations.AnnotationCharacters.AnnotationControlCharacter;
 import com.purplehillsbooks.pdflayout.text.annotations.AnnotationCharacters.AnnotationControlCharacterFactory;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Phase;
 
 public class TextFlowUtil {
 
@@ -117,9 +120,15 @@ public class TextFlowUtil {
             final float fontSize, final PDFont plainFont,
             final PDFont boldFont, final PDFont italicFont,
             final PDFont boldItalicFont) throws Exception {
-        final Iterable<CharSequence> parts = fromMarkup(markup);
-        return createTextFlow(parts, fontSize, plainFont, boldFont, italicFont,
-                boldItalicFont);
+        Phase previous = RenderMetrics.enter(Phase.MARKUP);
+        try {
+            final Iterable<CharSequence> parts = fromMarkup(markup);
+            return createTextFlow(parts, fontSize, plainFont, boldFont, italicFont,
+                    boldItalicFont);
+        }
+        finally {
+            RenderMetrics.exit(previous);
+        }
     }
 
     /**
@@ -285,6 +294,9 @@ public class TextFlowUtil {
      * @return the create char sequence.
      */
     public static Iterable<CharSequence> fromMarkup(final CharSequence markup) {
+        if (MarkupTokenizer.canTokenize(markup)) {
+            return MarkupTokenizer.tokenize((String) markup);
+        }
         return fromMarkup(Collections.singleton(markup));
     }
 
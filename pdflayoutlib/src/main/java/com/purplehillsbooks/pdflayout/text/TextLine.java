@@ -1,13 +1,12 @@
 package com.purplehillsbooks.pdflayout.text;
 
-import java.awt.Color;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 
-import com.purplehillsbooks.pdflayout.util.CompatibilityHelper;
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
 
 /**
  * A text of line containing only {@link StyledText}s. It may be terminated by a
@@ -15,6 +14,13 @@ import com.purplehillsbooks.pdflayout.util.CompatibilityHelper;
  */
 public class TextLine extends TextSequence {
 
+    /**
+     * constant for the system property
+     * <code>pdfbox.layout.justify.word.spacing</code>.  Justified lines are
+     * written with word spacing unless it is set to <code>false</code>, in
+     * which case every gap between words is an adjustment of its own.
+     */
+    public final static String JUSTIFY_WITH_WORD_SPACING_PROPERTY = "pdfbox.layout.justify.word.spacing";
 
     private final List<StyledText> styledTextList = new ArrayList<StyledText>();
     private NewLine newLine;
@@ -137,50 +143,51 @@ public class TextLine extends TextSequence {
     public void drawAligned(PDPageContentStream contentStream, Position upperLeft,
             Alignment alignment, float availableLineWidth,
             DrawListener drawListener) throws Exception {
-        contentStream.saveGraphicsState();
-        contentStream.beginText();
+        GraphicsState graphicsState = new GraphicsState(contentStream);
+        graphicsState.saveGraphicsState();
+        TextObjectWriter writer = new TextObjectWriter(graphicsState);
+        writer.begin();
+        drawAligned(writer, upperLeft.getX(), upperLeft.getY(), alignment, availableLineWidth, drawListener);
+        writer.end();
+        graphicsState.restoreGraphicsState();
+    }
 
-        float x = upperLeft.getX();
-        float y = upperLeft.getY() - getAscent(); // the baseline
+    /**
+     * Draws the line into the text object of the given writer, so that all
+     * lines of a paragraph end up in one text object.
+     */
+    void drawAligned(TextObjectWriter writer, float upperLeftX, float upperLeftY,
+            Alignment alignment, float availableLineWidth,
+            DrawListener drawListener) throws Exception {
+        float x = upperLeftX;
+        float y = upperLeftY - getAscent(); // the baseline
         float offset = TextSequenceUtil.getOffset(this, availableLineWidth, alignment);
         x += offset;
-        CompatibilityHelper.setTextTranslation(contentStream, x, y);
+        writer.startLine(x, y);
         float extraWordSpacing = 0;
         if (alignment == Alignment.Justify && (getNewLine() instanceof WrappingNewLine) ){
             extraWordSpacing = (availableLineWidth - getWidth()) / (styledTextList.size()-1);
         }
+        writer.setWordSpacing(isWordSpacingPossible() ? extraWordSpacing : 0);
+        if (drawListener instanceof CoordinateDrawListener) {
+            ((CoordinateDrawListener) drawListener).lineStarted(extraWordSpacing);
+        }
 
-        FontDescriptor lastFontDesc = null;
-        float lastBaselineOffset = 0;
-        Color lastColor = null;
         float gap = 0;
         for (StyledText styledText : styledTextList) {
-            if (!styledText.getFontDescriptor().equals(lastFontDesc)) {
-                lastFontDesc = styledText.getFontDescriptor();
-                contentStream.setFont(lastFontDesc.getFont(),
-                        lastFontDesc.getSize());
-            }
-            if (!styledText.getColor().equals(lastColor)) {
-                lastColor = styledText.getColor();
-                contentStream.setNonStrokingColor(lastColor);
-            }
             if (styledText.getLeftMargin() > 0) {
                 gap += styledText.getLeftMargin();
             }
+            x += gap;
+            writer.show(styledText, x, gap);
 
-            boolean moveBaseline = styledText.getBaselineOffset() != lastBaselineOffset;
-            if (moveBaseline || gap > 0) {
-                float baselineDelta = lastBaselineOffset - styledText.getBaselineOffset();
-                lastBaselineOffset = styledText.getBaselineOffset();
-                CompatibilityHelper.moveTextPosition(contentStream, gap, baselineDelta);
-                x += gap;
-            }
-            if (styledText.getText().length() > 0) {
-                CompatibilityHelper.showText(contentStream,
-                        styledText.getText());
+            if (drawListener instanceof CoordinateDrawListener) {
+                ((CoordinateDrawListener) drawListener).drawn(styledText,
+                        x, y + styledText.getAsent(),
+                        styledText.getWidthWithoutMargin(),
+                        styledText.getHeight());
             }
-
-            if (drawListener != null) {
+            else if (drawListener != null) {
                 float currentUpperLeft = y + styledText.getAsent();
                 drawListener.drawn(styledText,
                         new Position(x, currentUpperLeft),
@@ -194,8 +201,30 @@ public class TextLine extends TextSequence {
                 gap += styledText.getRightMargin();
             }
         }
-        contentStream.endText();
-        contentStream.restoreGraphicsState();
+    }
+
+    /**
+     * Word spacing moves everything after a space, so it can only be used if
+     * all spaces are at the start of the words, where the gaps between the
+     * words are.  It is only worth setting if some of those spaces are in a
+     * font it applies to, which excludes e.g. lines in a Type0 font.
+     */
+    private boolean isWordSpacingPossible() {
+        if ("false".equals(System.getProperty(JUSTIFY_WITH_WORD_SPACING_PROPERTY))) {
+            return false;
+        }
+        boolean applies = false;
+        for (StyledText styledText : styledTextList) {
+            String text = styledText.getText();
+            int leadingSpaces = TextObjectWriter.countLeadingSpaces(text);
+            if (text.indexOf(' ', leadingSpaces) >= 0) {
+                return false;
+            }
+            if (!applies && leadingSpaces > 0) {
+                applies = TextObjectWriter.isSpaceSingleByte(styledText.getFontDescriptor().getFont());
+            }
+        }
+        return applies;
     }
 
     @Override
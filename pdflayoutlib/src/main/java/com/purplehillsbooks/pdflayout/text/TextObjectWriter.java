@@ -0,0 +1,221 @@
+package com.purplehillsbooks.pdflayout.text;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
+
+/**
+ * <p>
+ * Writes the lines of a paragraph into a single text object (one BT/ET pair).
+ * Font, color and word spacing are set through the {@link GraphicsState}, so
+ * they are only written when they change, also across lines and
+ * paragraphs.  Each line
+ * starts with a move relative to the start of the line before, and words of
+ * the same style are collected into one string, or a TJ array if there is a
+ * gap between them (e.g. extra word spacing of justified text), instead of
+ * one show text operation per word.
+ * </p>
+ * <p>
+ * Justified lines may be written with word spacing (Tw) instead: it is set
+ * once for the line, and every space then moves the following words by the
+ * extra space.  This only works for spaces encoded as the single byte 32, and
+ * only where the gap is right before the spaces of a word, so any difference
+ * (margins, other fonts, words without a leading space) is still made up by
+ * a TJ adjustment.
+ * </p>
+ * <p>
+ * The text matrix is only changed by line moves, so the positions stay exact:
+ * a TJ adjustment moves by the same amount as the gap, and a change of the
+ * baseline starts a new line at the position the layout calculated.
+ * </p>
+ */
+class TextObjectWriter {
+
+    private final GraphicsState graphicsState;
+    private final PDPageContentStream contentStream;
+
+    private FontDescriptor font;
+    private Color color;
+    private float wordSpacing;
+    //if the word spacing applies to the spaces of the current font
+    private boolean wordSpacingApplies;
+
+    //the start of the current line of the text object (the text line
+    //matrix), the baseline of the line of text being written, and the
+    //baseline offset of the text shown at the moment
+    private float lineX;
+    private float lineY;
+    private float baseline;
+    private float baselineOffset;
+
+    //what is shown next with one text operator
+    private final List<Object> run = new ArrayList<Object>();
+    private final StringBuilder runText = new StringBuilder();
+
+    TextObjectWriter(final GraphicsState graphicsState) {
+        this.graphicsState = graphicsState;
+        this.contentStream = graphicsState.getContentStream();
+    }
+
+    /**
+     * Starts the text object.
+     */
+    void begin() throws Exception {
+        contentStream.beginText();
+        lineX = 0;
+        lineY = 0;
+        baselineOffset = 0;
+        wordSpacing = 0;
+    }
+
+    /**
+     * Sets the extra space added to every space from now on.
+     *
+     * @param spacing
+     *            the word spacing, 0 for none.
+     */
+    void setWordSpacing(final float spacing) throws Exception {
+        if (spacing != wordSpacing) {
+            flush();
+        }
+        graphicsState.setWordSpacing(spacing);
+        wordSpacing = spacing;
+    }
+
+    /**
+     * Moves to the start of a line.
+     *
+     * @param x
+     *            the x position of the line.
+     * @param y
+     *            the baseline of the line.
+     */
+    void startLine(final float x, final float y) throws Exception {
+        moveTo(x, y);
+        baseline = y;
+        baselineOffset = 0;
+    }
+
+    private void moveTo(final float x, final float y) throws Exception {
+        flush();
+        contentStream.newLineAtOffset(x - lineX, y - lineY);
+        lineX = x;
+        lineY = y;
+    }
+
+    /**
+     * Shows the text.
+     *
+     * @param styledText
+     *            the text to show.
+     * @param x
+     *            where the text starts, which is the end of the text shown
+     *            before plus the given gap.
+     * @param gap
+     *            the space since the end of the text shown before.
+     */
+    void show(final StyledText styledText, final float x, final float gap) throws Exception {
+        FontDescriptor textFont = styledText.getFontDescriptor();
+        if (!textFont.equals(font)) {
+            flush();
+            font = textFont;
+            graphicsState.setFont(font.getFont(), font.getSize());
+            wordSpacingApplies = isSpaceSingleByte(font.getFont());
+        }
+        if (!styledText.getColor().equals(color)) {
+            flush();
+            color = styledText.getColor();
+            graphicsState.setNonStrokingColor(color);
+        }
+        float shift = gap;
+        if (styledText.getBaselineOffset() != baselineOffset) {
+            baselineOffset = styledText.getBaselineOffset();
+            moveTo(x, baseline - baselineOffset);
+            shift = 0;
+        }
+        if (wordSpacing != 0 && wordSpacingApplies) {
+            shift -= wordSpacing * countLeadingSpaces(styledText.getText());
+        }
+        if (shift != 0) {
+            addToRun(-shift * 1000 / font.getSize());
+        }
+        if (styledText.getText().length() > 0) {
+            runText.append(styledText.getText());
+        }
+    }
+
+    /**
+     * @return the number of spaces the text starts with.
+     */
+    static int countLeadingSpaces(final String text) {
+        int count = 0;
+        while (count < text.length() && text.charAt(count) == ' ') {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return <code>true</code> if the font encodes a space as the single
+     *         byte 32, which is the only code the word spacing is added to.
+     */
+    static boolean isSpaceSingleByte(final PDFont font) {
+        if (!(font instanceof PDSimpleFont)) {
+            return false;
+        }
+        try {
+            byte[] code = font.encode(" ");
+            return code.length == 1 && code[0] == 32;
+        }
+        catch (Exception e) {
+            //the font has no space at all
+            return false;
+        }
+    }
+
+    private void addToRun(float adjustment) {
+        if (runText.length() > 0) {
+            run.add(runText.toString());
+            runText.setLength(0);
+        }
+        run.add(Float.valueOf(adjustment));
+    }
+
+    /**
+     * Writes what has been collected with a single text operator.
+     */
+    private void flush() throws Exception {
+        if (run.isEmpty()) {
+            if (runText.length() > 0) {
+                contentStream.showText(runText.toString());
+                runText.setLength(0);
+            }
+            return;
+        }
+        if (runText.length() > 0) {
+            run.add(runText.toString());
+            runText.setLength(0);
+        }
+        contentStream.showTextWithPositioning(run.toArray());
+        run.clear();
+    }
+
+    /**
+     * Ends the text object, and sets the word spacing back to none, so that
+     * it does not apply to text shown by anyone else.
+     */
+    void end() throws Exception {
+        flush();
+        contentStream.endText();
+        graphicsState.setWordSpacing(0);
+        font = null;
+        color = null;
+    }
+
+}
@@ -5,6 +5,9 @@ import java.util.List;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 
 import com.purplehillsbooks.pdflayout.util.Pair;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Counter;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Phase;
 import com.purplehillsbooks.pdflayout.util.WordBreakerFactory;
 
 /**
@@ -27,6 +30,18 @@ public class TextSequenceUtil {
      */
     public static TextFlow wordWrap(final TextSequence text,
             final float maxWidth) throws Exception {
+        Phase previous = RenderMetrics.enter(Phase.WRAP);
+        try {
+            RenderMetrics.count(Counter.WRAPS, 1);
+            return wrap(text, maxWidth);
+        }
+        finally {
+            RenderMetrics.exit(previous);
+        }
+    }
+
+    private static TextFlow wrap(final TextSequence text,
+            final float maxWidth) throws Exception {
 
         float indentation = 0;
         TextFlow result = new TextFlow();
@@ -344,7 +359,26 @@ public class TextSequenceUtil {
     public static float getStringWidth(final String text,
             final FontDescriptor fontDescriptor) throws Exception {
         return fontDescriptor.getSize()
-                * fontDescriptor.getFont().getStringWidth(text) / 1000;
+                * fontDescriptor.getGlyphAdvances().getStringWidth(
+                        fontDescriptor.getFont(), text) / 1000;
+    }
+
+    /**
+     * Returns the width of a part of the given text in the given font,
+     * without creating the substring.
+     * @param text the text to measure.
+     * @param begin the index of the first character to measure.
+     * @param end the index after the last character to measure.
+     * @param fontDescriptor font and size.
+     * @return the width of <code>text.substring(begin, end)</code>.
+     * @throws Exception by pdfbox
+     */
+    public static float getStringWidth(final String text, final int begin,
+            final int end, final FontDescriptor fontDescriptor)
+            throws Exception {
+        return fontDescriptor.getSize()
+                * fontDescriptor.getGlyphAdvances().getStringWidth(
+                        fontDescriptor.getFont(), text, begin, end) / 1000;
     }
 
 
@@ -434,6 +468,26 @@ public class TextSequenceUtil {
             final float maxWidth, final float lineSpacing,
             final boolean applyLineSpacingToFirstLine) throws Exception {
         List<TextLine> lines = wordWrapToLines(textSequence, maxWidth);
+        return getHeight(lines, lineSpacing, applyLineSpacingToFirstLine);
+    }
+
+    /**
+     * Calculates the height of already word-wrapped text lines.
+     *
+     * @param lines
+     *            the word-wrapped lines.
+     * @param lineSpacing
+     *            the line spacing factor.
+     * @param applyLineSpacingToFirstLine
+     *            indicates if the line spacing should be applied to the first
+     *            line also.
+     * @return the height of the lines.
+     * @throws Exception
+     *             by pdfbox
+     */
+    public static float getHeight(final List<TextLine> lines,
+            final float lineSpacing, final boolean applyLineSpacingToFirstLine)
+            throws Exception {
         float sum = 0;
         for (int i = 0; i < lines.size(); i++) {
             TextLine line = lines.get(i);
@@ -19,10 +19,23 @@ public class AnnotationCharacters {
 
     private final static List<AnnotationControlCharacterFactory<?>> FACTORIES = new CopyOnWriteArrayList<AnnotationControlCharacterFactory<?>>();
 
+    /**
+     * The built-in factory for hyperlink control characters.
+     */
+    public final static AnnotationControlCharacterFactory<HyperlinkControlCharacter> HYPERLINK_FACTORY = new HyperlinkControlCharacterFactory();
+    /**
+     * The built-in factory for anchor control characters.
+     */
+    public final static AnnotationControlCharacterFactory<AnchorControlCharacter> ANCHOR_FACTORY = new AnchorControlCharacterFactory();
+    /**
+     * The built-in factory for underline control characters.
+     */
+    public final static AnnotationControlCharacterFactory<UnderlineControlCharacter> UNDERLINE_FACTORY = new UnderlineControlCharacterFactory();
+
     static {
-        register(new HyperlinkControlCharacterFactory());
-        register(new AnchorControlCharacterFactory());
-        register(new UnderlineControlCharacterFactory());
+        register(HYPERLINK_FACTORY);
+        register(ANCHOR_FACTORY);
+        register(UNDERLINE_FACTORY);
     }
 
     /**
@@ -67,8 +80,7 @@ public class AnnotationCharacters {
 
         @Override
         public String unescape(String text) {
-            return text
-                    .replaceAll("\\\\" + Pattern.quote(TO_ESCAPE), TO_ESCAPE);
+            return text.replace("\\" + TO_ESCAPE, TO_ESCAPE);
         }
 
         @Override
@@ -99,8 +111,7 @@ public class AnnotationCharacters {
 
         @Override
         public String unescape(String text) {
-            return text
-                    .replaceAll("\\\\" + Pattern.quote(TO_ESCAPE), TO_ESCAPE);
+            return text.replace("\\" + TO_ESCAPE, TO_ESCAPE);
         }
 
         @Override
@@ -132,8 +143,7 @@ public class AnnotationCharacters {
 
         @Override
         public String unescape(String text) {
-            return text
-                    .replaceAll("\\\\" + Pattern.quote(TO_ESCAPE), TO_ESCAPE);
+            return text.replace("\\" + TO_ESCAPE, TO_ESCAPE);
         }
 
         @Override
@@ -217,7 +227,6 @@ public class AnnotationCharacters {
          */
         public final static String UNDERLINE_DEFAULT_BASELINE_OFFSET_SCALE_PROPERTY = "pdfbox.layout.underline.baseline.offset.scale.default";
 
-        private static Float defaultBaselineOffsetScale;
         private UnderlineAnnotation line;
 
         protected UnderlineControlCharacter() {
@@ -256,14 +265,8 @@ public class AnnotationCharacters {
         }
 
         private static float getdefaultBaselineOffsetScale() {
-            if (defaultBaselineOffsetScale == null) {
-                defaultBaselineOffsetScale = Float
-                        .parseFloat(System
-                                .getProperty(
-                                        UNDERLINE_DEFAULT_BASELINE_OFFSET_SCALE_PROPERTY,
-                                        "-0.1"));
-            }
-            return defaultBaselineOffsetScale;
+            return Float.parseFloat(System.getProperty(
+                    UNDERLINE_DEFAULT_BASELINE_OFFSET_SCALE_PROPERTY, "-0.1"));
         }
 
     }
@@ -20,11 +20,26 @@ import com.purplehillsbooks.pdflayout.text.Position;
  * necessary annotations and sets them to the corresponding pages. This listener
  * is used by the the rendering API, but you may also use it with the low-level
  * text API.
+ * <p>
+ * Most drawn objects are not annotated, and many documents have no
+ * annotations at all, so the built-in annotation processors only take part on
+ * pages with annotated objects.  Their {@link AnnotationProcessor#beforePage(DrawContext)
+ * beforePage()} is called right before the first annotated object of the page
+ * is passed to them, and only then their
+ * {@link AnnotationProcessor#afterPage(DrawContext) afterPage()} and
+ * {@link AnnotationProcessor#afterRender(PDDocument) afterRender()} are
+ * called as well.  Processors you {@link AnnotationProcessorFactory#register(Class)
+ * registered} yourself are told about every page and about the end of every
+ * document, as they always were.
+ * </p>
  */
 public class AnnotationDrawListener implements DrawListener, RenderListener {
 
     private final DrawContext drawContext;
     private final Iterable<AnnotationProcessor> annotationProcessors;
+    //if the built-in processors have been told about the current page, or any page
+    private boolean pageAnnotated;
+    private boolean documentAnnotated;
 
     /**
      * Creates an AnnotationDrawListener with the given {@link DrawContext}.
@@ -45,6 +60,11 @@ public class AnnotationDrawListener implements DrawListener, RenderListener {
         if (!(drawnObject instanceof Annotated)) {
             return;
         }
+        if (!pageAnnotated) {
+            pageAnnotated = true;
+            documentAnnotated = true;
+            startPage();
+        }
         for (AnnotationProcessor annotationProcessor : annotationProcessors) {
             try {
                 annotationProcessor.annotatedObjectDrawn(
@@ -59,7 +79,26 @@ public class AnnotationDrawListener implements DrawListener, RenderListener {
 
     @Override
     public void beforePage(RenderContext renderContext) throws Exception {
+        //the built-in processors are told when the first annotated object is drawn
+        pageAnnotated = false;
         for (AnnotationProcessor annotationProcessor : annotationProcessors) {
+            if (isBuiltIn(annotationProcessor)) {
+                continue;
+            }
+            try {
+                annotationProcessor.beforePage(drawContext);
+            } catch (Exception e) {
+                throw new RuntimeException(
+                        "exception on annotation processing", e);
+            }
+        }
+    }
+
+    private void startPage() {
+        for (AnnotationProcessor annotationProcessor : annotationProcessors) {
+            if (!isBuiltIn(annotationProcessor)) {
+                continue;
+            }
             try {
                 annotationProcessor.beforePage(drawContext);
             } catch (Exception e) {
@@ -71,7 +110,12 @@ public class AnnotationDrawListener implements DrawListener, RenderListener {
 
     @Override
     public void afterPage(RenderContext renderContext) throws Exception {
+        boolean annotated = pageAnnotated;
+        pageAnnotated = false;
         for (AnnotationProcessor annotationProcessor : annotationProcessors) {
+            if (!annotated && isBuiltIn(annotationProcessor)) {
+                continue;
+            }
             try {
                 annotationProcessor.afterPage(drawContext);
             } catch (Exception e) {
@@ -84,6 +128,9 @@ public class AnnotationDrawListener implements DrawListener, RenderListener {
 
     public void afterRender() throws Exception {
         for (AnnotationProcessor annotationProcessor : annotationProcessors) {
+            if (!documentAnnotated && isBuiltIn(annotationProcessor)) {
+                continue;
+            }
             try {
                 annotationProcessor.afterRender(drawContext.getPdDocument());
             } catch (Exception e) {
@@ -93,4 +140,9 @@ public class AnnotationDrawListener implements DrawListener, RenderListener {
         }
     }
 
+    private static boolean isBuiltIn(final AnnotationProcessor annotationProcessor) {
+        return annotationProcessor.getClass() == HyperlinkAnnotationProcessor.class
+                || annotationProcessor.getClass() == UnderlineAnnotationProcessor.class;
+    }
+
 }
@@ -13,8 +13,10 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
 import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageXYZDestination;
 
+import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
 import com.purplehillsbooks.pdflayout.text.DrawContext;
 import com.purplehillsbooks.pdflayout.text.Position;
+import com.purplehillsbooks.pdflayout.text.TextSequenceUtil;
 import com.purplehillsbooks.pdflayout.text.annotations.Annotations.AnchorAnnotation;
 import com.purplehillsbooks.pdflayout.text.annotations.Annotations.HyperlinkAnnotation;
 import com.purplehillsbooks.pdflayout.text.annotations.Annotations.HyperlinkAnnotation.LinkStyle;
@@ -24,6 +26,11 @@ import com.purplehillsbooks.pdflayout.util.CompatibilityHelper;
  * This annotation processor handles both {@link HyperlinkAnnotation}s and
  * {@link AnchorAnnotation}s, and adds the needed hyperlink metadata to the PDF
  * document.
+ * <p>
+ * The text of a link is drawn word by word.  The words of one link that
+ * follow each other on the same line, no more than a word gap apart, become
+ * a single link annotation, with one quad point rectangle for each word.
+ * </p>
  */
 public class HyperlinkAnnotationProcessor implements AnnotationProcessor {
 
@@ -58,7 +65,7 @@ public class HyperlinkAnnotationProcessor implements AnnotationProcessor {
 
     protected void handleHyperlinkAnnotations(
             AnnotatedStyledText annotatedText, DrawContext drawContext,
-            Position upperLeft, float width, float height) {
+            Position upperLeft, float width, float height) throws Exception {
         Iterable<HyperlinkAnnotation> hyperlinkAnnotations = annotatedText
                 .getAnnotationsOfType(HyperlinkAnnotation.class);
         for (HyperlinkAnnotation hyperlinkAnnotation : hyperlinkAnnotations) {
@@ -73,9 +80,20 @@ public class HyperlinkAnnotationProcessor implements AnnotationProcessor {
             bounds.setUpperRightX(upperLeft.getX() + width);
             bounds.setUpperRightY(upperLeft.getY());
 
-            links.add(new Hyperlink(bounds, annotatedText.getColor(),
-                    hyperlinkAnnotation.getLinkStyle(), hyperlinkAnnotation
-                            .getHyperlinkURI()));
+            //the words of a line are a space apart, plus what justifying adds
+            float wordGap = TextSequenceUtil.getStringWidth(" ", annotatedText.getFontDescriptor());
+            if (drawContext instanceof RenderContext) {
+                wordGap += ((RenderContext) drawContext).getExtraWordSpacing();
+            }
+            Hyperlink last = links.isEmpty() ? null : links.get(links.size() - 1);
+            if (last != null && last.continuesWith(hyperlinkAnnotation,
+                    annotatedText.getColor(), bounds, wordGap)) {
+                last.add(bounds);
+            } else {
+                links.add(new Hyperlink(hyperlinkAnnotation, bounds,
+                        annotatedText.getColor(), hyperlinkAnnotation.getLinkStyle(),
+                        hyperlinkAnnotation.getHyperlinkURI()));
+            }
         }
     }
 
@@ -104,12 +122,36 @@ public class HyperlinkAnnotationProcessor implements AnnotationProcessor {
                             hyperlink.getLinkStyle(),
                             hyperlink.getHyperlinkURI());
                 }
+                if (hyperlink.getParts().size() > 1) {
+                    pdLink.setQuadPoints(toQuadPoints(hyperlink.getParts(), page));
+                }
                 page.getAnnotations().add(pdLink);
             }
 
         }
     }
 
+    /**
+     * @return the quad points of the parts of a link, counterclockwise from
+     *         the lower left corner as link annotations expect them (unlike
+     *         {@link CompatibilityHelper#toQuadPoints(PDRectangle)} for text
+     *         markup).
+     */
+    private static float[] toQuadPoints(List<PDRectangle> parts, PDPage page) {
+        float[] quadPoints = new float[parts.size() * 8];
+        for (int i = 0; i < parts.size(); i++) {
+            PDRectangle part = parts.get(i);
+            float[] quad = new float[] {
+                    part.getLowerLeftX(), part.getLowerLeftY(),
+                    part.getUpperRightX(), part.getLowerLeftY(),
+                    part.getUpperRightX(), part.getUpperRightY(),
+                    part.getLowerLeftX(), part.getUpperRightY() };
+            quad = CompatibilityHelper.transformToPageRotation(quad, page);
+            System.arraycopy(quad, 0, quadPoints, i * 8, 8);
+        }
+        return quadPoints;
+    }
+
     private PDAnnotationLink createGotoLink(Hyperlink hyperlink) {
         String anchor = hyperlink.getHyperlinkURI().substring(1);
         PageAnchor pageAnchor = anchorMap.get(anchor);
@@ -156,19 +198,60 @@ public class HyperlinkAnnotationProcessor implements AnnotationProcessor {
     }
 
     private static class Hyperlink {
+        private final HyperlinkAnnotation annotation;
         private final PDRectangle rect;
+        private final List<PDRectangle> parts = new ArrayList<PDRectangle>();
         private final Color color;
         private final String hyperlinkUri;
         private final LinkStyle linkStyle;
 
-        public Hyperlink(PDRectangle rect, Color color, LinkStyle linkStyle,
-                String hyperlinkUri) {
-            this.rect = rect;
+        public Hyperlink(HyperlinkAnnotation annotation, PDRectangle rect,
+                Color color, LinkStyle linkStyle, String hyperlinkUri) {
+            this.annotation = annotation;
+            this.rect = new PDRectangle(rect.getLowerLeftX(), rect.getLowerLeftY(),
+                    rect.getWidth(), rect.getHeight());
+            this.parts.add(rect);
             this.color = color;
             this.hyperlinkUri = hyperlinkUri;
             this.linkStyle = linkStyle;
         }
 
+        /**
+         * @return <code>true</code> if the given part of a link belongs to the
+         *         same link as this one, has the same color, and follows it
+         *         on the same line, at most the given gap away.  Otherwise
+         *         the rectangle of the link would cover what is between them,
+         *         e.g. the space between two columns.
+         */
+        public boolean continuesWith(HyperlinkAnnotation nextAnnotation,
+                Color nextColor, PDRectangle next, float maxGap) {
+            PDRectangle previous = parts.get(parts.size() - 1);
+            return annotation == nextAnnotation
+                    && color.equals(nextColor)
+                    && next.getLowerLeftX() >= previous.getLowerLeftX()
+                    && next.getLowerLeftX() - previous.getUpperRightX() <= maxGap
+                    && next.getLowerLeftY() < previous.getUpperRightY()
+                    && next.getUpperRightY() > previous.getLowerLeftY();
+        }
+
+        /**
+         * Adds the next part of the link.
+         */
+        public void add(PDRectangle part) {
+            parts.add(part);
+            rect.setLowerLeftX(Math.min(rect.getLowerLeftX(), part.getLowerLeftX()));
+            rect.setLowerLeftY(Math.min(rect.getLowerLeftY(), part.getLowerLeftY()));
+            rect.setUpperRightX(Math.max(rect.getUpperRightX(), part.getUpperRightX()));
+            rect.setUpperRightY(Math.max(rect.getUpperRightY(), part.getUpperRightY()));
+        }
+
+        /**
+         * @return the rectangles of the words of the link.
+         */
+        public List<PDRectangle> getParts() {
+            return parts;
+        }
+
         public PDRectangle getRect() {
             return rect;
         }
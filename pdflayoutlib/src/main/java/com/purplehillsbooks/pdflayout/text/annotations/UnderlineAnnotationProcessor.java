@@ -7,15 +7,23 @@ import java.util.List;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 
+import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
 import com.purplehillsbooks.pdflayout.shape.Stroke;
 import com.purplehillsbooks.pdflayout.text.DrawContext;
 import com.purplehillsbooks.pdflayout.text.Position;
 import com.purplehillsbooks.pdflayout.text.StyledText;
 import com.purplehillsbooks.pdflayout.text.annotations.Annotations.UnderlineAnnotation;
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
 
 /**
  * This annotation processor handles the {@link UnderlineAnnotation}s, and adds
  * the needed hyperlink metadata to the PDF document.
+ * <p>
+ * The underlines are collected for each word, and drawn at the end of the
+ * page.  The underlines of one color and thickness are drawn as a single
+ * path with one stroke, and the underlines of words that touch each other on
+ * the same line are joined into one line.
+ * </p>
  */
 public class UnderlineAnnotationProcessor implements AnnotationProcessor {
 
@@ -45,8 +53,7 @@ public class UnderlineAnnotationProcessor implements AnnotationProcessor {
             Position start = new Position(upperLeft.getX(), upperLeft.getY()
                     - ascent + baselineOffset);
             Position end = new Position(start.getX() + width, start.getY());
-            Stroke stroke = Stroke.builder().lineWidth(thickness).build();
-            Line line = new Line(start, end, stroke, drawnText.getColor());
+            Line line = new Line(start, end, thickness, drawnText.getColor());
             linesOnPage.add(line);
         }
     }
@@ -58,8 +65,31 @@ public class UnderlineAnnotationProcessor implements AnnotationProcessor {
 
     @Override
     public void afterPage(DrawContext drawContext) throws Exception {
-        for (Line line : linesOnPage) {
-            line.draw(drawContext.getContentStream());
+        GraphicsState graphicsState = drawContext instanceof RenderContext
+                ? ((RenderContext) drawContext).getGraphicsState()
+                : new GraphicsState(drawContext.getContentStream());
+        List<Line> remaining = linesOnPage;
+        while (!remaining.isEmpty()) {
+            //one path for all lines that look like the first one left
+            Line first = remaining.get(0);
+            first.applyStyle(graphicsState);
+            List<Line> others = new ArrayList<Line>();
+            Line segment = null;
+            for (Line line : remaining) {
+                if (!line.hasStyleOf(first)) {
+                    others.add(line);
+                } else if (segment != null && segment.isContinuedBy(line)) {
+                    segment = segment.joinedWith(line);
+                } else {
+                    if (segment != null) {
+                        segment.addTo(graphicsState);
+                    }
+                    segment = line;
+                }
+            }
+            segment.addTo(graphicsState);
+            graphicsState.getContentStream().stroke();
+            remaining = others;
         }
         linesOnPage.clear();
     }
@@ -71,28 +101,51 @@ public class UnderlineAnnotationProcessor implements AnnotationProcessor {
 
     private static class Line {
 
-        private Position start;
-        private Position end;
-        private Stroke stroke;
-        private Color color;
+        //how close the ends of two lines must be to join them
+        private final static float TOUCHING = 0.01f;
+
+        private final Position start;
+        private final Position end;
+        private final float thickness;
+        private final Color color;
 
-        public Line(Position start, Position end, Stroke stroke, Color color) {
+        public Line(Position start, Position end, float thickness, Color color) {
             super();
             this.start = start;
             this.end = end;
-            this.stroke = stroke;
+            this.thickness = thickness;
             this.color = color;
         }
 
-        public void draw(PDPageContentStream contentStream) throws Exception {
+        public boolean hasStyleOf(Line other) {
+            return thickness == other.thickness
+                    && (color == null ? other.color == null : color.equals(other.color));
+        }
+
+        /**
+         * @return <code>true</code> if the given line starts where this one
+         *         ends, on the same baseline.
+         */
+        public boolean isContinuedBy(Line next) {
+            return next.start.getY() == end.getY()
+                    && Math.abs(next.start.getX() - end.getX()) < TOUCHING;
+        }
+
+        public Line joinedWith(Line next) {
+            return new Line(start, next.end, thickness, color);
+        }
+
+        public void applyStyle(GraphicsState graphicsState) throws Exception {
             if (color != null) {
-                contentStream.setStrokingColor(color);
-            }
-            if (stroke != null) {
-                stroke.applyTo(contentStream);
+                graphicsState.setStrokingColor(color);
             }
-            contentStream.drawLine(start.getX(), start.getY(), end.getX(),
-                    end.getY());
+            Stroke.builder().lineWidth(thickness).build().applyTo(graphicsState);
+        }
+
+        public void addTo(GraphicsState graphicsState) throws Exception {
+            PDPageContentStream contentStream = graphicsState.getContentStream();
+            contentStream.moveTo(start.getX(), start.getY());
+            contentStream.lineTo(end.getX(), end.getY());
         }
 
     }
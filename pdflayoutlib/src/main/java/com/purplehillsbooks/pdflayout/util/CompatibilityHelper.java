@@ -3,7 +3,7 @@ package com.purplehillsbooks.pdflayout.util;
 import java.awt.Color;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -37,9 +37,10 @@ public class CompatibilityHelper {
     private final static String BULLET = "\u2022";
     private final static String DOUBLE_ANGLE = "\u00bb";
 
-    private static final String IMAGE_CACHE = "IMAGE_CACHE";
-    private static Map<PDDocument, Map<String, Map<?, ?>>> documentCaches = new WeakHashMap<PDDocument, Map<String, Map<?, ?>>>();
-    private static PDBorderStyleDictionary noBorder;
+    //the images embedded by the deprecated drawImage, per document
+    private final static Map<PDDocument, Map<BufferedImage, PDImageXObject>> documentImages =
+            new WeakHashMap<PDDocument, Map<BufferedImage, PDImageXObject>>();
+
 
     /**
      * Returns the bullet character for the given level. Actually only two
@@ -108,14 +109,54 @@ public class CompatibilityHelper {
         // true);
     }
 
+    /**
+     * Draws the image, embedding it into the document the first time it is
+     * drawn there.  The embedded images are remembered per document for as
+     * long as the document is in use.
+     *
+     * @deprecated use
+     *             {@link #drawImage(PDImageXObject, PDPageContentStream, Position, float, float)}
+     *             with an image from
+     *             {@link com.purplehillsbooks.pdflayout.elements.render.RenderContext#getImageXObject(BufferedImage)},
+     *             which also shares the encoded image between documents.
+     */
+    @Deprecated
     public static void drawImage(final BufferedImage image,
             final PDDocument document, final PDPageContentStream contentStream,
             Position upperLeft, final float width, final float height)
             throws Exception {
-        PDImageXObject cachedImage = getCachedImage(document, image);
+        drawImage(getDocumentImage(document, image),
+                contentStream, upperLeft, width, height);
+    }
+
+    private static PDImageXObject getDocumentImage(final PDDocument document,
+            final BufferedImage image) throws Exception {
+        Map<BufferedImage, PDImageXObject> images;
+        synchronized (documentImages) {
+            images = documentImages.get(document);
+            if (images == null) {
+                images = new IdentityHashMap<BufferedImage, PDImageXObject>();
+                documentImages.put(document, images);
+            }
+        }
+        //only one thread draws to a document, but do not rely on it
+        synchronized (images) {
+            PDImageXObject embedded = images.get(image);
+            if (embedded == null) {
+                embedded = LosslessFactory.createFromImage(document, image);
+                images.put(image, embedded);
+            }
+            return embedded;
+        }
+    }
+
+    public static void drawImage(final PDImageXObject image,
+            final PDPageContentStream contentStream,
+            Position upperLeft, final float width, final float height)
+            throws Exception {
         float x = upperLeft.getX();
         float y = upperLeft.getY() - height;
-        contentStream.drawImage(cachedImage, x, y, width, height);
+        contentStream.drawImage(image, x, y, width, height);
     }
 
     public static int getPageRotation(final PDPage page) {
@@ -178,7 +219,11 @@ public class CompatibilityHelper {
     private static PDBorderStyleDictionary toBorderStyle(
             final LinkStyle linkStyle) {
         if (linkStyle == LinkStyle.none) {
-            return getNoBorder();
+            //a new one each time, a shared dictionary would end up in
+            //several documents at once
+            PDBorderStyleDictionary noBorder = new PDBorderStyleDictionary();
+            noBorder.setWidth(0);
+            return noBorder;
         }
         PDBorderStyleDictionary borderStyle = new PDBorderStyleDictionary();
         borderStyle.setStyle(PDBorderStyleDictionary.STYLE_UNDERLINE);
@@ -282,48 +327,4 @@ public class CompatibilityHelper {
         return transform;
     }
 
-    private static PDBorderStyleDictionary getNoBorder() {
-        if (noBorder == null) {
-            noBorder = new PDBorderStyleDictionary();
-            noBorder.setWidth(0);
-        }
-        return noBorder;
-    }
-
-
-    private static synchronized Map<String, Map<?, ?>> getDocumentCache(
-            final PDDocument document) {
-        Map<String, Map<?, ?>> cache = documentCaches.get(document);
-        if (cache == null) {
-            cache = new HashMap<String, Map<?, ?>>();
-            documentCaches.put(document, cache);
-        }
-        return cache;
-    }
-
-    private static synchronized Map<BufferedImage, PDImageXObject> getImageCache(
-            final PDDocument document) {
-        Map<String, Map<?, ?>> documentCache = getDocumentCache(document);
-        @SuppressWarnings("unchecked")
-        Map<BufferedImage, PDImageXObject> imageCache = (Map<BufferedImage, PDImageXObject>) documentCache
-                .get(IMAGE_CACHE);
-        if (imageCache == null) {
-            imageCache = new HashMap<BufferedImage, PDImageXObject>();
-            documentCache.put(IMAGE_CACHE, imageCache);
-        }
-        return imageCache;
-    }
-
-    private static synchronized PDImageXObject getCachedImage(
-            final PDDocument document, final BufferedImage image)
-            throws Exception {
-        Map<BufferedImage, PDImageXObject> imageCache = getImageCache(document);
-        PDImageXObject pdxObjectImage = imageCache.get(image);
-        if (pdxObjectImage == null) {
-            pdxObjectImage = LosslessFactory.createFromImage(document, image);
-            imageCache.put(image, pdxObjectImage);
-        }
-        return pdxObjectImage;
-    }
-
 }
@@ -0,0 +1,273 @@
+package com.purplehillsbooks.pdflayout.util;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * <p>
+ * Keeps track of the graphics state of a content stream, so that colors,
+ * line styles, font and word spacing are only written when they change.
+ * Every element sets the state it needs from scratch, and most of the time
+ * it is the same as before, e.g. the black text of one paragraph after the
+ * other, or the borders of the cells of a table.
+ * </p>
+ * <p>
+ * The render context has one for each page, see
+ * {@link com.purplehillsbooks.pdflayout.elements.render.RenderContext#getGraphicsState()}.
+ * Save and restore the state through this class, so that it knows what the
+ * state is after a restore.  Whoever writes to the content stream directly
+ * and changes the state without restoring it must call
+ * {@link #invalidate()}.  The text, shapes and elements of this library all
+ * draw through it, so it lives in the util package.  Drawables and
+ * listeners are drawn between {@link #drawingBy(Object)} and
+ * {@link #drawnBy(Object)}, which save the state and start them off with the
+ * defaults, unless they are of one of the classes known to draw through this
+ * tracker.
+ * </p>
+ * <p>
+ * A value that is not known (at the start of a stream, or after
+ * {@link #invalidate()}) is always written.  The line styles start with the
+ * defaults of the PDF specification.
+ * </p>
+ */
+public class GraphicsState {
+
+    private final PDPageContentStream contentStream;
+    private final Set<Class<?>> trustedDrawers;
+    private State state;
+    private final List<State> saved = new ArrayList<State>();
+
+    /**
+     * Creates a tracker for a content stream in an unknown state.
+     *
+     * @param contentStream
+     *            the content stream to write to.
+     */
+    public GraphicsState(final PDPageContentStream contentStream) {
+        this(contentStream, Collections.<Class<?>>emptySet());
+    }
+
+    /**
+     * Creates a tracker for a content stream in an unknown state.
+     *
+     * @param contentStream
+     *            the content stream to write to.
+     * @param trustedDrawers
+     *            the classes whose objects change the state only through
+     *            this tracker, see {@link #drawingBy(Object)}.
+     */
+    public GraphicsState(final PDPageContentStream contentStream,
+            final Set<Class<?>> trustedDrawers) {
+        this.contentStream = contentStream;
+        this.trustedDrawers = trustedDrawers;
+        this.state = new State();
+    }
+
+    /**
+     * Creates a tracker for the content stream of a new page, which is in the
+     * initial state defined by the PDF specification, apart from the colors.
+     *
+     * @param contentStream
+     *            the content stream of the new page.
+     * @param trustedDrawers
+     *            the classes whose objects change the state only through
+     *            this tracker, see {@link #drawingBy(Object)}.
+     * @return the tracker.
+     */
+    public static GraphicsState forNewPage(final PDPageContentStream contentStream,
+            final Set<Class<?>> trustedDrawers) {
+        GraphicsState graphicsState = new GraphicsState(contentStream, trustedDrawers);
+        State initial = graphicsState.state;
+        initial.lineWidth = 1;
+        initial.lineCapStyle = 0;
+        initial.lineJoinStyle = 0;
+        initial.dashPattern = new float[0];
+        initial.dashPhase = 0;
+        initial.wordSpacing = 0;
+        return graphicsState;
+    }
+
+    public PDPageContentStream getContentStream() {
+        return contentStream;
+    }
+
+    /**
+     * Forgets everything about the current state, so that all values are
+     * written again.  Call this after writing to the content stream directly.
+     */
+    public void invalidate() {
+        state = new State();
+    }
+
+    /**
+     * Called before an object draws to the content stream.  Unless the
+     * object is exactly of one of the trusted classes given to the
+     * constructor, which all change the state through this class, saves the
+     * state and sets the colors, line styles and word spacing to the
+     * defaults of the PDF specification.  So the object neither depends on
+     * what the elements before it left behind, nor changes the state for the
+     * elements after it.  Subclasses of the trusted classes are not trusted,
+     * as they may draw in a way of their own.  Must be followed by
+     * {@link #drawnBy(Object)}.
+     *
+     * @param drawer
+     *            the object about to draw, e.g. a drawable or a listener.
+     * @throws Exception
+     *             by pdfbox
+     */
+    public void drawingBy(final Object drawer) throws Exception {
+        if (!isTrusted(drawer)) {
+            saveGraphicsState();
+            setStrokingColor(Color.BLACK);
+            setNonStrokingColor(Color.BLACK);
+            setLineWidth(1);
+            setLineCapStyle(0);
+            setLineJoinStyle(0);
+            setLineDashPattern(new float[0], 0);
+            setWordSpacing(0);
+        }
+    }
+
+    /**
+     * Called after an object has drawn to the content stream, restores the
+     * state saved by {@link #drawingBy(Object)}.
+     *
+     * @param drawer
+     *            the object that has drawn.
+     * @throws Exception
+     *             by pdfbox
+     */
+    public void drawnBy(final Object drawer) throws Exception {
+        if (!isTrusted(drawer)) {
+            restoreGraphicsState();
+        }
+    }
+
+    private boolean isTrusted(final Object drawer) {
+        return trustedDrawers.contains(drawer.getClass());
+    }
+
+    public void saveGraphicsState() throws Exception {
+        contentStream.saveGraphicsState();
+        saved.add(state.copy());
+    }
+
+    public void restoreGraphicsState() throws Exception {
+        contentStream.restoreGraphicsState();
+        if (saved.isEmpty()) {
+            //restores a state saved by someone else
+            state = new State();
+        }
+        else {
+            state = saved.remove(saved.size() - 1);
+        }
+    }
+
+    public void setStrokingColor(final Color color) throws Exception {
+        if (!color.equals(state.strokingColor)) {
+            contentStream.setStrokingColor(color);
+            state.strokingColor = color;
+        }
+    }
+
+    public void setNonStrokingColor(final Color color) throws Exception {
+        if (!color.equals(state.nonStrokingColor)) {
+            contentStream.setNonStrokingColor(color);
+            state.nonStrokingColor = color;
+        }
+    }
+
+    public void setLineWidth(final float lineWidth) throws Exception {
+        if (lineWidth != state.lineWidth) {
+            contentStream.setLineWidth(lineWidth);
+            state.lineWidth = lineWidth;
+        }
+    }
+
+    public void setLineCapStyle(final int lineCapStyle) throws Exception {
+        if (lineCapStyle != state.lineCapStyle) {
+            contentStream.setLineCapStyle(lineCapStyle);
+            state.lineCapStyle = lineCapStyle;
+        }
+    }
+
+    public void setLineJoinStyle(final int lineJoinStyle) throws Exception {
+        if (lineJoinStyle != state.lineJoinStyle) {
+            contentStream.setLineJoinStyle(lineJoinStyle);
+            state.lineJoinStyle = lineJoinStyle;
+        }
+    }
+
+    /**
+     * Sets the dash pattern.
+     *
+     * @param pattern
+     *            the lengths of the dashes and gaps, empty for a solid line.
+     * @param phase
+     *            where in the pattern to start.
+     * @throws Exception
+     *             by pdfbox
+     */
+    public void setLineDashPattern(final float[] pattern, final float phase) throws Exception {
+        if (!Arrays.equals(pattern, state.dashPattern) || phase != state.dashPhase) {
+            contentStream.setLineDashPattern(pattern, phase);
+            state.dashPattern = pattern.clone();
+            state.dashPhase = phase;
+        }
+    }
+
+    public void setFont(final PDFont font, final float fontSize) throws Exception {
+        if (font != state.font || fontSize != state.fontSize) {
+            contentStream.setFont(font, fontSize);
+            state.font = font;
+            state.fontSize = fontSize;
+        }
+    }
+
+    public void setWordSpacing(final float wordSpacing) throws Exception {
+        if (wordSpacing != state.wordSpacing) {
+            contentStream.setWordSpacing(wordSpacing);
+            state.wordSpacing = wordSpacing;
+        }
+    }
+
+    /**
+     * The values of the graphics state that are tracked.  <code>null</code>
+     * and NaN stand for unknown.
+     */
+    private static class State {
+        Color strokingColor;
+        Color nonStrokingColor;
+        float lineWidth = Float.NaN;
+        int lineCapStyle = -1;
+        int lineJoinStyle = -1;
+        float[] dashPattern;
+        float dashPhase = Float.NaN;
+        PDFont font;
+        float fontSize = Float.NaN;
+        float wordSpacing = Float.NaN;
+
+        State copy() {
+            State copy = new State();
+            copy.strokingColor = strokingColor;
+            copy.nonStrokingColor = nonStrokingColor;
+            copy.lineWidth = lineWidth;
+            copy.lineCapStyle = lineCapStyle;
+            copy.lineJoinStyle = lineJoinStyle;
+            copy.dashPattern = dashPattern;
+            copy.dashPhase = dashPhase;
+            copy.font = font;
+            copy.fontSize = fontSize;
+            copy.wordSpacing = wordSpacing;
+            return copy;
+        }
+    }
+
+}
@@ -0,0 +1,322 @@
+package com.purplehillsbooks.pdflayout.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * <p>
+ * Keeps encoded images, so that an image with the same content is encoded
+ * only once, no matter how many image elements and documents show it.  The
+ * images are found by a key made from their content (see
+ * {@link com.purplehillsbooks.pdflayout.elements.ImageSource#getContentKey()}),
+ * and every document gets its own copy of the encoded stream, which is only a
+ * copy of bytes.
+ * </p>
+ * <p>
+ * The cache holds at most the given number of bytes of encoded images, and
+ * forgets the images used least recently first.  An image larger than that
+ * is not kept at all, and is not even copied.  All documents share
+ * {@link #getShared()} unless told otherwise, or unless they have a memory
+ * budget, see
+ * {@link com.purplehillsbooks.pdflayout.elements.PDFDoc#setImageCache(ImageCache)}.
+ * The cache is safe to use from several threads.
+ * </p>
+ */
+public final class ImageCache {
+
+    /**
+     * The size of the shared cache, unless changed with
+     * {@link #setMaxBytes(long)}.
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final ImageCache SHARED = new ImageCache(DEFAULT_MAX_BYTES);
+
+    //in the order of use, the least recently used first
+    private final LinkedHashMap<String, StreamNode> images = new LinkedHashMap<String, StreamNode>(16, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxBytes
+     *            the most bytes of encoded images to keep.
+     */
+    public ImageCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache shared by all documents of this JVM.
+     */
+    public static ImageCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the most bytes of encoded images to keep.
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the most bytes of encoded images to keep, forgetting images if
+     * there are more already.
+     *
+     * @param maxBytes
+     *            the size of the cache, 0 to keep nothing.
+     */
+    public synchronized void setMaxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * @return the bytes of the encoded images kept.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of images kept.
+     */
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * Forgets all images.
+     */
+    public synchronized void clear() {
+        images.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Embeds a copy of the encoded image with the given key into the
+     * document.
+     *
+     * @param document
+     *            the document to embed into.
+     * @param key
+     *            the content key of the image.
+     * @return the image, or <code>null</code> if there is no image with this
+     *         key (any more).
+     * @throws IOException
+     *             by pdfbox
+     */
+    public PDImageXObject get(final PDDocument document, final String key) throws IOException {
+        StreamNode image;
+        synchronized (this) {
+            image = images.get(key);
+        }
+        if (image == null) {
+            return null;
+        }
+        return new PDImageXObject(new PDStream((COSStream) image.toCOS(document)), null);
+    }
+
+    /**
+     * Keeps the encoded image for later documents.
+     *
+     * @param key
+     *            the content key of the image.
+     * @param image
+     *            the image, as created for a document.
+     * @throws IOException
+     *             by pdfbox
+     */
+    public void put(final String key, final PDImageXObject image) throws IOException {
+        //the encoded data alone already tells if an image is too large, and
+        //it may have to be read back from a scratch file to be copied
+        long length = image.getCOSObject().getLength();
+        synchronized (this) {
+            if (length > maxBytes || maxBytes <= 0 || images.containsKey(key)) {
+                return;
+            }
+        }
+        //copied outside of the lock, it can take a while for large images
+        StreamNode node = new StreamNode(image.getCOSObject());
+        synchronized (this) {
+            if (node.size > maxBytes || images.containsKey(key)) {
+                return;
+            }
+            images.put(key, node);
+            bytes += node.size;
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<StreamNode> oldest = images.values().iterator();
+        while (bytes > maxBytes && oldest.hasNext()) {
+            bytes -= oldest.next().size;
+            oldest.remove();
+        }
+    }
+
+    /**
+     * @return an unchangeable copy of the value, which does not belong to any
+     *         document.
+     */
+    private static Object snapshot(COSBase value) throws IOException {
+        if (value instanceof COSObject) {
+            return snapshot(((COSObject) value).getObject());
+        }
+        if (value instanceof COSStream) {
+            return new StreamNode((COSStream) value);
+        }
+        if (value instanceof COSDictionary) {
+            return snapshotDictionary((COSDictionary) value);
+        }
+        if (value instanceof COSArray) {
+            List<Object> items = new ArrayList<Object>();
+            for (int i = 0; i < ((COSArray) value).size(); i++) {
+                items.add(snapshot(((COSArray) value).get(i)));
+            }
+            return items;
+        }
+        if (value instanceof COSString) {
+            return ((COSString) value).getBytes().clone();
+        }
+        if (value instanceof COSFloat) {
+            return Float.valueOf(((COSFloat) value).floatValue());
+        }
+        if (value instanceof COSInteger) {
+            return Long.valueOf(((COSInteger) value).longValue());
+        }
+        //names, booleans and null can not be changed
+        return value;
+    }
+
+    private static Map<COSName, Object> snapshotDictionary(COSDictionary dictionary) throws IOException {
+        Map<COSName, Object> entries = new LinkedHashMap<COSName, Object>();
+        for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+            if (!COSName.LENGTH.equals(entry.getKey())) {
+                entries.put(entry.getKey(), snapshot(entry.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return the value as object of the given document.
+     */
+    @SuppressWarnings("unchecked")
+    private static COSBase toCOS(Object value, PDDocument document) throws IOException {
+        if (value instanceof StreamNode) {
+            return ((StreamNode) value).toCOS(document);
+        }
+        if (value instanceof Map) {
+            COSDictionary dictionary = new COSDictionary();
+            fill(dictionary, (Map<COSName, Object>) value, document);
+            return dictionary;
+        }
+        if (value instanceof List) {
+            COSArray array = new COSArray();
+            for (Object item : (List<Object>) value) {
+                array.add(toCOS(item, document));
+            }
+            return array;
+        }
+        if (value instanceof byte[]) {
+            return new COSString((byte[]) value);
+        }
+        if (value instanceof Float) {
+            return new COSFloat((Float) value);
+        }
+        if (value instanceof Long) {
+            return COSInteger.get((Long) value);
+        }
+        return (COSBase) value;
+    }
+
+    private static void fill(COSDictionary dictionary, Map<COSName, Object> entries, PDDocument document)
+            throws IOException {
+        for (Map.Entry<COSName, Object> entry : entries.entrySet()) {
+            dictionary.setItem(entry.getKey(), toCOS(entry.getValue(), document));
+        }
+    }
+
+    /**
+     * A stream with its data as it is in the file (still encoded).
+     */
+    private static final class StreamNode {
+        private final Map<COSName, Object> dictionary;
+        private final byte[] data;
+        //the bytes of this stream and the streams it refers to
+        private final long size;
+
+        StreamNode(COSStream stream) throws IOException {
+            dictionary = snapshotDictionary(stream);
+            InputStream in = stream.createRawInputStream();
+            try {
+                data = IOUtils.toByteArray(in);
+            }
+            finally {
+                in.close();
+            }
+            size = data.length + sizeOf(dictionary);
+        }
+
+        /**
+         * @return the bytes of the streams the snapshot refers to, also
+         *         through arrays and dictionaries, e.g. the ICC profile of
+         *         an /ICCBased color space.
+         */
+        private static long sizeOf(Object value) {
+            if (value instanceof StreamNode) {
+                return ((StreamNode) value).size;
+            }
+            long total = 0;
+            if (value instanceof Map) {
+                for (Object item : ((Map<?, ?>) value).values()) {
+                    total += sizeOf(item);
+                }
+            }
+            else if (value instanceof List) {
+                for (Object item : (List<?>) value) {
+                    total += sizeOf(item);
+                }
+            }
+            return total;
+        }
+
+        COSBase toCOS(PDDocument document) throws IOException {
+            COSStream stream = document.getDocument().createCOSStream();
+            fill(stream, dictionary, document);
+            OutputStream out = stream.createRawOutputStream();
+            try {
+                out.write(data);
+            }
+            finally {
+                out.close();
+            }
+            return stream;
+        }
+    }
+
+}
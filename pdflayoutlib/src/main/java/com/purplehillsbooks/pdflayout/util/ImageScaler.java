@@ -0,0 +1,145 @@
+package com.purplehillsbooks.pdflayout.util;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Scales images down by averaging the area of the source pixels that make up
+ * each target pixel (a box filter), which keeps fine detail from turning into
+ * noise.  The image is read one row at a time and only two rows of the
+ * result are summed up at once, so a large scan needs little more memory
+ * than the scaled image itself.
+ */
+public final class ImageScaler {
+
+    private ImageScaler() {
+    }
+
+    /**
+     * Scales the image down to the given size.
+     *
+     * @param image
+     *            the image to scale.
+     * @param width
+     *            the width of the result, at most the width of the image.
+     * @param height
+     *            the height of the result, at most the height of the image.
+     * @return the scaled image: gray if the image is gray, with alpha if the
+     *         image has alpha, otherwise RGB.
+     */
+    public static BufferedImage areaAverage(final BufferedImage image, final int width, final int height) {
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+        if (width <= 0 || height <= 0 || width > sourceWidth || height > sourceHeight) {
+            throw new IllegalArgumentException("can only scale " + sourceWidth + "x" + sourceHeight
+                    + " down, not to " + width + "x" + height);
+        }
+        boolean alpha = image.getColorModel().hasAlpha();
+        int type = image.getType() == BufferedImage.TYPE_BYTE_GRAY ? BufferedImage.TYPE_BYTE_GRAY
+                : alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+
+        //every source column and row covers at most two target pixels
+        int[] columnTarget = new int[sourceWidth];
+        float[] columnWeight = new float[sourceWidth];
+        float[] columnRest = new float[sourceWidth];
+        spread(sourceWidth, width, columnTarget, columnWeight, columnRest);
+        int[] rowTarget = new int[sourceHeight];
+        float[] rowWeight = new float[sourceHeight];
+        float[] rowRest = new float[sourceHeight];
+        spread(sourceHeight, height, rowTarget, rowWeight, rowRest);
+
+        int[] sourceRow = new int[sourceWidth];
+        //alpha and the colors multiplied by alpha, per target column
+        float[] row = new float[4 * width];
+        float[] current = new float[4 * width];
+        float[] next = new float[4 * width];
+        int[] targetRow = new int[width];
+        int currentTarget = 0;
+        for (int y = 0; y < sourceHeight; y++) {
+            image.getRGB(0, y, sourceWidth, 1, sourceRow, 0, sourceWidth);
+            Arrays.fill(row, 0f);
+            for (int x = 0; x < sourceWidth; x++) {
+                int pixel = sourceRow[x];
+                float a = alpha ? (pixel >>> 24) : 255f;
+                float r = ((pixel >> 16) & 0xff) * a;
+                float g = ((pixel >> 8) & 0xff) * a;
+                float b = (pixel & 0xff) * a;
+                int t = 4 * columnTarget[x];
+                add(row, t, a, r, g, b, columnWeight[x]);
+                if (columnRest[x] > 0f) {
+                    add(row, t + 4, a, r, g, b, columnRest[x]);
+                }
+            }
+            if (rowTarget[y] > currentTarget) {
+                write(scaled, currentTarget, current, targetRow);
+                float[] done = current;
+                current = next;
+                next = done;
+                Arrays.fill(next, 0f);
+                currentTarget = rowTarget[y];
+            }
+            addRow(current, row, rowWeight[y]);
+            if (rowRest[y] > 0f) {
+                addRow(next, row, rowRest[y]);
+            }
+        }
+        write(scaled, currentTarget, current, targetRow);
+        return scaled;
+    }
+
+    /**
+     * Computes the first target pixel each source pixel falls on, which part
+     * of the target pixel it covers there, and which part of the next target
+     * pixel it covers.
+     */
+    private static void spread(int sourceSize, int targetSize, int[] target, float[] weight, float[] rest) {
+        for (int i = 0; i < sourceSize; i++) {
+            double start = (double) i * targetSize / sourceSize;
+            double end = (double) (i + 1) * targetSize / sourceSize;
+            int first = (int) start;
+            if (first + 1 >= targetSize || end <= first + 1) {
+                //all of it, the last pixel also gets what rounding left over
+                target[i] = Math.min(first, targetSize - 1);
+                weight[i] = (float) (end - start);
+            }
+            else {
+                target[i] = first;
+                weight[i] = (float) (first + 1 - start);
+                rest[i] = (float) (end - first - 1);
+            }
+        }
+    }
+
+    private static void add(float[] sums, int index, float a, float r, float g, float b, float weight) {
+        sums[index] += a * weight;
+        sums[index + 1] += r * weight;
+        sums[index + 2] += g * weight;
+        sums[index + 3] += b * weight;
+    }
+
+    private static void addRow(float[] sums, float[] row, float weight) {
+        for (int i = 0; i < row.length; i++) {
+            sums[i] += row[i] * weight;
+        }
+    }
+
+    private static void write(BufferedImage scaled, int y, float[] sums, int[] targetRow) {
+        for (int x = 0; x < targetRow.length; x++) {
+            float a = sums[4 * x];
+            if (a <= 0f) {
+                targetRow[x] = 0;
+                continue;
+            }
+            targetRow[x] = channel(a) << 24 | channel(sums[4 * x + 1] / a) << 16
+                    | channel(sums[4 * x + 2] / a) << 8 | channel(sums[4 * x + 3] / a);
+        }
+        scaled.setRGB(0, y, targetRow.length, 1, targetRow, 0, targetRow.length);
+    }
+
+    private static int channel(float value) {
+        int rounded = Math.round(value);
+        return rounded < 0 ? 0 : rounded > 255 ? 255 : rounded;
+    }
+
+}
@@ -0,0 +1,292 @@
+package com.purplehillsbooks.pdflayout.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Tells where the time went while a
+ * {@link com.purplehillsbooks.pdflayout.elements.PDFDoc PDFDoc} was rendered
+ * and saved, and counts the work that was done.  Turn it on with
+ * {@link com.purplehillsbooks.pdflayout.elements.PDFDoc#setMetricsEnabled(boolean)},
+ * and get it from
+ * {@link com.purplehillsbooks.pdflayout.elements.PDFDoc#getRenderMetrics()}
+ * after saving, or from a
+ * {@link com.purplehillsbooks.pdflayout.elements.MetricsListener}.  Each
+ * rendering gets a report of its own.
+ * </p>
+ * <p>
+ * The time of a phase does not include the phases started within it, e.g.
+ * the word wrapping done while a paragraph is divided is only counted as
+ * {@link Phase#WRAP}, so the phases add up to the time spent in all of
+ * them.  Time spent in the layout outside of any phase is not counted, it is
+ * the difference to {@link #getElapsedNanos()}.  With a
+ * {@link com.purplehillsbooks.pdflayout.elements.PDFDoc#setMeasurementPool(java.util.concurrent.ForkJoinPool)
+ * measurement pool}, the time spent on the pool threads is added as well, so
+ * the phases may add up to more than the elapsed time.
+ * </p>
+ * <p>
+ * Time is recorded on the threads a recording has been started on, see
+ * {@link #record()}.  The document records on the thread rendering it, so
+ * markup is only counted if it is parsed while rendering (e.g. in streaming
+ * mode), or within a recording started by
+ * {@link com.purplehillsbooks.pdflayout.elements.PDFDoc#recordMetrics()}.
+ * </p>
+ * <p>
+ * The phases are entered by the text package as well as by the elements, so
+ * this class lives in the util package, which both of them depend on.
+ * </p>
+ */
+public class RenderMetrics {
+
+    /**
+     * The phases time is recorded for.
+     */
+    public enum Phase {
+        /** parsing markup into text flows */
+        MARKUP,
+        /** word wrapping text flows */
+        WRAP,
+        /** measuring the elements to lay out, apart from wrapping */
+        MEASURE,
+        /** dividing elements at page breaks */
+        DIVIDE,
+        /** drawing elements, headers and footers */
+        DRAW,
+        /** creating the annotations, e.g. links and underlines */
+        ANNOTATIONS,
+        /** writing the PDF with PDDocument.save() */
+        SAVE
+    }
+
+    /**
+     * The things that are counted.
+     */
+    public enum Counter {
+        /** pages rendered */
+        PAGES,
+        /** text flows word wrapped */
+        WRAPS,
+        /** elements divided at page breaks */
+        DIVIDES,
+        /** images embedded into the document */
+        IMAGES,
+        /** bytes of PDF written */
+        BYTES_WRITTEN
+    }
+
+    private static final ThreadLocal<Timer> TIMER = new ThreadLocal<Timer>();
+
+    private final LongAdder[] nanos = newAdders(Phase.values().length);
+    private final LongAdder[] counts = newAdders(Counter.values().length);
+    private long startTime;
+    private long elapsedNanos;
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i=0; i<count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Starts recording into these metrics on the current thread, until the
+     * recording is closed.  Recordings may be nested, closing one continues
+     * the one started before.
+     *
+     * @return the recording to close.
+     */
+    public Recording record() {
+        return new Recording(this);
+    }
+
+    /**
+     * Enters a phase on the current thread, pausing the phase the thread was
+     * in.  Does nothing if the thread is not recording.  Used by the library
+     * like this:
+     * <pre>
+     * Phase previous = RenderMetrics.enter(Phase.WRAP);
+     * try {
+     *     ...
+     * }
+     * finally {
+     *     RenderMetrics.exit(previous);
+     * }
+     * </pre>
+     *
+     * @param phase
+     *            the phase to enter.
+     * @return the phase to return to, which is passed to {@link #exit(Phase)}.
+     */
+    public static Phase enter(Phase phase) {
+        Timer timer = TIMER.get();
+        if (timer == null) {
+            return null;
+        }
+        return timer.switchTo(phase);
+    }
+
+    /**
+     * Leaves the current phase of the current thread, see {@link #enter(Phase)}.
+     *
+     * @param previous
+     *            the phase returned by {@link #enter(Phase)}.
+     */
+    public static void exit(Phase previous) {
+        Timer timer = TIMER.get();
+        if (timer != null) {
+            timer.switchTo(previous);
+        }
+    }
+
+    /**
+     * @return the metrics the current thread is recording to, or
+     *         <code>null</code> if it is not recording.
+     */
+    public static RenderMetrics current() {
+        Timer timer = TIMER.get();
+        return timer == null ? null : timer.metrics;
+    }
+
+    /**
+     * Counts on the metrics the current thread is recording to, if any.
+     *
+     * @param counter
+     *            the counter to add to.
+     * @param amount
+     *            the amount to add.
+     */
+    public static void count(Counter counter, long amount) {
+        Timer timer = TIMER.get();
+        if (timer != null) {
+            timer.metrics.add(counter, amount);
+        }
+    }
+
+    /**
+     * Adds to a counter of these metrics.
+     *
+     * @param counter
+     *            the counter to add to.
+     * @param amount
+     *            the amount to add.
+     */
+    public void add(Counter counter, long amount) {
+        counts[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * Called by the document when it starts rendering.
+     */
+    public void renderStarted() {
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Called by the document when it has been rendered or saved.
+     */
+    public void renderFinished() {
+        elapsedNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * @param phase
+     *            the phase.
+     * @return the time spent in the phase, in nanoseconds.
+     */
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * @param counter
+     *            the counter.
+     * @return the value of the counter.
+     */
+    public long getCount(Counter counter) {
+        return counts[counter.ordinal()].sum();
+    }
+
+    /**
+     * @return the time from the start of the rendering until the document was
+     *         rendered, or saved if it has been saved, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("RenderMetrics [elapsedMillis=");
+        sb.append(elapsedNanos / 1000000);
+        for (Phase phase : Phase.values()) {
+            sb.append(", ").append(phase.name().toLowerCase()).append("Millis=")
+                    .append(getNanos(phase) / 1000000);
+        }
+        for (Counter counter : Counter.values()) {
+            sb.append(", ").append(counter.name().toLowerCase()).append('=')
+                    .append(getCount(counter));
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Records into the metrics on the thread it has been created on, until
+     * it is closed.
+     */
+    public static class Recording implements AutoCloseable {
+
+        private final Timer previous;
+        private final Phase previousPhase;
+        private final Timer timer;
+
+        private Recording(RenderMetrics metrics) {
+            previous = TIMER.get();
+            previousPhase = previous == null ? null : previous.switchTo(null);
+            timer = new Timer(metrics);
+            TIMER.set(timer);
+        }
+
+        /**
+         * Stops recording, and continues the recording that was active
+         * before, if any.
+         */
+        @Override
+        public void close() {
+            timer.switchTo(null);
+            if (previous == null) {
+                TIMER.remove();
+            }
+            else {
+                TIMER.set(previous);
+                previous.switchTo(previousPhase);
+            }
+        }
+    }
+
+    /**
+     * Remembers the phase a thread is in, and since when.
+     */
+    private static class Timer {
+        final RenderMetrics metrics;
+        Phase phase;
+        long since;
+
+        Timer(RenderMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        Phase switchTo(Phase next) {
+            Phase current = phase;
+            if (current != next) {
+                long now = System.nanoTime();
+                if (current != null) {
+                    metrics.nanos[current.ordinal()].add(now - since);
+                }
+                phase = next;
+                since = now;
+            }
+            return current;
+        }
+    }
+
+}
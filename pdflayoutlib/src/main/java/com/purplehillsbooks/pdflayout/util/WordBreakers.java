@@ -84,19 +84,19 @@ public class WordBreakers {
                 final FontDescriptor fontDescriptor, final float maxWidth)
                 throws Exception {
             int cutIndex = (int) (maxWidth / getEmWidth(fontDescriptor));
-            float currentWidth = getStringWidth(word.substring(0, cutIndex),
+            float currentWidth = getStringWidth(word, 0, cutIndex,
                     fontDescriptor);
             if (currentWidth > maxWidth) {
                 while (currentWidth > maxWidth) {
                     --cutIndex;
-                    currentWidth = getStringWidth(word.substring(0, cutIndex),
+                    currentWidth = getStringWidth(word, 0, cutIndex,
                             fontDescriptor);
                 }
                 ++cutIndex;
             } else if (currentWidth < maxWidth) {
                 while (currentWidth < maxWidth) {
                     ++cutIndex;
-                    currentWidth = getStringWidth(word.substring(0, cutIndex),
+                    currentWidth = getStringWidth(word, 0, cutIndex,
                             fontDescriptor);
                 }
                 --cutIndex;
@@ -137,7 +137,7 @@ public class WordBreakers {
             while (!maxWidthExceeded && matcher.find()) {
                 int currentIndex = matcher.end();
                 if (currentIndex < word.length() - 1) {
-                    if (getStringWidth(word.substring(0, currentIndex),
+                    if (getStringWidth(word, 0, currentIndex,
                             fontDescriptor) < maxWidth) {
                         breakIndex = currentIndex;
                     } else {
@@ -0,0 +1,158 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.elements.Table;
+import com.purplehillsbooks.pdflayout.elements.TableRow;
+import com.purplehillsbooks.pdflayout.text.Alignment;
+import com.purplehillsbooks.pdflayout.text.BaseFont;
+import com.purplehillsbooks.pdflayout.text.DrawContext;
+import com.purplehillsbooks.pdflayout.text.Position;
+import com.purplehillsbooks.pdflayout.text.TextFlowUtil;
+import com.purplehillsbooks.pdflayout.text.annotations.Annotated;
+import com.purplehillsbooks.pdflayout.text.annotations.AnnotationProcessor;
+import com.purplehillsbooks.pdflayout.text.annotations.AnnotationProcessorFactory;
+
+/**
+ * Checks that registered annotation processors are told about every page,
+ * also without annotated objects, and that the words of one link on a line
+ * end up in a single annotation, unless they are far apart.
+ */
+public class AnnotationProcessorTest {
+
+    private static final AtomicInteger BEFORE_PAGE = new AtomicInteger();
+    private static final AtomicInteger AFTER_PAGE = new AtomicInteger();
+    private static final AtomicInteger AFTER_RENDER = new AtomicInteger();
+
+    public static class CountingProcessor implements AnnotationProcessor {
+        public void annotatedObjectDrawn(Annotated drawnObject, DrawContext drawContext,
+                Position upperLeft, float width, float height) throws Exception {
+        }
+        public void beforePage(DrawContext drawContext) throws Exception {
+            BEFORE_PAGE.incrementAndGet();
+        }
+        public void afterPage(DrawContext drawContext) throws Exception {
+            AFTER_PAGE.incrementAndGet();
+        }
+        public void afterRender(PDDocument document) throws Exception {
+            AFTER_RENDER.incrementAndGet();
+        }
+    }
+
+    @Test public void registeredProcessorSeesUnannotatedPages() throws Exception {
+        AnnotationProcessorFactory.register(CountingProcessor.class);
+        BEFORE_PAGE.set(0);
+        AFTER_PAGE.set(0);
+        AFTER_RENDER.set(0);
+        PDFDoc doc = new PDFDoc();
+        Paragraph paragraph = new Paragraph();
+        for (int i=0; i<1000; i++) {
+            paragraph.addTextCarefully("lorem ipsum dolor sit amet ", 12, PDType1Font.HELVETICA);
+        }
+        doc.add(paragraph);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            int pages = document.getNumberOfPages();
+            assertEquals(true, pages > 1);
+            assertEquals(pages, BEFORE_PAGE.get());
+            assertEquals(pages, AFTER_PAGE.get());
+            assertEquals(1, AFTER_RENDER.get());
+        }
+    }
+
+    @Test public void wordsOfLinkShareAnnotation() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        doc.add(new Paragraph(TextFlowUtil.createTextFlowFromMarkup(
+                "see {link[http://example.com]}the example web site{link} for more", 12, BaseFont.Helvetica)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            PDPage page = document.getPage(0);
+            assertEquals(1, page.getAnnotations().size());
+            PDAnnotation annotation = page.getAnnotations().get(0);
+            PDAnnotationLink link = (PDAnnotationLink) annotation;
+            //one quad of eight numbers per word
+            assertEquals(4 * 8, link.getQuadPoints().length);
+        }
+    }
+
+    @Test public void justifiedLinkSharesAnnotationPerLine() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        StringBuilder words = new StringBuilder();
+        for (int i=0; i<10; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append("consectetur adipiscing incididunt exercitation");
+        }
+        Paragraph paragraph = new Paragraph(TextFlowUtil.createTextFlowFromMarkup(
+                "{link[http://example.com]}" + words + "{link}", 12, BaseFont.Helvetica));
+        paragraph.setAlignment(Alignment.Justify);
+        //a narrow column, where justifying adds more than a space
+        Table table = new Table(1);
+        table.setColumnWidth(0, 150);
+        table.createNewRow().getCell(0).add(paragraph);
+        doc.add(table);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            //one annotation per line, with a quad for each of its words
+            List<PDAnnotation> annotations = document.getPage(0).getAnnotations();
+            assertTrue(annotations.size() > 3);
+            Set<Float> lines = new HashSet<Float>();
+            int quads = 0;
+            for (PDAnnotation annotation : annotations) {
+                assertTrue(lines.add(annotation.getRectangle().getLowerLeftY()));
+                float[] quadPoints = ((PDAnnotationLink) annotation).getQuadPoints();
+                //a link of a single word has no quad points
+                quads += quadPoints == null ? 1 : quadPoints.length / 8;
+            }
+            assertEquals(10 * 4, quads);
+        }
+    }
+
+    @Test public void linksApartOnLineGetOwnAnnotations() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        Paragraph paragraph = new Paragraph(TextFlowUtil.createTextFlowFromMarkup(
+                "{link[http://example.com]}the example{link}", 12, BaseFont.Helvetica));
+        //the same link twice on one baseline, in two columns
+        Table table = new Table(2);
+        table.setColumnWidth(0, 200);
+        table.setColumnWidth(1, 200);
+        TableRow row = table.createNewRow();
+        row.getCell(0).add(paragraph);
+        row.getCell(1).add(paragraph);
+        doc.add(table);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            PDPage page = document.getPage(0);
+            assertEquals(2, page.getAnnotations().size());
+            for (PDAnnotation annotation : page.getAnnotations()) {
+                assertTrue(annotation.getRectangle().getWidth() < 100);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.ImageElement;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.elements.Table;
+import com.purplehillsbooks.pdflayout.elements.TableRow;
+import com.purplehillsbooks.pdflayout.text.Alignment;
+import com.purplehillsbooks.pdflayout.text.BaseFont;
+import com.purplehillsbooks.pdflayout.text.TextFlowUtil;
+
+/**
+ * Renders many documents at the same time on several threads, and checks
+ * that every one of them comes out exactly like it does when rendered alone.
+ * Also checks that measuring a document in parallel does not change it.
+ */
+public class ConcurrentRenderingTest {
+
+    private static final int DOCUMENT_COUNT = 16;
+    private static final int THREAD_COUNT = 8;
+    private static final int ROUNDS = 2;
+
+    private static final String[] WORDS = ("lorem ipsum dolor sit amet consectetur adipiscing elit sed do "
+            + "eiusmod tempor incididunt ut labore et dolore magna aliqua ärger naïve façade").split(" ");
+
+    @Test public void concurrentRenderingMatchesSingleThreaded() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        for (int i=0; i<DOCUMENT_COUNT; i++) {
+            expected.add(describe(render(i, null)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            for (int round=0; round<ROUNDS; round++) {
+                List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+                for (int i=0; i<DOCUMENT_COUNT; i++) {
+                    final int seed = i;
+                    results.add(executor.submit(new Callable<byte[]>() {
+                        public byte[] call() throws Exception {
+                            return render(seed, null);
+                        }
+                    }));
+                }
+                for (int i=0; i<DOCUMENT_COUNT; i++) {
+                    assertEquals(expected.get(i), describe(results.get(i).get()),
+                            "document "+i+" in round "+round);
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void parallelMeasurementMatchesSerial() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(THREAD_COUNT);
+        try {
+            for (int i=0; i<DOCUMENT_COUNT; i++) {
+                assertEquals(describe(render(i, null)), describe(render(i, pool)), "document "+i);
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test public void sharedParagraphIsMeasuredOnOneThread() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(THREAD_COUNT);
+        try {
+            PDFDoc doc = new PDFDoc(40, 40, 40, 40);
+            doc.setMeasurementPool(pool);
+            Frame mainFrame = doc.newInteriorFrame();
+            Random random = new Random(1);
+            SlowParagraph shared = new SlowParagraph();
+            shared.addTextCarefully(words(random, 80), 10, PDType1Font.HELVETICA);
+            for (int i=0; i<THREAD_COUNT; i++) {
+                mainFrame.add(shared);
+                mainFrame.getNewParagraph().addTextCarefully(words(random, 40), 10, PDType1Font.HELVETICA);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.saveToStream(out);
+            assertTrue(shared.measured.get() > 0);
+            assertFalse(shared.overlapped.get(), "measured on two threads at once");
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Builds a document from the seed, using paragraphs, markup with links
+     * and underlines, tables, images, headers and page breaks.
+     */
+    private static byte[] render(int seed, ForkJoinPool measurementPool) throws Exception {
+        Random random = new Random(seed);
+        PDFDoc doc = new PDFDoc(40, 40, 40, 40);
+        doc.setMeasurementPool(measurementPool);
+        if (seed % 3 == 0) {
+            doc.setHeaderFont(PDType1Font.COURIER, 9);
+        }
+        BufferedImage image = createImage(random);
+        Frame mainFrame = doc.newInteriorFrame();
+        mainFrame.headerCenter = "Document "+seed+" page {#}";
+        for (int i=0; i<30; i++) {
+            Frame frame = mainFrame.newInteriorFrame();
+            frame.setBorderColor(i % 2 == 0 ? Color.blue : Color.green);
+            frame.setMargin(4, 4, 4, 4);
+            frame.setPadding(4, 4, 4, 4);
+            Paragraph para = frame.getNewParagraph();
+            para.setAlignment(Alignment.values()[i % Alignment.values().length]);
+            para.addTextCarefully(words(random, 20 + random.nextInt(120)), 9 + random.nextInt(6),
+                    i % 2 == 0 ? PDType1Font.HELVETICA : PDType1Font.TIMES_ROMAN);
+            frame.add(new Paragraph(TextFlowUtil.createTextFlowFromMarkup(
+                    "*"+words(random, 3)+"* _"+words(random, 3)+"_ {link[http://example.com/"+seed+"/"+i+"]}"
+                    +words(random, 4)+"{link} __"+words(random, 5)+"__", 10, BaseFont.Helvetica)));
+            if (i % 4 == 0) {
+                Table table = frame.getNewTable(3);
+                for (int c=0; c<3; c++) {
+                    table.setColumnWidth(c, 150);
+                }
+                for (int r=0; r<3; r++) {
+                    TableRow row = table.createNewRow();
+                    for (int c=0; c<3; c++) {
+                        row.getCell(c).getNewParagraph().addTextCarefully(words(random, 2 + random.nextInt(12)),
+                                8, PDType1Font.COURIER);
+                    }
+                }
+            }
+            if (i % 5 == 0) {
+                frame.add(new ImageElement(image));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage createImage(Random random) {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        for (int x=0; x<image.getWidth(); x++) {
+            for (int y=0; y<image.getHeight(); y++) {
+                image.setRGB(x, y, random.nextInt(0xffffff));
+            }
+        }
+        return image;
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Everything about the document that must not depend on the thread, which
+     * leaves out the file ID that PDFBox derives from the current time.
+     */
+    private static String describe(byte[] pdf) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        try (PDDocument document = PDDocument.load(pdf)) {
+            sb.append("pages=").append(document.getNumberOfPages()).append('\n');
+            for (PDPage page : document.getPages()) {
+                try (InputStream contents = page.getContents()) {
+                    byte[] content = readAll(contents);
+                    sb.append(new String(content, "ISO-8859-1")).append('\n');
+                }
+                sb.append("annotations=").append(page.getAnnotations().size()).append('\n');
+                sb.append("images=").append(page.getResources().getXObjectNames()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Takes its time measuring, and notices when it is measured on two
+     * threads at once.
+     */
+    private static class SlowParagraph extends Paragraph {
+        final AtomicInteger measured = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        private final AtomicInteger measuring = new AtomicInteger();
+
+        @Override
+        public float getHeight() throws Exception {
+            if (measuring.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            try {
+                measured.incrementAndGet();
+                Thread.sleep(20);
+                return super.getHeight();
+            }
+            finally {
+                measuring.decrementAndGet();
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+}
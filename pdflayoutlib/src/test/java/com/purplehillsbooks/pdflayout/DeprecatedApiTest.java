@@ -0,0 +1,61 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
+import com.purplehillsbooks.pdflayout.text.Position;
+import com.purplehillsbooks.pdflayout.util.CompatibilityHelper;
+
+/**
+ * Checks that the deprecated ways of setting the header font and drawing
+ * images still work the way they used to.
+ */
+@SuppressWarnings("deprecation")
+public class DeprecatedApiTest {
+
+    @Test public void staticHeaderFontIsDefaultOfNewDocuments() throws Exception {
+        PDFDoc before = new PDFDoc();
+        try {
+            RenderContext.HEADER_FONT = PDType1Font.COURIER;
+            RenderContext.HEADER_SIZE = 11;
+            PDFDoc after = new PDFDoc();
+            assertEquals(PDType1Font.COURIER, after.getHeaderFont());
+            assertEquals(11f, after.getHeaderSize());
+            assertEquals(PDType1Font.HELVETICA, before.getHeaderFont());
+            assertEquals(8f, before.getHeaderSize());
+        }
+        finally {
+            RenderContext.HEADER_FONT = PDType1Font.HELVETICA;
+            RenderContext.HEADER_SIZE = RenderContext.DEFAULT_HEADER_SIZE;
+        }
+    }
+
+    @Test public void drawImageEmbedsImageOncePerDocument() throws Exception {
+        BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB);
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+                for (int i=0; i<3; i++) {
+                    CompatibilityHelper.drawImage(image, document, contentStream,
+                            new Position(10, 100 + 20 * i), 20, 10);
+                }
+            }
+            Iterator<COSName> names = page.getResources().getXObjectNames().iterator();
+            names.next();
+            assertEquals(false, names.hasNext());
+        }
+    }
+
+}
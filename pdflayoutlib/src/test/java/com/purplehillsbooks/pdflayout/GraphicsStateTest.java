@@ -0,0 +1,157 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.elements.render.RenderContext;
+import com.purplehillsbooks.pdflayout.elements.render.RenderListener;
+import com.purplehillsbooks.pdflayout.text.Alignment;
+import com.purplehillsbooks.pdflayout.text.BaseFont;
+import com.purplehillsbooks.pdflayout.text.TextFlowUtil;
+import com.purplehillsbooks.pdflayout.util.GraphicsState;
+
+/**
+ * Checks that a render listener draws with the default word spacing and
+ * colors, whatever the elements of the page left behind, e.g. a justified
+ * paragraph in a color that continues on the next page without being
+ * clipped.  Also checks that only the drawables of the library are drawn
+ * without saving the state.
+ */
+public class GraphicsStateTest {
+
+    private static final String FOOTER = "custom footer text";
+    private static final String[] WORDS = ("a lorem ipsum dolor sit amet consectetur adipiscing "
+            + "elit sed do eiusmod tempor").split(" ");
+
+    @Test public void listenerDoesNotInheritStateOfPage() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        Paragraph intro = new Paragraph();
+        intro.addTextCarefully("Introduction", 12, PDType1Font.HELVETICA);
+        doc.add(intro);
+        //not at the top of the page, so the first part is not clipped
+        StringBuilder markup = new StringBuilder("{color:#00ff00}");
+        for (int i=0; i<3000; i++) {
+            markup.append(WORDS[(i * 7 + i / 3) % WORDS.length]).append(' ');
+        }
+        Paragraph paragraph = new Paragraph(TextFlowUtil.createTextFlowFromMarkup(
+                markup.toString(), 9, BaseFont.Helvetica));
+        paragraph.setAlignment(Alignment.Justify);
+        doc.add(paragraph);
+        doc.addRenderListener(new RenderListener() {
+            public void beforePage(RenderContext renderContext) throws Exception {
+            }
+            public void afterPage(RenderContext renderContext) throws Exception {
+                PDPageContentStream contentStream = renderContext.contentStream;
+                contentStream.beginText();
+                contentStream.setFont(PDType1Font.HELVETICA, 8);
+                contentStream.newLineAtOffset(40, 20);
+                contentStream.showText(FOOTER);
+                contentStream.endText();
+                //left behind on purpose, must not reach the next page
+                contentStream.setNonStrokingColor(Color.RED);
+            }
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            assertEquals(true, document.getNumberOfPages() > 1);
+            for (PDPage page : document.getPages()) {
+                List<String> footers = new ArrayList<String>();
+                replay(page, footers);
+                assertEquals(1, footers.size());
+                assertEquals("0.0 [0.0]", footers.get(0));
+            }
+        }
+    }
+
+    @Test public void onlyLibraryDrawablesKeepTheState() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            PDPageContentStream contentStream = new PDPageContentStream(document, page);
+            Set<Class<?>> trusted = Collections.<Class<?>>singleton(Paragraph.class);
+            GraphicsState graphicsState = new GraphicsState(contentStream, trusted);
+            //a subclass may draw in a way of its own
+            Paragraph subclass = new Paragraph() {
+            };
+            Object[] drawers = { new Paragraph(), subclass, new Object(), new Paragraph() };
+            for (Object drawer : drawers) {
+                graphicsState.drawingBy(drawer);
+                graphicsState.drawnBy(drawer);
+            }
+            contentStream.close();
+            PDFStreamParser parser = new PDFStreamParser(page);
+            parser.parse();
+            int saves = 0;
+            for (Object token : parser.getTokens()) {
+                if (token instanceof Operator && ((Operator) token).getName().equals("q")) {
+                    saves++;
+                }
+            }
+            assertEquals(2, saves);
+        }
+    }
+
+    /**
+     * Follows the word spacing and fill color through the content stream of
+     * the page, and adds both as they are when the footer is shown.
+     */
+    private static void replay(PDPage page, List<String> footers) throws Exception {
+        PDFStreamParser parser = new PDFStreamParser(page);
+        parser.parse();
+        List<Object> operands = new ArrayList<Object>();
+        List<String> saved = new ArrayList<String>();
+        float wordSpacing = 0;
+        String fill = "[0.0]";
+        for (Object token : parser.getTokens()) {
+            if (!(token instanceof Operator)) {
+                operands.add(token);
+                continue;
+            }
+            String name = ((Operator) token).getName();
+            if (name.equals("q")) {
+                saved.add(wordSpacing + "|" + fill);
+            }
+            else if (name.equals("Q")) {
+                String[] state = saved.remove(saved.size() - 1).split("\\|");
+                wordSpacing = Float.parseFloat(state[0]);
+                fill = state[1];
+            }
+            else if (name.equals("Tw")) {
+                wordSpacing = ((COSNumber) operands.get(0)).floatValue();
+            }
+            else if (name.equals("rg") || name.equals("g")) {
+                List<Float> values = new ArrayList<Float>();
+                for (Object operand : operands) {
+                    values.add(((COSNumber) operand).floatValue());
+                }
+                //black is black, however it is written
+                fill = values.toString().equals("[0.0, 0.0, 0.0]") ? "[0.0]" : values.toString();
+            }
+            else if (name.equals("Tj") && FOOTER.equals(((COSString) operands.get(0)).getString())) {
+                footers.add(wordSpacing + " " + fill);
+            }
+            operands.clear();
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.text.Alignment;
+import com.purplehillsbooks.pdflayout.text.Position;
+import com.purplehillsbooks.pdflayout.text.StyledText;
+import com.purplehillsbooks.pdflayout.text.TextLine;
+import com.purplehillsbooks.pdflayout.text.WrappingNewLine;
+
+/**
+ * Checks that a justified line puts every word where the gaps say and ends
+ * at the right margin, whether the gaps are written as word spacing (Tw) or
+ * as adjustments (TJ): for a simple font, for a Type0 font, for a line with
+ * a space inside a fragment, and with word spacing switched off.
+ */
+public class JustifyTest {
+
+    private static final float LEFT = 50;
+    private static final float TOP = 700;
+    private static final float WIDTH = 400;
+    private static final float SIZE = 12;
+
+    @Test public void simpleFontUsesWordSpacing() throws Exception {
+        assertEquals(true, checkJustified(PDType1Font.HELVETICA, "Lorem", " ipsum", " dolor", " amet."));
+    }
+
+    @Test public void type0FontUsesAdjustments() throws Exception {
+        PDDocument document = new PDDocument();
+        try {
+            InputStream in = PDFont.class.getResourceAsStream(
+                    "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf");
+            PDFont font = PDType0Font.load(document, in);
+            in.close();
+            assertEquals(false, checkJustified(document, font, "Lorem", " ipsum", " dolor", " amet."));
+        }
+        finally {
+            document.close();
+        }
+    }
+
+    @Test public void innerSpaceUsesAdjustments() throws Exception {
+        assertEquals(false, checkJustified(PDType1Font.HELVETICA, "Lorem", " ipsum dolor", " sit", " amet."));
+    }
+
+    @Test public void wordSpacingCanBeSwitchedOff() throws Exception {
+        System.setProperty(TextLine.JUSTIFY_WITH_WORD_SPACING_PROPERTY, "false");
+        try {
+            assertEquals(false, checkJustified(PDType1Font.HELVETICA, "Lorem", " ipsum", " dolor", " amet."));
+        }
+        finally {
+            System.clearProperty(TextLine.JUSTIFY_WITH_WORD_SPACING_PROPERTY);
+        }
+    }
+
+    private static boolean checkJustified(PDFont font, String... fragments) throws Exception {
+        PDDocument document = new PDDocument();
+        try {
+            return checkJustified(document, font, fragments);
+        }
+        finally {
+            document.close();
+        }
+    }
+
+    /**
+     * Draws the fragments as one justified line, and checks the position of
+     * the first visible glyph of every fragment, and the end of the last one.
+     *
+     * @return whether the line was written with word spacing.
+     */
+    private static boolean checkJustified(PDDocument document, PDFont font, String... fragments)
+            throws Exception {
+        TextLine line = new TextLine();
+        for (String fragment : fragments) {
+            line.add(new StyledText(fragment, SIZE, font));
+        }
+        line.setNewLine(new WrappingNewLine(SIZE));
+        float extra = (WIDTH - line.getWidth()) / (fragments.length - 1);
+
+        PDPage page = new PDPage();
+        document.addPage(page);
+        PDPageContentStream contentStream = new PDPageContentStream(document, page);
+        line.drawAligned(contentStream, new Position(LEFT, TOP), Alignment.Justify, WIDTH, null);
+        contentStream.close();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        document.save(out);
+
+        try (PDDocument saved = PDDocument.load(out.toByteArray())) {
+            List<TextPosition> glyphs = getGlyphs(saved);
+            int index = 0;
+            float x = LEFT;
+            for (int i=0; i<fragments.length; i++) {
+                String fragment = fragments[i];
+                String visible = fragment.trim();
+                float leading = width(font, fragment.substring(0, fragment.indexOf(visible)));
+                TextPosition first = glyphs.get(index);
+                assertEquals(visible.substring(0, 1), first.getUnicode(), fragment);
+                assertEquals(x + leading, first.getXDirAdj(), 0.01f, fragment);
+                index += visible.replace(" ", "").length();
+                x += width(font, fragment) + extra;
+            }
+            assertEquals(index, glyphs.size());
+            TextPosition last = glyphs.get(index - 1);
+            assertEquals(LEFT + WIDTH, last.getXDirAdj() + last.getWidthDirAdj(), 0.01f);
+            return usesWordSpacing(saved.getPage(0));
+        }
+    }
+
+    private static float width(PDFont font, String text) throws Exception {
+        return font.getStringWidth(text) * SIZE / 1000;
+    }
+
+    /**
+     * @return the glyphs of the first page apart from spaces, in the order
+     *         they are shown.
+     */
+    private static List<TextPosition> getGlyphs(PDDocument document) throws Exception {
+        final List<TextPosition> glyphs = new ArrayList<TextPosition>();
+        PDFTextStripper stripper = new PDFTextStripper() {
+            @Override
+            protected void processTextPosition(TextPosition text) {
+                if (!text.getUnicode().equals(" ")) {
+                    glyphs.add(text);
+                }
+            }
+        };
+        stripper.getText(document);
+        return glyphs;
+    }
+
+    private static boolean usesWordSpacing(PDPage page) throws Exception {
+        PDFStreamParser parser = new PDFStreamParser(page);
+        parser.parse();
+        Object previous = null;
+        for (Object token : parser.getTokens()) {
+            if (token instanceof Operator && ((Operator) token).getName().equals("Tw")
+                    && ((COSNumber) previous).floatValue() != 0) {
+                return true;
+            }
+            previous = token;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.elements.Table;
+
+/**
+ * Checks that a container measured before its contents change is measured
+ * again afterwards, also where the first measurement took a shortcut, and
+ * that a change in one document does not make another document measure
+ * again.
+ */
+public class MeasurementCacheTest {
+
+    @Test public void frameNoticesTextAddedToEmptyParagraph() throws Exception {
+        Frame frame = new Frame();
+        Paragraph paragraph = new Paragraph();
+        frame.add(paragraph);
+        assertEquals(0f, frame.getHeight());
+        paragraph.addTextCarefully("Hello world", 12, PDType1Font.HELVETICA);
+        assertEquals(paragraph.getHeight(), frame.getHeight(), 0.001f);
+        assertEquals(true, frame.getHeight() > 0);
+    }
+
+    @Test public void frameNoticesGivenSizeOfChild() throws Exception {
+        Frame frame = new Frame();
+        Frame inner = new Frame(100, 50);
+        frame.add(inner);
+        assertEquals(50f, frame.getHeight());
+        assertEquals(100f, frame.getWidth());
+        inner.setGivenHeight(80);
+        inner.setGivenWidth(120);
+        assertEquals(80f, frame.getHeight());
+        assertEquals(120f, frame.getWidth());
+    }
+
+    @Test public void frameNoticesColumnWidthOfTable() throws Exception {
+        Frame frame = new Frame();
+        Table table = new Table(2);
+        table.setColumnWidth(0, 100);
+        table.setColumnWidth(1, 50);
+        frame.add(table);
+        assertEquals(150f, frame.getWidth());
+        table.setColumnWidth(1, 70);
+        assertEquals(170f, frame.getWidth());
+    }
+
+    @Test public void changeInOtherDocumentKeepsMeasurements() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        Paragraph paragraph = new Paragraph();
+        Frame frame = createFrame(doc, paragraph);
+        PDFDoc otherDoc = new PDFDoc();
+        Paragraph otherParagraph = new Paragraph();
+        createFrame(otherDoc, otherParagraph);
+
+        doc.resetMeasurementCounters();
+        otherParagraph.addTextCarefully(" and more", 12, PDType1Font.HELVETICA);
+        frame.getHeight();
+        assertEquals(0, doc.getMeasurementsComputed());
+        assertEquals(1, doc.getMeasurementsAvoided());
+
+        float before = frame.getHeight();
+        paragraph.addTextCarefully(" and larger", 30, PDType1Font.HELVETICA);
+        assertEquals(true, frame.getHeight() > before);
+        //the frame and the paragraph
+        assertEquals(2, doc.getMeasurementsComputed());
+    }
+
+    private static Frame createFrame(PDFDoc doc, Paragraph paragraph) throws Exception {
+        paragraph.addTextCarefully("Hello world", 12, PDType1Font.HELVETICA);
+        Frame frame = new Frame();
+        frame.add(paragraph);
+        doc.add(frame);
+        frame.getHeight();
+        return frame;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+
+/**
+ * Checks that the page count token in a footer shows the number of pages of
+ * the whole document on every page, also for pages that were finished before
+ * the last page was known, when streaming.
+ */
+public class PageCountTest {
+
+    private static final int FRAMES = 12;
+
+    @Test public void pageCountIsFilledInOnClose() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        addFrames(doc);
+        checkFooters(doc);
+    }
+
+    @Test public void pageCountIsFilledInWhenStreaming() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        doc.startStreaming();
+        addFrames(doc);
+        checkFooters(doc);
+    }
+
+    private static void addFrames(PDFDoc doc) throws Exception {
+        for (int i=0; i<FRAMES; i++) {
+            Frame frame = doc.newInteriorFrame();
+            frame.footerCenter = "Page {#} of {##}";
+            Paragraph paragraph = new Paragraph();
+            for (int j=0; j<60; j++) {
+                paragraph.addTextCarefully("frame " + i + " lorem ipsum dolor sit amet ", 12, PDType1Font.HELVETICA);
+            }
+            frame.add(paragraph);
+        }
+    }
+
+    private static void checkFooters(PDFDoc doc) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            int pages = document.getNumberOfPages();
+            assertTrue(pages > 2);
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int i=1; i<=pages; i++) {
+                stripper.setStartPage(i);
+                stripper.setEndPage(i);
+                String text = stripper.getText(document);
+                assertTrue(text.contains("Page " + i + " of " + pages), text);
+                assertEquals(false, text.contains("{##}"));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.Dividable.Divided;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.text.TextFlow;
+import com.purplehillsbooks.pdflayout.text.TextLine;
+import com.purplehillsbooks.pdflayout.text.TextSequenceUtil;
+
+/**
+ * Checks that dividing a paragraph on the line height index cuts it at the
+ * same line as adding the wrapped lines one by one to a new paragraph, until
+ * the next one does not fit any more.
+ */
+public class ParagraphDivideTest {
+
+    private static final float[] LINE_SPACINGS = { 0.8f, 1f, 1.5f };
+    private static final float[] SPACES_BEFORE = { 0f, 6f, 20f };
+
+    @Test public void divideMatchesLinearScan() throws Exception {
+        Random random = new Random(3);
+        for (float lineSpacing : LINE_SPACINGS) {
+            for (float spaceBefore : SPACES_BEFORE) {
+                for (int i=0; i<10; i++) {
+                    TextFlow text = createText(random);
+                    Paragraph paragraph = new Paragraph(text);
+                    paragraph.setMaxWidth(200 + random.nextInt(200));
+                    paragraph.setLineSpacing(lineSpacing);
+                    paragraph.setSpaceBefore(spaceBefore);
+                    float fullHeight = paragraph.getHeight();
+                    for (int j=0; j<40; j++) {
+                        float remainingHeight = random.nextFloat() * (fullHeight + 20);
+                        Divided divided = paragraph.divide(remainingHeight, null, false);
+                        Paragraph expected = linearScan(text, paragraph, remainingHeight);
+                        String message = "spacing "+lineSpacing+", space before "+spaceBefore+", height "+remainingHeight;
+                        assertEquals(expected.getHeight(), divided.getFirst().getHeight(), 0.001f, message);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test public void emptyParagraphDividesIntoNothing() throws Exception {
+        Paragraph paragraph = new Paragraph();
+        Divided divided = paragraph.divide(100, null, false);
+        assertEquals(0f, divided.getFirst().getHeight());
+        assertEquals(0f, divided.getTail().getHeight());
+    }
+
+    /**
+     * Text in several font sizes, so the lines differ in height.
+     */
+    private static TextFlow createText(Random random) throws Exception {
+        TextFlow flow = new TextFlow();
+        int pieces = 1 + random.nextInt(8);
+        for (int i=0; i<pieces; i++) {
+            StringBuilder text = new StringBuilder();
+            int words = 5 + random.nextInt(60);
+            for (int w=0; w<words; w++) {
+                text.append(w % 7 == 0 ? "consectetur " : "lorem ipsum ");
+            }
+            flow.addText(text.toString(), 8 + random.nextInt(12), PDType1Font.HELVETICA);
+        }
+        return flow;
+    }
+
+    /**
+     * The way paragraphs used to be divided: the first part gets one wrapped
+     * line after the other while it is below the height and the next line
+     * still fits.
+     */
+    private static Paragraph linearScan(TextFlow text, Paragraph paragraph, float maxHeight) throws Exception {
+        Paragraph first = new Paragraph();
+        first.setMaxWidth(paragraph.getMaxWidth());
+        first.setLineSpacing(text.getLineSpacing());
+        first.setSpaceBefore(paragraph.getSpaceBefore());
+        first.setSpaceAfter(0);
+        List<TextLine> lines = TextSequenceUtil.wordWrap(text, paragraph.getMaxWidth()).getLines();
+        for (TextLine line : lines) {
+            if (first.getHeight() >= maxHeight || first.getHeight() + line.getHeight() > maxHeight) {
+                break;
+            }
+            first.add(line);
+        }
+        return first;
+    }
+
+}
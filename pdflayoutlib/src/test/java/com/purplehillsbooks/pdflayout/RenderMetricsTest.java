@@ -0,0 +1,87 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.MetricsListener;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Counter;
+import com.purplehillsbooks.pdflayout.util.RenderMetrics.Phase;
+
+/**
+ * Checks that the {@link RenderMetrics} of a multi-page document count its
+ * pages, divisions and bytes, that every rendering is reported once, and
+ * that no phase keeps running after the document has been saved.
+ */
+public class RenderMetricsTest {
+
+    @Test public void metricsMatchTheSavedDocument() throws Exception {
+        PDFDoc doc = createDocument();
+        final List<RenderMetrics> reported = new ArrayList<RenderMetrics>();
+        doc.addMetricsListener(new MetricsListener() {
+            public void metricsRecorded(PDFDoc document, RenderMetrics metrics) {
+                reported.add(metrics);
+            }
+        });
+        for (int i=0; i<2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.saveToStream(out);
+            assertEquals(i + 1, reported.size());
+            RenderMetrics metrics = doc.getRenderMetrics();
+            assertTrue(metrics == reported.get(i));
+            try (PDDocument document = PDDocument.load(out.toByteArray())) {
+                assertTrue(document.getNumberOfPages() > 2);
+                assertEquals(document.getNumberOfPages(), metrics.getCount(Counter.PAGES));
+            }
+            assertEquals(out.size(), metrics.getCount(Counter.BYTES_WRITTEN));
+            assertTrue(metrics.getCount(Counter.DIVIDES) > 0);
+            assertNothingRunning(metrics);
+        }
+        assertTrue(reported.get(0) != reported.get(1));
+    }
+
+    @Test public void noMetricsWhenDisabled() throws Exception {
+        PDFDoc doc = createDocument();
+        doc.saveToStream(new ByteArrayOutputStream());
+        assertEquals(null, doc.getRenderMetrics());
+        assertEquals(null, RenderMetrics.current());
+    }
+
+    private static void assertNothingRunning(RenderMetrics metrics) throws Exception {
+        assertEquals(null, RenderMetrics.current());
+        long[] nanos = new long[Phase.values().length];
+        for (Phase phase : Phase.values()) {
+            nanos[phase.ordinal()] = metrics.getNanos(phase);
+        }
+        long elapsed = metrics.getElapsedNanos();
+        Thread.sleep(20);
+        for (Phase phase : Phase.values()) {
+            assertEquals(nanos[phase.ordinal()], metrics.getNanos(phase), phase.name());
+        }
+        assertEquals(elapsed, metrics.getElapsedNanos());
+    }
+
+    private static PDFDoc createDocument() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        Frame frame = doc.newInteriorFrame();
+        for (int i=0; i<200; i++) {
+            Paragraph paragraph = new Paragraph();
+            paragraph.addTextCarefully("paragraph " + i + " lorem ipsum dolor sit amet, consectetur"
+                    + " adipiscing elit, sed do eiusmod tempor incididunt ut labore", 12, PDType1Font.HELVETICA);
+            frame.add(paragraph);
+        }
+        return doc;
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.elements.ReusableDrawable;
+import com.purplehillsbooks.pdflayout.text.BaseFont;
+import com.purplehillsbooks.pdflayout.text.TextFlowUtil;
+
+/**
+ * Checks that the underlines of a reusable drawable are drawn into its form,
+ * and that its links do not end up as annotations of the page.
+ */
+public class ReusableDrawableTest {
+
+    @Test public void underlinesAreDrawnIntoForm() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        ReusableDrawable letterhead = new ReusableDrawable(new Paragraph(TextFlowUtil.createTextFlowFromMarkup(
+                "__Company__ and {link[http://example.com]}website{link}", 12, BaseFont.Helvetica)));
+        doc.add(letterhead);
+        doc.add(letterhead);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            PDPage page = document.getPage(0);
+            int forms = 0;
+            for (COSName name : page.getResources().getXObjectNames()) {
+                PDFormXObject form = (PDFormXObject) page.getResources().getXObject(name);
+                //the underline, links show as plain text
+                assertEquals(1, countStrokes(form));
+                forms++;
+            }
+            assertEquals(1, forms);
+            assertEquals(0, page.getAnnotations().size());
+        }
+    }
+
+    private static int countStrokes(PDFormXObject form) throws Exception {
+        PDFStreamParser parser = new PDFStreamParser(form);
+        parser.parse();
+        int strokes = 0;
+        for (Object token : parser.getTokens()) {
+            if (token instanceof Operator && ((Operator) token).getName().equals("S")) {
+                strokes++;
+            }
+        }
+        return strokes;
+    }
+
+}
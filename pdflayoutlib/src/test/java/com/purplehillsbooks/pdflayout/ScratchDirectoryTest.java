@@ -0,0 +1,61 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+
+/**
+ * Checks that the directory of the scratch file of a document with a memory
+ * budget is gone once the document is closed, whether it was saved or
+ * handed out by {@link PDFDoc#renderDocument()}.
+ */
+public class ScratchDirectoryTest {
+
+    @Test public void renderedDocumentRemovesDirectoryOnClose() throws Exception {
+        File parent = Files.createTempDirectory("scratchtest").toFile();
+        try {
+            PDDocument document = createDocument(parent).renderDocument();
+            assertEquals(1, parent.list().length);
+            document.close();
+            assertEquals(0, parent.list().length);
+        }
+        finally {
+            parent.delete();
+        }
+    }
+
+    @Test public void savedDocumentRemovesDirectory() throws Exception {
+        File parent = Files.createTempDirectory("scratchtest").toFile();
+        try {
+            createDocument(parent).saveToStream(new ByteArrayOutputStream());
+            assertEquals(0, parent.list().length);
+        }
+        finally {
+            parent.delete();
+        }
+    }
+
+    private static PDFDoc createDocument(File scratchParent) throws Exception {
+        PDFDoc doc = new PDFDoc();
+        doc.setMemoryBudget(10000);
+        doc.setScratchDirectory(scratchParent);
+        Frame frame = doc.newInteriorFrame();
+        Paragraph paragraph = new Paragraph();
+        for (int i=0; i<500; i++) {
+            paragraph.addTextCarefully("lorem ipsum dolor sit amet ", 12, PDType1Font.HELVETICA);
+        }
+        frame.add(paragraph);
+        return doc;
+    }
+
+}
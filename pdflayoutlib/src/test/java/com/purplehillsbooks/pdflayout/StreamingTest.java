@@ -0,0 +1,194 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.Frame;
+import com.purplehillsbooks.pdflayout.elements.ImageElement;
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.text.BaseFont;
+import com.purplehillsbooks.pdflayout.text.TextFlowUtil;
+
+/**
+ * Checks that a document rendered in streaming mode has exactly the pages of
+ * the same document rendered at once, and that it lets go of what it has
+ * drawn.
+ */
+public class StreamingTest {
+
+    private static final int CHUNKS = 12;
+
+    @Test public void streamingDrawsSamePages() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        doc.startStreaming();
+        assertTrue(doc.isStreaming());
+        fill(doc, 0, CHUNKS);
+        List<String> pages = save(doc);
+        assertEquals(false, doc.isStreaming());
+
+        assertTrue(pages.size() > 2);
+        assertEquals(renderAtOnce(), pages);
+    }
+
+    @Test public void elementsAddedBeforeStreamingAreDrawn() throws Exception {
+        List<String> expected = renderAtOnce();
+        for (int split : new int[] { 1, 5, CHUNKS }) {
+            PDFDoc doc = new PDFDoc();
+            fill(doc, 0, split);
+            doc.startStreaming();
+            fill(doc, split, CHUNKS);
+            assertEquals(expected, save(doc), "streaming after " + split + " chunks");
+        }
+    }
+
+    @Test public void pendingFrameIsFilledAfterAdd() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        doc.startStreaming();
+        fill(doc, 0, CHUNKS - 1);
+        //the frame is added before it gets its content, and it is the
+        //last one, so it is only drawn when the document is saved
+        Frame last = doc.newInteriorFrame();
+        last.setPadding(10, 10, 5, 5);
+        last.add(createParagraph(CHUNKS - 1, 0));
+        last.add(createParagraph(CHUNKS - 1, 1));
+
+        PDFDoc expected = new PDFDoc();
+        fill(expected, 0, CHUNKS);
+        assertEquals(save(expected), save(doc));
+    }
+
+    @Test public void renderFailureIsWrapped() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        doc.startStreaming();
+        fill(doc, 0, 2);
+        Exception failure = new Exception("cannot measure");
+        doc.add(new FailingParagraph(failure));
+        try {
+            //only now the failing paragraph gets drawn
+            doc.add(createParagraph(2, 0));
+            assertTrue(false, "the failing paragraph was drawn");
+        }
+        catch (RuntimeException e) {
+            assertEquals("Unable to render the previous element while streaming", e.getMessage());
+            Throwable cause = e.getCause();
+            while (cause != null && cause != failure) {
+                cause = cause.getCause();
+            }
+            assertSame(failure, cause);
+        }
+    }
+
+    @Test public void releasedImagesAreCollected() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        doc.setImageCache(null);
+        doc.startStreaming();
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        WeakReference<BufferedImage> drawn = new WeakReference<BufferedImage>(image);
+        doc.newInteriorFrame().add(new ImageElement(image));
+        image = null;
+        //draws the frame with the image, and releases it
+        fill(doc, 0, 2);
+        for (int i=0; i<20 && drawn.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(null, drawn.get());
+        save(doc);
+    }
+
+    /**
+     * Adds the chunks from begin to end, every second one as an interior
+     * frame that is filled after it has been added.
+     */
+    private static void fill(PDFDoc doc, int begin, int end) throws Exception {
+        for (int i=begin; i<end; i++) {
+            if (i % 2 == 0) {
+                doc.add(createParagraph(i, 0));
+            }
+            else {
+                Frame frame = doc.newInteriorFrame();
+                frame.setPadding(10, 10, 5, 5);
+                frame.add(createParagraph(i, 0));
+                frame.add(createParagraph(i, 1));
+            }
+        }
+    }
+
+    private static Paragraph createParagraph(int chunk, int part) throws Exception {
+        StringBuilder text = new StringBuilder();
+        text.append("*Chunk ").append(chunk).append('.').append(part).append("* ");
+        for (int i=0; i<12; i++) {
+            text.append("lorem ipsum dolor sit amet, __consectetur__ adipiscing elit, ");
+        }
+        Paragraph paragraph = new Paragraph(TextFlowUtil.createTextFlowFromMarkup(
+                text.toString(), 11, BaseFont.Times));
+        paragraph.setSpaceAfter(6);
+        return paragraph;
+    }
+
+    private static List<String> renderAtOnce() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        fill(doc, 0, CHUNKS);
+        return save(doc);
+    }
+
+    /**
+     * @return the content stream of every page.
+     */
+    private static List<String> save(PDFDoc doc) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+        List<String> pages = new ArrayList<String>();
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            for (PDPage page : document.getPages()) {
+                pages.add(read(page.getContents()));
+            }
+        }
+        return pages;
+    }
+
+    private static String read(InputStream in) throws Exception {
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                content.write(buffer, 0, count);
+            }
+            return new String(content.toByteArray(), "ISO-8859-1");
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A paragraph that cannot be measured.
+     */
+    private static class FailingParagraph extends Paragraph {
+        private final Exception failure;
+
+        FailingParagraph(Exception failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public float getHeight() throws Exception {
+            throw failure;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.purplehillsbooks.pdflayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+import com.purplehillsbooks.pdflayout.elements.Paragraph;
+import com.purplehillsbooks.pdflayout.text.BaseFont;
+import com.purplehillsbooks.pdflayout.text.TextFlowUtil;
+
+/**
+ * Checks that the underlines of a page are stroked once per color, and that
+ * the underlines of the words on one line are joined into a single line.
+ */
+public class UnderlineTest {
+
+    @Test public void underlinesAreStrokedOncePerColor() throws Exception {
+        StringBuilder markup = new StringBuilder("__");
+        for (int i=0; i<100; i++) {
+            markup.append("underlined words ");
+        }
+        markup.append("__ and {color:#ff0000}__");
+        for (int i=0; i<100; i++) {
+            markup.append("red words ");
+        }
+        markup.append("__");
+        PDFDoc doc = new PDFDoc();
+        doc.add(new Paragraph(TextFlowUtil.createTextFlowFromMarkup(
+                markup.toString(), 12, BaseFont.Helvetica)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.saveToStream(out);
+
+        try (PDDocument document = PDDocument.load(out.toByteArray())) {
+            assertEquals(1, document.getNumberOfPages());
+            PDFStreamParser parser = new PDFStreamParser(document.getPage(0));
+            parser.parse();
+            List<Object> operands = new ArrayList<Object>();
+            int strokes = 0;
+            int moves = 0;
+            //a color and a baseline is one line
+            Set<String> lines = new HashSet<String>();
+            for (Object token : parser.getTokens()) {
+                if (!(token instanceof Operator)) {
+                    operands.add(token);
+                    continue;
+                }
+                String name = ((Operator) token).getName();
+                if (name.equals("S")) {
+                    strokes++;
+                }
+                else if (name.equals("m")) {
+                    moves++;
+                    lines.add(strokes + " " + ((COSNumber) operands.get(1)).floatValue());
+                }
+                operands.clear();
+            }
+            assertEquals(2, strokes);
+            assertEquals(true, lines.size() > 4);
+            assertEquals(lines.size(), moves);
+        }
+    }
+
+}
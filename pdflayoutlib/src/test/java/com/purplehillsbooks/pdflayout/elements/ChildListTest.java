@@ -0,0 +1,84 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a snapshot of the children of a frame stays as it was, however
+ * the children are changed afterwards.
+ */
+public class ChildListTest {
+
+    @Test public void snapshotIsReusedUntilChanged() throws Exception {
+        ChildList list = new ChildList();
+        fill(list, 3);
+        ChildrenView snapshot = list.freeze();
+        assertSame(snapshot, list.freeze());
+        list.add(new Paragraph());
+        assertEquals(false, snapshot == list.freeze());
+    }
+
+    @Test public void addingAfterFreezeKeepsSnapshot() throws Exception {
+        ChildList list = new ChildList();
+        List<Drawable> expected = fill(list, 5);
+        ChildrenView snapshot = list.freeze();
+        //within the capacity of the shared array, and beyond it
+        for (int i=0; i<20; i++) {
+            list.add(new Paragraph());
+            assertEquals(expected, snapshot);
+        }
+        List<Drawable> more = new ArrayList<Drawable>();
+        more.add(new Paragraph());
+        list.addAll(more);
+        assertEquals(expected, snapshot);
+        assertEquals(26, list.size());
+        assertEquals(expected, list.subList(0, 5));
+    }
+
+    @Test public void setAndRemoveCopySharedArray() throws Exception {
+        ChildList list = new ChildList();
+        List<Drawable> expected = fill(list, 5);
+        ChildrenView snapshot = list.freeze();
+
+        Drawable replacement = new Paragraph();
+        assertSame(expected.get(2), list.set(2, replacement));
+        assertEquals(expected, snapshot);
+        assertSame(replacement, list.get(2));
+
+        ChildrenView second = list.freeze();
+        assertSame(expected.get(0), list.remove(0));
+        assertEquals(expected, snapshot);
+        assertEquals(5, second.size());
+        assertSame(replacement, second.get(2));
+        assertEquals(4, list.size());
+        assertSame(replacement, list.get(1));
+
+        ChildrenView third = list.freeze();
+        list.add(0, new Paragraph());
+        assertEquals(4, third.size());
+        assertSame(replacement, third.get(1));
+
+        ChildrenView fourth = list.freeze();
+        list.clear();
+        assertEquals(5, fourth.size());
+        assertEquals(0, list.size());
+        assertEquals(0, list.freeze().size());
+        assertEquals(expected, snapshot);
+    }
+
+    private static List<Drawable> fill(ChildList list, int count) {
+        List<Drawable> added = new ArrayList<Drawable>();
+        for (int i=0; i<count; i++) {
+            Drawable drawable = new Paragraph();
+            list.add(drawable);
+            added.add(drawable);
+        }
+        return added;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that slices of the children of a divided frame, with and without
+ * the drawables before and after them, hold the same drawables as the
+ * corresponding part of a plain list.
+ */
+public class ChildrenViewTest {
+
+    private final Drawable before = new Paragraph();
+    private final Drawable after = new Paragraph();
+    private final Drawable[] children = createChildren(6);
+
+    @Test public void sliceMatchesSubList() throws Exception {
+        //children 1 to 4 of the array, with the drawable before and after
+        ChildrenView view = new ChildrenView(before, children, 1, 5, after);
+        List<Drawable> expected = new ArrayList<Drawable>();
+        expected.add(before);
+        expected.addAll(Arrays.asList(children).subList(1, 5));
+        expected.add(after);
+        assertEquals(expected, view);
+        for (int from=0; from<=view.size(); from++) {
+            for (int to=from; to<=view.size(); to++) {
+                assertEquals(expected.subList(from, to), view.slice(from, to), "slice " + from + " to " + to);
+            }
+        }
+    }
+
+    @Test public void sliceIncludesBeforeAndAfterOnlyAtEnds() throws Exception {
+        ChildrenView view = new ChildrenView(before, children, 0, 6, after);
+        assertEquals(before, view.slice(0, 1).get(0));
+        assertEquals(1, view.slice(0, 1).size());
+        assertEquals(children[0], view.slice(1, 2).get(0));
+        assertEquals(after, view.slice(7, 8).get(0));
+        assertEquals(1, view.slice(7, 8).size());
+        assertEquals(children[5], view.slice(6, 7).get(0));
+        assertEquals(1, view.slice(6, 7).size());
+    }
+
+    @Test public void emptySlices() throws Exception {
+        ChildrenView view = new ChildrenView(before, children, 2, 4, after);
+        for (int i=0; i<=view.size(); i++) {
+            ChildrenView empty = view.slice(i, i);
+            assertEquals(0, empty.size());
+            assertEquals(false, empty.iterator().hasNext());
+        }
+        ChildrenView none = new ChildrenView(null, children, 3, 3, null);
+        assertEquals(0, none.size());
+        assertEquals(0, none.slice(0, 0).size());
+        assertEquals(false, canSlice(view, 0, view.size() + 1));
+        assertEquals(false, canSlice(view, 2, 1));
+        assertEquals(false, canSlice(view, -1, 0));
+    }
+
+    @Test public void withBeforeAndAfter() throws Exception {
+        Drawable[] original = children.clone();
+        ChildrenView view = new ChildrenView(null, children, 1, 3, null);
+        Drawable first = new Paragraph();
+        Drawable last = new Paragraph();
+        assertEquals(Arrays.asList(first, children[1], children[2]), view.withBefore(first));
+        assertEquals(Arrays.asList(children[1], children[2], last), view.withAfter(last));
+        assertEquals(Arrays.asList(first, children[1], children[2], last),
+                view.withBefore(first).withAfter(last));
+        //there is room for one of each, more are copied
+        assertEquals(Arrays.asList(first, before, children[1], children[2], after),
+                view.withBefore(before).withAfter(after).withBefore(first));
+        assertEquals(Arrays.asList(before, children[1], children[2], after, last),
+                view.withBefore(before).withAfter(after).withAfter(last));
+        //the array is shared with other views, and never written to
+        assertEquals(Arrays.asList(original), Arrays.asList(children));
+    }
+
+    private static boolean canSlice(ChildrenView view, int from, int to) {
+        try {
+            view.slice(from, to);
+            return true;
+        }
+        catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    private static Drawable[] createChildren(int count) {
+        Drawable[] children = new Drawable[count];
+        for (int i=0; i<count; i++) {
+            children[i] = new Paragraph();
+        }
+        return children;
+    }
+
+}
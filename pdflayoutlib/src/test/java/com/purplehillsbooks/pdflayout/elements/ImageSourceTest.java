@@ -0,0 +1,91 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that an image file is scaled down when it is embedded with fewer
+ * pixels, and embedded as it is when it can not be decoded.
+ */
+public class ImageSourceTest {
+
+    @Test public void jpegIsScaledDown() throws Exception {
+        ImageSource source = ImageSource.fromBytes(createJpeg(40, 30));
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject image = source.createXObject(document, 20, 15);
+            assertEquals(20, image.getWidth());
+            assertEquals(15, image.getHeight());
+            assertEquals(COSName.DCT_DECODE, image.getCOSObject().getFilters());
+        }
+    }
+
+    @Test public void undecodableJpegIsEmbeddedAsItIs() throws Exception {
+        ImageSource source = new UndecodableImage(ImageSource.fromBytes(createJpeg(40, 30)));
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject image = source.createXObject(document, 20, 15);
+            assertEquals(40, image.getWidth());
+            assertEquals(30, image.getHeight());
+            assertEquals(COSName.DCT_DECODE, image.getCOSObject().getFilters());
+        }
+    }
+
+    private static byte[] createJpeg(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y=0; y<height; y++) {
+            for (int x=0; x<width; x++) {
+                image.setRGB(x, y, x * 6 << 16 | y * 8 << 8);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A JPEG file the java runtime can not decode, like a CMYK JPEG used to
+     * be.
+     */
+    private static class UndecodableImage extends ImageSource {
+        private final ImageSource file;
+
+        UndecodableImage(ImageSource file) {
+            this.file = file;
+        }
+
+        public int getWidth() {
+            return file.getWidth();
+        }
+
+        public int getHeight() {
+            return file.getHeight();
+        }
+
+        public boolean isDecoded() {
+            return false;
+        }
+
+        public BufferedImage getImage() throws IOException {
+            throw new IIOException("Unsupported Image Type");
+        }
+
+        public String getContentKey() throws IOException {
+            return file.getContentKey();
+        }
+
+        public PDImageXObject createXObject(PDDocument document) throws IOException {
+            return file.createXObject(document);
+        }
+    }
+
+}
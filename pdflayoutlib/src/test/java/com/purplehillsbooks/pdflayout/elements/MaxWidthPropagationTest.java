@@ -0,0 +1,157 @@
+package com.purplehillsbooks.pdflayout.elements;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a frame passes its max width down only once, and walks its
+ * subtree again as soon as a child is added or changed, or the width to pass
+ * on is a different one.
+ */
+public class MaxWidthPropagationTest {
+
+    @Test public void unchangedSubtreeIsNotWalkedAgain() throws Exception {
+        CountingParagraph first = createParagraph();
+        CountingParagraph second = createParagraph();
+        Frame inner = new Frame();
+        inner.add(first);
+        inner.add(second);
+        Frame outer = new Frame(inner);
+        outer.setPadding(10, 10, 0, 0);
+
+        outer.setMaxWidth(300);
+        assertEquals(1, first.calls);
+        assertEquals(1, second.calls);
+        assertEquals(280f, first.getMaxWidth());
+        assertTrue(outer.isConstraintCurrent(280));
+        assertTrue(inner.isConstraintCurrent(280));
+
+        //measuring is no change
+        outer.getHeight();
+        outer.getWidth();
+        outer.setMaxWidth(300);
+        inner.setMaxWidth(280);
+        assertEquals(1, first.calls);
+        assertEquals(1, second.calls);
+    }
+
+    @Test public void addedChildGetsTheWalk() throws Exception {
+        CountingParagraph first = createParagraph();
+        Frame inner = new Frame(first);
+        Frame outer = new Frame(inner);
+        outer.setMaxWidth(300);
+        outer.getHeight();
+
+        CountingParagraph added = createParagraph();
+        inner.add(added);
+        assertEquals(false, outer.isConstraintCurrent(300));
+        outer.setMaxWidth(300);
+        assertEquals(1, added.calls);
+        assertEquals(300f, added.getMaxWidth());
+        assertTrue(outer.isConstraintCurrent(300));
+
+        //and the same for a bulk append
+        CountingParagraph appended = createParagraph();
+        inner.addChildren(Collections.singletonList(appended));
+        outer.setMaxWidth(300);
+        assertEquals(300f, appended.getMaxWidth());
+    }
+
+    @Test public void changedChildGetsTheWalk() throws Exception {
+        CountingParagraph first = createParagraph();
+        CountingParagraph second = createParagraph();
+        Frame inner = new Frame(first);
+        inner.add(second);
+        Frame outer = new Frame(inner);
+        outer.setMaxWidth(300);
+        outer.getHeight();
+
+        second.addTextCarefully(" and some more text", 10, PDType1Font.HELVETICA);
+        assertEquals(false, outer.isConstraintCurrent(300));
+        outer.setMaxWidth(300);
+        assertEquals(2, first.calls);
+        assertEquals(2, second.calls);
+        assertTrue(outer.isConstraintCurrent(300));
+
+        //a child changing its width on its own
+        first.setMaxWidth(100);
+        outer.setMaxWidth(300);
+        assertEquals(300f, first.getMaxWidth());
+    }
+
+    @Test public void changedWidthGetsTheWalk() throws Exception {
+        CountingParagraph paragraph = createParagraph();
+        Frame inner = new Frame(paragraph);
+        Frame outer = new Frame(inner);
+        outer.setMaxWidth(300);
+        outer.getHeight();
+
+        outer.setMaxWidth(200);
+        assertEquals(2, paragraph.calls);
+        assertEquals(200f, paragraph.getMaxWidth());
+
+        //the interior width changes with the padding
+        outer.setPaddingLeft(20);
+        outer.setMaxWidth(200);
+        assertEquals(180f, paragraph.getMaxWidth());
+
+        //and with a given width, whatever the max width is
+        inner.setGivenWidth(150);
+        outer.setMaxWidth(200);
+        assertEquals(150f, paragraph.getMaxWidth());
+        int calls = paragraph.calls;
+        outer.setMaxWidth(200);
+        assertEquals(calls, paragraph.calls);
+    }
+
+    @Test public void changedCellGetsTheWalk() throws Exception {
+        Table table = new Table(2);
+        table.setColumnWidth(0, 100);
+        table.setColumnWidth(1, 200);
+        TableRow row = table.createNewRow();
+        CountingParagraph left = createParagraph();
+        CountingParagraph right = createParagraph();
+        row.getCell(0).add(left);
+        row.getCell(1).add(right);
+        Frame outer = new Frame(table);
+        outer.setMaxWidth(500);
+        assertEquals(100f, left.getMaxWidth());
+        assertEquals(200f, right.getMaxWidth());
+
+        outer.setMaxWidth(500);
+        assertEquals(1, left.calls);
+        assertEquals(1, right.calls);
+
+        CountingParagraph added = createParagraph();
+        row.getCell(1).add(added);
+        outer.setMaxWidth(500);
+        assertEquals(200f, added.getMaxWidth());
+        assertEquals(100f, left.getMaxWidth());
+    }
+
+    private static CountingParagraph createParagraph() throws Exception {
+        CountingParagraph paragraph = new CountingParagraph();
+        paragraph.addTextCarefully("lorem ipsum dolor sit amet, consectetur adipiscing elit",
+                10, PDType1Font.HELVETICA);
+        return paragraph;
+    }
+
+    /**
+     * Counts the times a container passes a max width down to it.
+     */
+    private static class CountingParagraph extends Paragraph {
+        int calls;
+
+        @Override
+        public void setMaxWidth(float maxWidth) {
+            calls++;
+            super.setMaxWidth(maxWidth);
+        }
+    }
+
+}
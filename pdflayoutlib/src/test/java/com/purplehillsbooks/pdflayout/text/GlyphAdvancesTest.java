@@ -0,0 +1,130 @@
+package com.purplehillsbooks.pdflayout.text;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link GlyphAdvances} measures strings exactly like
+ * {@link PDFont#getStringWidth(String)}, for a standard 14 font and a loaded
+ * TrueType font, and that a character the font can not encode is reported
+ * and not remembered.
+ */
+public class GlyphAdvancesTest {
+
+    private static final String LATIN_1 = "Hello, Grüße à ça ½©";
+    private static final String BMP = "€ 5 — ‘x’ “y” …";
+    private static final String SUPPLEMENTARY = "a𝐀b😀c𠀀";
+
+    @Test public void standard14FontMatchesPdfBox() throws Exception {
+        PDFont font = PDType1Font.TIMES_ROMAN;
+        assertSameWidths(font, LATIN_1);
+        assertSameWidths(font, BMP);
+        assertNotEncoded(font, "xΩ", 0x03a9);
+        assertNotEncoded(font, "x😀", 0x1f600);
+    }
+
+    @Test public void type0FontMatchesPdfBox() throws Exception {
+        PDDocument document = new PDDocument();
+        try {
+            InputStream in = PDFont.class.getResourceAsStream(
+                    "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf");
+            PDFont font = PDType0Font.load(document, in);
+            in.close();
+            assertSameWidths(font, LATIN_1);
+            assertSameWidths(font, BMP + "ΩЖא");
+            assertNotEncoded(font, "x中", 0x4e2d);
+            assertNotEncoded(font, "x😀", 0x1f600);
+        }
+        finally {
+            document.close();
+        }
+    }
+
+    /**
+     * None of the fonts at hand has glyphs outside the BMP, so this font
+     * encodes every code point into its low byte.  PDFBox still measures the
+     * string code point by code point, and a surrogate measured on its own
+     * would get the width of a different code.
+     */
+    @Test public void supplementaryCodePointsMatchPdfBox() throws Exception {
+        COSDictionary dictionary = new COSDictionary();
+        dictionary.setItem(COSName.TYPE, COSName.FONT);
+        dictionary.setItem(COSName.SUBTYPE, COSName.TYPE1);
+        dictionary.setName(COSName.BASE_FONT, "AnyCodePoint");
+        PDFont font = new PDType1Font(dictionary) {
+            @Override
+            protected byte[] encode(int unicode) {
+                return new byte[] { (byte) unicode };
+            }
+
+            @Override
+            public float getWidth(int code) {
+                return 100 + code;
+            }
+        };
+        assertSameWidths(font, SUPPLEMENTARY);
+        assertSameWidths(font, LATIN_1 + BMP + SUPPLEMENTARY);
+    }
+
+    private static void assertSameWidths(PDFont font, String text) throws Exception {
+        GlyphAdvances advances = GlyphAdvances.forFont(font);
+        //the first call looks the glyphs up, the second one uses the table
+        for (int i=0; i<2; i++) {
+            assertEquals(font.getStringWidth(text), advances.getStringWidth(font, text), text);
+        }
+        for (int begin=0; begin<text.length(); begin++) {
+            if (Character.isLowSurrogate(text.charAt(begin))) {
+                continue;
+            }
+            for (int end=begin; end<=text.length(); end++) {
+                if (end < text.length() && Character.isLowSurrogate(text.charAt(end))) {
+                    continue;
+                }
+                String part = text.substring(begin, end);
+                assertEquals(font.getStringWidth(part), advances.getStringWidth(font, text, begin, end), part);
+            }
+        }
+    }
+
+    private static void assertNotEncoded(PDFont font, String text, int codePoint) throws Exception {
+        GlyphAdvances advances = GlyphAdvances.forFont(font);
+        assertTrue(!canMeasure(font, text));
+        for (int i=0; i<2; i++) {
+            assertTrue(!canMeasure(advances, font, text));
+            assertTrue(Float.isNaN(advances.getRememberedAdvance(codePoint)));
+        }
+        //the characters before it are remembered as usual
+        assertEquals(font.getStringWidth("x"), advances.getRememberedAdvance('x'));
+    }
+
+    private static boolean canMeasure(PDFont font, String text) {
+        try {
+            font.getStringWidth(text);
+            return true;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static boolean canMeasure(GlyphAdvances advances, PDFont font, String text) {
+        try {
+            advances.getStringWidth(font, text);
+            return true;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.purplehillsbooks.pdflayout.text;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.text.ControlCharacters.ColorControlCharacter;
+import com.purplehillsbooks.pdflayout.text.ControlCharacters.MetricsControlCharacter;
+import com.purplehillsbooks.pdflayout.text.IndentCharacters.IndentCharacter;
+import com.purplehillsbooks.pdflayout.text.annotations.AnnotationCharacters.AnnotationControlCharacter;
+
+/**
+ * Checks that the single pass {@link MarkupTokenizer} splits markup exactly
+ * like the general pipeline of {@link TextFlowUtil#fromMarkup(Iterable)},
+ * for random markup made of pieces of every control character, including
+ * broken and nested ones.  The usual test run checks a few thousand samples,
+ * the <code>differential</code> profile of the build checks 300000.
+ */
+public class MarkupTokenizerTest {
+
+    private static final int SAMPLES = Integer.getInteger("markup.tokenizer.samples", 3000);
+
+    private static final String[] PIECES = { "*", "_", "__", "___", "{^}", "{_}", "{_:1|2}",
+            "{color:#ff0000}", "{link[http://x.y/a_b]}", "{link:ul[u]}", "{link}", "{anchor:ab_c}",
+            "{anchor}", "{anchor:x}", "__{1:2}", "__{:}", "\n", "\r\n", " -+{a:3em}", "-!", "  --{4em}",
+            "-#{I:2em}", "abc", " ", "x_y", "{", "}", ":", "-", "{color:#12345g}", "{link[*]}",
+            "{link[_x_]}", "{anchor:_}", "\r" };
+
+    @Test public void tokenizerMatchesPipeline() throws Exception {
+        Random random = new Random(1);
+        for (int i=0; i<SAMPLES; i++) {
+            StringBuilder markup = new StringBuilder();
+            int count = 1 + random.nextInt(8);
+            for (int j=0; j<count; j++) {
+                markup.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            String text = markup.toString();
+            assertTrue(MarkupTokenizer.canTokenize(text));
+            assertEquals(describe(TextFlowUtil.fromMarkup(Collections.<CharSequence>singleton(text))),
+                    describe(MarkupTokenizer.tokenize(text)), text);
+        }
+    }
+
+    @Test public void backslashIsLeftToPipeline() throws Exception {
+        String text = "a \\* b *c*";
+        assertTrue(!MarkupTokenizer.canTokenize(text));
+        assertEquals(describe(TextFlowUtil.fromMarkup(Collections.<CharSequence>singleton(text))),
+                describe(TextFlowUtil.fromMarkup(text)));
+    }
+
+    private static String describe(Iterable<CharSequence> sequences) {
+        StringBuilder sb = new StringBuilder();
+        for (CharSequence sequence : sequences) {
+            sb.append(sequence.getClass().getSimpleName()).append('[').append(sequence);
+            if (sequence instanceof ColorControlCharacter) {
+                sb.append(' ').append(((ColorControlCharacter) sequence).getColor());
+            }
+            else if (sequence instanceof MetricsControlCharacter) {
+                sb.append(' ').append(((MetricsControlCharacter) sequence).getFontScale())
+                        .append(' ').append(((MetricsControlCharacter) sequence).getBaselineOffsetScale());
+            }
+            else if (sequence instanceof IndentCharacter) {
+                sb.append(' ').append(((IndentCharacter) sequence).getLevel());
+            }
+            else if (sequence instanceof AnnotationControlCharacter) {
+                sb.append(' ').append(((AnnotationControlCharacter<?>) sequence).getAnnotation());
+            }
+            sb.append("]|");
+        }
+        return sb.toString();
+    }
+
+}
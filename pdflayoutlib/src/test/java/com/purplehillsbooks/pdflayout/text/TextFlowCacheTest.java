@@ -0,0 +1,155 @@
+package com.purplehillsbooks.pdflayout.text;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the word-wrapped lines of a text flow are wrapped once per max
+ * width, and wrapped again whenever the text or the max width changes, also
+ * for a flow divided from another one.
+ */
+public class TextFlowCacheTest {
+
+    private static final String TEXT = "lorem ipsum dolor sit amet, consectetur "
+            + "adipiscing elit, sed do eiusmod tempor incididunt ut labore et "
+            + "dolore magna aliqua. Ut enim ad minim veniam, quis nostrud";
+
+    @Test public void sameWidthDoesNotWrapAgain() throws Exception {
+        TextFlow flow = createFlow(150);
+        List<TextLine> lines = flow.getWrappedLines();
+        assertSame(lines, flow.getWrappedLines());
+        flow.getWidth();
+        flow.getHeight();
+        flow.setMaxWidth(150);
+        assertSame(lines, flow.getWrappedLines());
+    }
+
+    @Test public void otherWidthWrapsAgain() throws Exception {
+        TextFlow flow = createFlow(150);
+        List<TextLine> narrow = flow.getWrappedLines();
+        float narrowHeight = flow.getHeight();
+        flow.setMaxWidth(300);
+        List<TextLine> wide = flow.getWrappedLines();
+        assertTrue(narrow != wide);
+        assertEquals(wrap(flow, 300), toString(wide));
+        assertTrue(flow.getHeight() < narrowHeight);
+        //back to the first width, the lines are made for it again
+        flow.setMaxWidth(150);
+        assertEquals(toString(narrow), toString(flow.getWrappedLines()));
+        assertEquals(narrowHeight, flow.getHeight());
+    }
+
+    @Test public void addDropsLines() throws Exception {
+        TextFlow flow = createFlow(150);
+        List<TextLine> lines = flow.getWrappedLines();
+        float height = flow.getHeight();
+        flow.addText(" " + TEXT, 10, PDType1Font.HELVETICA);
+        List<TextLine> more = flow.getWrappedLines();
+        assertTrue(lines != more);
+        assertEquals(wrap(flow, 150), toString(more));
+        assertTrue(more.size() > lines.size());
+        assertTrue(flow.getHeight() > height);
+    }
+
+    @Test public void removeLastDropsLines() throws Exception {
+        TextFlow flow = createFlow(150);
+        flow.addText(" " + TEXT, 10, PDType1Font.HELVETICA);
+        List<TextLine> lines = flow.getWrappedLines();
+        while (flow.getLast() != null) {
+            flow.removeLast();
+            List<TextLine> fewer = flow.getWrappedLines();
+            assertTrue(lines != fewer);
+            assertEquals(wrap(flow, 150), toString(fewer));
+            lines = fewer;
+        }
+        assertEquals(0, lines.size());
+        assertEquals(0f, flow.getHeight());
+    }
+
+    @Test public void subFlowKeepsLinesOfSameWidth() throws Exception {
+        TextFlow flow = createFlow(150);
+        List<TextLine> lines = flow.getWrappedLines();
+        TextFlow sub = flow.subFlow(1, 4);
+        assertEquals(toString(lines.subList(1, 4)), toString(sub.getWrappedLines()));
+        assertSame(sub.getWrappedLines(), sub.getWrappedLines());
+        assertEquals(copyLines(lines, 1, 4).getHeight(), sub.getHeight(), 0.001f);
+        assertEquals(copyLines(lines, 1, 3).getHeight(), sub.getHeight(2), 0.001f);
+    }
+
+    @Test public void subFlowWrapsAgainAfterWidthChanges() throws Exception {
+        TextFlow flow = createFlow(150);
+        List<TextLine> lines = flow.getWrappedLines();
+        float[] widths = { 60, 300, 150 };
+        for (float width : widths) {
+            TextFlow sub = flow.subFlow(1, 4);
+            sub.getHeight();
+            sub.setMaxWidth(width);
+            //the same as a flow that got the lines added
+            TextFlow expected = copyLines(lines, 1, 4);
+            expected.setMaxWidth(width);
+            String message = "width " + width;
+            assertEquals(toText(expected.getWrappedLines()), toText(sub.getWrappedLines()), message);
+            assertEquals(expected.getHeight(), sub.getHeight(), 0.001f, message);
+            assertEquals(expected.getWidth(), sub.getWidth(), 0.001f, message);
+            assertEquals(expected.getHeight(1), sub.getHeight(1), 0.001f, message);
+        }
+        //the flow divided from is not affected
+        assertSame(lines, flow.getWrappedLines());
+    }
+
+    private static TextFlow createFlow(float maxWidth) throws Exception {
+        TextFlow flow = new TextFlow();
+        flow.addText(TEXT, 10, PDType1Font.HELVETICA);
+        flow.addText(" " + TEXT, 14, PDType1Font.TIMES_ROMAN);
+        flow.setMaxWidth(maxWidth);
+        return flow;
+    }
+
+    /**
+     * A flow made of some of the given lines, the way paragraphs were divided
+     * before the lines were cached.
+     */
+    private static TextFlow copyLines(List<TextLine> lines, int begin, int end) {
+        TextFlow flow = new TextFlow();
+        for (TextLine line : lines.subList(begin, end)) {
+            flow.add(line);
+        }
+        return flow;
+    }
+
+    private static String wrap(TextFlow flow, float maxWidth) throws Exception {
+        return toString(TextSequenceUtil.wordWrapToLines(flow, maxWidth));
+    }
+
+    private static String toString(List<TextLine> lines) {
+        StringBuilder result = new StringBuilder();
+        for (TextLine line : lines) {
+            result.append(line).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Leaves out the empty texts, which re-wrapping lines that were added to
+     * a flow puts between the words, but which take no room.
+     */
+    private static String toText(List<TextLine> lines) {
+        StringBuilder result = new StringBuilder();
+        for (TextLine line : lines) {
+            for (StyledText text : line.getStyledTexts()) {
+                if (text.getText().length() > 0) {
+                    result.append(text).append(' ');
+                }
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+}
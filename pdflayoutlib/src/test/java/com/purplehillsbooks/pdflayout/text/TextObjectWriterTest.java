@@ -0,0 +1,305 @@
+package com.purplehillsbooks.pdflayout.text;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the text objects written for paragraphs: one BT/ET pair per
+ * paragraph, a line move for every line, font and color only where they
+ * change, and the gaps of justified lines putting every word where the
+ * layout says.
+ */
+public class TextObjectWriterTest {
+
+    private static final float LEFT = 50;
+    private static final float TOP = 750;
+    private static final float SIZE = 11;
+    private static final String WORDS = "lorem ipsum dolor sit amet, consectetur adipiscing elit, "
+            + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. ";
+    private static final String STYLED_WORDS = "lorem *ipsum dolor sit* amet, _consectetur "
+            + "adipiscing_ elit, sed *do* eiusmod tempor _incididunt ut labore_ et dolore. ";
+
+    @Test public void oneTextObjectPerParagraph() throws Exception {
+        TextFlow first = createFlow(WORDS + WORDS + WORDS, 200);
+        TextFlow second = createFlow(STYLED_WORDS + STYLED_WORDS, 150);
+        Drawn drawn = draw(Alignment.Left, first, second);
+
+        assertEquals(2, drawn.count("BT"));
+        assertEquals(2, drawn.count("ET"));
+        //every text operator is inside one of them
+        boolean inText = false;
+        int lineMoves = 0;
+        for (Object token : drawn.tokens) {
+            String name = token instanceof Operator ? ((Operator) token).getName() : "";
+            if (name.equals("BT")) {
+                assertEquals(false, inText);
+                inText = true;
+            }
+            else if (name.equals("ET")) {
+                inText = false;
+            }
+            else if (name.equals("Td")) {
+                assertTrue(inText);
+                lineMoves++;
+            }
+            else if (name.equals("Tj") || name.equals("TJ") || name.equals("Tf")) {
+                assertTrue(inText, name);
+            }
+        }
+        int lines = first.getWrappedLines().size() + second.getWrappedLines().size();
+        assertTrue(lines > 4);
+        assertEquals(lines, lineMoves);
+    }
+
+    @Test public void lineMovesAdvanceByTheLine() throws Exception {
+        TextFlow flow = createFlow(WORDS + WORDS + WORDS, 180);
+        Drawn drawn = draw(Alignment.Left, flow);
+
+        List<float[]> moves = drawn.operands("Td");
+        List<TextLine> lines = flow.getWrappedLines();
+        assertEquals(lines.size(), moves.size());
+        //the moves are relative to the start of the line before
+        float x = 0;
+        float y = 0;
+        int record = 0;
+        for (int i=0; i<lines.size(); i++) {
+            float[] move = moves.get(i);
+            if (i > 0) {
+                assertEquals(0f, move[0], "line " + i);
+                float lead = lines.get(i - 1).getHeight()
+                        + lines.get(i).getHeight() * (flow.getLineSpacing() - 1);
+                assertEquals(-lead, move[1], 0.001f, "line " + i);
+            }
+            x += move[0];
+            y += move[1];
+            Record start = drawn.records.get(record);
+            assertEquals(start.x, x, 0.001f, "line " + i);
+            assertEquals(start.baseline, y, 0.001f, "line " + i);
+            record += lines.get(i).getStyledTexts().size();
+        }
+        assertEquals(LEFT, moves.get(0)[0], 0.001f);
+    }
+
+    @Test public void fontAndColorOnlyOnChange() throws Exception {
+        StringBuilder markup = new StringBuilder();
+        for (int i=0; i<6; i++) {
+            markup.append("plain words here *bold words* plain again "
+                    + "{color:#ff0000}red words{color:#000000} and more plain words ");
+        }
+        TextFlow flow = createFlow(markup.toString(), 160);
+        Drawn drawn = draw(Alignment.Left, flow);
+
+        int fontChanges = 0;
+        int colorChanges = 0;
+        FontDescriptor font = null;
+        Color color = null;
+        for (Record record : drawn.records) {
+            if (!record.text.getFontDescriptor().equals(font)) {
+                font = record.text.getFontDescriptor();
+                fontChanges++;
+            }
+            if (!record.text.getColor().equals(color)) {
+                color = record.text.getColor();
+                colorChanges++;
+            }
+        }
+        assertTrue(fontChanges < drawn.records.size());
+        assertTrue(colorChanges < drawn.records.size());
+        assertEquals(fontChanges, drawn.count("Tf"));
+        assertEquals(colorChanges, drawn.count("sc"));
+
+        //a paragraph of one style sets them once for all of its lines
+        Drawn plain = draw(Alignment.Left, createFlow(WORDS + WORDS, 120));
+        assertEquals(1, plain.count("Tf"));
+        assertEquals(1, plain.count("sc"));
+    }
+
+    @Test public void adjustmentsMatchGlyphs() throws Exception {
+        String markup = STYLED_WORDS + WORDS + STYLED_WORDS + WORDS;
+        checkGlyphs(draw(Alignment.Justify, createFlow(markup, 220)));
+    }
+
+    @Test public void adjustmentsWithoutWordSpacingMatchGlyphs() throws Exception {
+        System.setProperty(TextLine.JUSTIFY_WITH_WORD_SPACING_PROPERTY, "false");
+        try {
+            String markup = STYLED_WORDS + WORDS + STYLED_WORDS + WORDS;
+            Drawn drawn = draw(Alignment.Justify, createFlow(markup, 220));
+            checkGlyphs(drawn);
+            //all gaps are adjustments
+            assertEquals(0, drawn.count("Tw") - countZeroWordSpacing(drawn));
+            int adjustments = 0;
+            for (Object token : drawn.tokens) {
+                if (token instanceof COSArray) {
+                    for (int i=0; i<((COSArray) token).size(); i++) {
+                        if (((COSArray) token).getObject(i) instanceof COSNumber) {
+                            adjustments++;
+                        }
+                    }
+                }
+            }
+            assertTrue(drawn.count("TJ") > 0);
+            assertTrue(adjustments > 0);
+        }
+        finally {
+            System.clearProperty(TextLine.JUSTIFY_WITH_WORD_SPACING_PROPERTY);
+        }
+    }
+
+    /**
+     * Checks that the first visible glyph of every text drawn is where the
+     * layout put the text.
+     */
+    private static void checkGlyphs(Drawn drawn) throws Exception {
+        int index = 0;
+        for (Record record : drawn.records) {
+            String text = record.text.getText();
+            String visible = text.trim();
+            if (visible.length() == 0) {
+                continue;
+            }
+            FontDescriptor font = record.text.getFontDescriptor();
+            String leading = text.substring(0, text.indexOf(visible));
+            float leadingWidth = font.getFont().getStringWidth(leading) * font.getSize() / 1000;
+            TextPosition first = drawn.glyphs.get(index);
+            assertEquals(visible.substring(0, 1), first.getUnicode(), text);
+            assertEquals(record.x + leadingWidth, first.getXDirAdj(), 0.01f, text);
+            assertEquals(record.baseline, first.getTextMatrix().getTranslateY(), 0.01f, text);
+            index += visible.replace(" ", "").length();
+        }
+        assertEquals(index, drawn.glyphs.size());
+    }
+
+    private static int countZeroWordSpacing(Drawn drawn) {
+        int count = 0;
+        for (float[] operands : drawn.operands("Tw")) {
+            if (operands[0] == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static TextFlow createFlow(String markup, float maxWidth) throws Exception {
+        TextFlow flow = new TextFlow();
+        flow.addMarkup(markup, SIZE, BaseFont.Helvetica);
+        flow.setMaxWidth(maxWidth);
+        return flow;
+    }
+
+    /**
+     * Draws the flows one below the other, and reads back the content stream
+     * and the glyphs shown.
+     */
+    private static Drawn draw(Alignment alignment, TextFlow... flows) throws Exception {
+        final Drawn drawn = new Drawn();
+        DrawListener listener = new DrawListener() {
+            public void drawn(Object drawnObject, Position upperLeft, float width, float height) {
+                StyledText text = (StyledText) drawnObject;
+                try {
+                    drawn.records.add(new Record(text, upperLeft.getX(), upperLeft.getY() - text.getAsent()));
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            PDPageContentStream contentStream = new PDPageContentStream(document, page);
+            float y = TOP;
+            for (TextFlow flow : flows) {
+                flow.drawText(contentStream, new Position(LEFT, y), alignment, listener);
+                y -= flow.getHeight() + 20;
+            }
+            contentStream.close();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+
+            try (PDDocument saved = PDDocument.load(out.toByteArray())) {
+                PDFStreamParser parser = new PDFStreamParser(saved.getPage(0));
+                parser.parse();
+                drawn.tokens = parser.getTokens();
+                PDFTextStripper stripper = new PDFTextStripper() {
+                    @Override
+                    protected void processTextPosition(TextPosition text) {
+                        if (!text.getUnicode().equals(" ")) {
+                            drawn.glyphs.add(text);
+                        }
+                    }
+                };
+                stripper.getText(saved);
+            }
+        }
+        return drawn;
+    }
+
+    /**
+     * A text as the layout has drawn it.
+     */
+    private static class Record {
+        final StyledText text;
+        final float x;
+        final float baseline;
+
+        Record(StyledText text, float x, float baseline) {
+            this.text = text;
+            this.x = x;
+            this.baseline = baseline;
+        }
+    }
+
+    /**
+     * What has been drawn, and how it ended up in the content stream.
+     */
+    private static class Drawn {
+        final List<Record> records = new ArrayList<Record>();
+        final List<TextPosition> glyphs = new ArrayList<TextPosition>();
+        List<Object> tokens;
+
+        int count(String operator) {
+            return operands(operator).size();
+        }
+
+        /**
+         * @return the numeric operands of each occurrence of the operator.
+         */
+        List<float[]> operands(String operator) {
+            List<float[]> result = new ArrayList<float[]>();
+            List<Float> operands = new ArrayList<Float>();
+            for (Object token : tokens) {
+                if (token instanceof Operator) {
+                    if (((Operator) token).getName().equals(operator)) {
+                        float[] values = new float[operands.size()];
+                        for (int i=0; i<values.length; i++) {
+                            values[i] = operands.get(i);
+                        }
+                        result.add(values);
+                    }
+                    operands.clear();
+                }
+                else if (token instanceof COSNumber) {
+                    operands.add(((COSNumber) token).floatValue());
+                }
+            }
+            return result;
+        }
+    }
+
+}
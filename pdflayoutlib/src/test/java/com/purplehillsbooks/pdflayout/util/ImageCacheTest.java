@@ -0,0 +1,200 @@
+package com.purplehillsbooks.pdflayout.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+
+import com.purplehillsbooks.pdflayout.elements.PDFDoc;
+
+/**
+ * Checks that the image cache counts the bytes of the encoded images it
+ * keeps, soft masks and ICC profiles included, and forgets the images used least recently
+ * when it is full.  Images too large for it are not even read.
+ */
+public class ImageCacheTest {
+
+    @Test public void countsBytesOfImagesAndMasks() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject opaque = createImage(document, 40, BufferedImage.TYPE_INT_RGB);
+            PDImageXObject transparent = createImage(document, 30, BufferedImage.TYPE_INT_ARGB);
+            long opaqueBytes = rawLength(opaque.getCOSObject());
+            long transparentBytes = rawLength(transparent.getCOSObject())
+                    + rawLength((COSStream) transparent.getCOSObject().getDictionaryObject(COSName.SMASK));
+
+            ImageCache cache = new ImageCache(1000000);
+            cache.put("opaque", opaque);
+            cache.put("transparent", transparent);
+            //the same key again is not counted twice
+            cache.put("opaque", opaque);
+            assertEquals(2, cache.size());
+            assertEquals(opaqueBytes + transparentBytes, cache.getBytes());
+
+            //every document gets the same bytes
+            try (PDDocument other = new PDDocument()) {
+                PDImageXObject copy = cache.get(other, "transparent");
+                assertEquals(rawLength(transparent.getCOSObject()), rawLength(copy.getCOSObject()));
+                assertEquals(30, copy.getImage().getWidth());
+            }
+
+            cache.clear();
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.getBytes());
+        }
+    }
+
+    @Test public void countsBytesOfStreamsInArrays() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject image = createImage(document, 40, BufferedImage.TYPE_INT_RGB);
+            //an /ICCBased color space refers to the profile from an array
+            COSStream profile = document.getDocument().createCOSStream();
+            profile.setInt(COSName.N, 3);
+            byte[] profileData = new byte[3000];
+            new Random(3).nextBytes(profileData);
+            OutputStream out = profile.createRawOutputStream();
+            out.write(profileData);
+            out.close();
+            COSArray colorSpace = new COSArray();
+            colorSpace.add(COSName.ICCBASED);
+            colorSpace.add(profile);
+            image.getCOSObject().setItem(COSName.COLORSPACE, colorSpace);
+
+            ImageCache cache = new ImageCache(1000000);
+            cache.put("icc", image);
+            assertEquals(rawLength(image.getCOSObject()) + profileData.length, cache.getBytes());
+
+            try (PDDocument other = new PDDocument()) {
+                PDImageXObject copy = cache.get(other, "icc");
+                COSArray copiedColorSpace = (COSArray) copy.getCOSObject().getDictionaryObject(COSName.COLORSPACE);
+                assertEquals(profileData.length, rawLength((COSStream) copiedColorSpace.getObject(1)));
+            }
+        }
+    }
+
+    @Test public void forgetsLeastRecentlyUsed() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject[] images = new PDImageXObject[4];
+            long size = 0;
+            for (int i=0; i<images.length; i++) {
+                images[i] = createImage(document, 40, BufferedImage.TYPE_INT_RGB);
+                size = Math.max(size, rawLength(images[i].getCOSObject()));
+            }
+            //room for three of the images
+            ImageCache cache = new ImageCache(size * 3 + size / 2);
+            cache.put("0", images[0]);
+            cache.put("1", images[1]);
+            cache.put("2", images[2]);
+            assertEquals(3, cache.size());
+
+            //0 is used again, so 1 is the least recently used
+            cache.get(document, "0");
+            cache.put("3", images[3]);
+            assertEquals(3, cache.size());
+            assertEquals(null, cache.get(document, "1"));
+            assertEquals(true, cache.get(document, "0") != null);
+            assertEquals(true, cache.get(document, "2") != null);
+            assertEquals(true, cache.get(document, "3") != null);
+            assertEquals(rawLength(images[0].getCOSObject()) + rawLength(images[2].getCOSObject())
+                    + rawLength(images[3].getCOSObject()), cache.getBytes());
+
+            //the checks used 0 first, so it is now the least recently used
+            cache.setMaxBytes(size * 2 + size / 2);
+            assertEquals(2, cache.size());
+            assertEquals(null, cache.get(document, "0"));
+            assertEquals(rawLength(images[2].getCOSObject()) + rawLength(images[3].getCOSObject()),
+                    cache.getBytes());
+        }
+    }
+
+    @Test public void doesNotKeepImageLargerThanCache() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject image = createImage(document, 40, BufferedImage.TYPE_INT_RGB);
+            ImageCache cache = new ImageCache(rawLength(image.getCOSObject()) - 1);
+            cache.put("large", image);
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.getBytes());
+            assertEquals(null, cache.get(document, "large"));
+        }
+    }
+
+    @Test public void doesNotReadImageLargerThanCache() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            CountingStream stream = new CountingStream();
+            OutputStream out = stream.createRawOutputStream();
+            try {
+                out.write(new byte[1000]);
+            }
+            finally {
+                out.close();
+            }
+            ImageCache cache = new ImageCache(999);
+            cache.put("large", new PDImageXObject(new PDStream(stream), null));
+            assertEquals(0, cache.size());
+            assertEquals(0, stream.reads);
+        }
+    }
+
+    @Test public void memoryBudgetTurnsSharedCacheOff() throws Exception {
+        PDFDoc doc = new PDFDoc();
+        assertSame(ImageCache.getShared(), doc.getImageCache());
+        doc.setMemoryBudget(100000);
+        assertEquals(null, doc.getImageCache());
+        ImageCache own = new ImageCache(1000);
+        doc.setImageCache(own);
+        assertSame(own, doc.getImageCache());
+        doc.setImageCache(ImageCache.getShared());
+        assertSame(ImageCache.getShared(), doc.getImageCache());
+    }
+
+    /**
+     * @return an image of random pixels, which does not compress much.
+     */
+    private static PDImageXObject createImage(PDDocument document, int size, int type) throws Exception {
+        BufferedImage image = new BufferedImage(size, size, type);
+        Random random = new Random(size * 31 + type);
+        for (int y=0; y<size; y++) {
+            for (int x=0; x<size; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return LosslessFactory.createFromImage(document, image);
+    }
+
+    /**
+     * Counts how often its encoded data is read.
+     */
+    private static class CountingStream extends COSStream {
+        int reads;
+
+        @Override
+        public InputStream createRawInputStream() throws IOException {
+            reads++;
+            return super.createRawInputStream();
+        }
+    }
+
+    private static long rawLength(COSStream stream) throws Exception {
+        InputStream in = stream.createRawInputStream();
+        try {
+            return IOUtils.toByteArray(in).length;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+}
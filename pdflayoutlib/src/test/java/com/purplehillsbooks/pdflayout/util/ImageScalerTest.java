@@ -0,0 +1,86 @@
+package com.purplehillsbooks.pdflayout.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that scaling an image down gives the requested size, and that each
+ * pixel is the average of the source pixels it covers, weighted by alpha.
+ */
+public class ImageScalerTest {
+
+    @Test public void scalesToRequestedSize() throws Exception {
+        BufferedImage image = new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB);
+        int[][] sizes = {{37, 23}, {10, 7}, {1, 1}, {36, 1}, {1, 22}};
+        for (int[] size : sizes) {
+            BufferedImage scaled = ImageScaler.areaAverage(image, size[0], size[1]);
+            assertEquals(size[0], scaled.getWidth());
+            assertEquals(size[1], scaled.getHeight());
+            assertEquals(BufferedImage.TYPE_INT_RGB, scaled.getType());
+        }
+        BufferedImage gray = new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_GRAY);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, ImageScaler.areaAverage(gray, 4, 4).getType());
+        BufferedImage transparent = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, ImageScaler.areaAverage(transparent, 4, 4).getType());
+    }
+
+    @Test public void averagesCoveredPixels() throws Exception {
+        //columns of black and white, and a red row at the bottom
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        for (int y=0; y<4; y++) {
+            for (int x=0; x<4; x++) {
+                image.setRGB(x, y, y == 3 ? 0xff0000 : x % 2 == 0 ? 0x000000 : 0xffffff);
+            }
+        }
+        BufferedImage scaled = ImageScaler.areaAverage(image, 2, 2);
+        assertEquals(0x808080, scaled.getRGB(0, 0) & 0xffffff);
+        assertEquals(0x808080, scaled.getRGB(1, 0) & 0xffffff);
+        //half gray (127.5), half red
+        assertEquals(0xbf4040, scaled.getRGB(0, 1) & 0xffffff);
+
+        //three pixels onto two: the middle one is split between both
+        BufferedImage row = new BufferedImage(3, 1, BufferedImage.TYPE_INT_RGB);
+        row.setRGB(0, 0, 0x000000);
+        row.setRGB(1, 0, 0x000000);
+        row.setRGB(2, 0, 0xf0f0f0);
+        BufferedImage split = ImageScaler.areaAverage(row, 2, 1);
+        assertEquals(0x000000, split.getRGB(0, 0) & 0xffffff);
+        //a third of black, two thirds of 0xf0
+        assertEquals(0xa0a0a0, split.getRGB(1, 0) & 0xffffff);
+    }
+
+    @Test public void transparentPixelsDoNotAddColor() throws Exception {
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xff0000ff);
+        //fully transparent, whatever color it says
+        image.setRGB(1, 0, 0x00ff0000);
+        image.setRGB(0, 1, 0x800000ff);
+        image.setRGB(1, 1, 0x00ff0000);
+        BufferedImage scaled = ImageScaler.areaAverage(image, 1, 1);
+        int pixel = scaled.getRGB(0, 0);
+        //the alpha is averaged, the color only comes from the visible pixels
+        assertEquals(Math.round((255 + 128) / 4f), pixel >>> 24);
+        assertEquals(0x0000ff, pixel & 0xffffff);
+
+        BufferedImage invisible = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+        assertEquals(0, ImageScaler.areaAverage(invisible, 1, 1).getRGB(0, 0));
+    }
+
+    @Test public void doesNotScaleUp() throws Exception {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        int[][] sizes = {{5, 4}, {4, 5}, {0, 1}, {1, 0}};
+        for (int[] size : sizes) {
+            try {
+                ImageScaler.areaAverage(image, size[0], size[1]);
+                assertEquals(false, true, size[0] + "x" + size[1]);
+            }
+            catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+    }
+
+}